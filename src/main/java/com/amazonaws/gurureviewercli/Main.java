@@ -4,19 +4,23 @@ package com.amazonaws.gurureviewercli;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
+import lombok.Value;
 import lombok.val;
 import org.beryx.textio.TextIO;
 import org.beryx.textio.system.SystemTextTerminal;
+import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.util.FileUtils;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
@@ -24,21 +28,27 @@ import software.amazon.awssdk.auth.credentials.ProfileCredentialsProvider;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.codegurureviewer.CodeGuruReviewerClient;
-import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
+import software.amazon.awssdk.services.codegurureviewer.model.Severity;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.sts.StsClient;
 
+import com.amazonaws.gurureviewercli.adapter.BlameAdapter;
 import com.amazonaws.gurureviewercli.adapter.GitAdapter;
+import com.amazonaws.gurureviewercli.adapter.GitSession;
 import com.amazonaws.gurureviewercli.adapter.ResultsAdapter;
+import com.amazonaws.gurureviewercli.adapter.S3ObjectReferences;
 import com.amazonaws.gurureviewercli.adapter.ScanAdapter;
 import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
+import com.amazonaws.gurureviewercli.model.BlameInfo;
 import com.amazonaws.gurureviewercli.model.Configuration;
 import com.amazonaws.gurureviewercli.model.ErrorCodes;
 import com.amazonaws.gurureviewercli.model.GitMetaData;
 import com.amazonaws.gurureviewercli.model.ScanMetaData;
 import com.amazonaws.gurureviewercli.model.configfile.CustomConfiguration;
+import com.amazonaws.gurureviewercli.util.ArtifactCache;
 import com.amazonaws.gurureviewercli.util.CodeInsightExport;
+import com.amazonaws.gurureviewercli.util.JsonUtil;
 import com.amazonaws.gurureviewercli.util.Log;
 import com.amazonaws.gurureviewercli.util.RecommendationPrinter;
 import com.amazonaws.gurureviewercli.util.RecommendationsFilter;
@@ -46,6 +56,9 @@ import com.amazonaws.gurureviewercli.util.RecommendationsFilter;
 public class Main {
     private static final String REVIEWER_ENDPOINT_PATTERN = "https://codeguru-reviewer.%s.amazonaws.com";
 
+    // parts are buffered in byte arrays, and the chunks of an incremental upload can be twice the part size.
+    private static final int MAX_UPLOAD_PART_SIZE_MB = 512;
+
     @Parameter(names = {"--region"},
                description = "Region where CodeGuru Reviewer will run.",
                required = false)
@@ -71,6 +84,13 @@ public class Main {
                required = false)
     private boolean failOnRecommendations;
 
+    @Parameter(names = {"--fail-on-severity"},
+               description = "Return error code 5 as soon as CodeGuru reports a recommendation with this severity or "
+                             + "higher (Info, Low, Medium, High or Critical). The remaining recommendations are not "
+                             + "downloaded and the reports are marked as partial.",
+               required = false)
+    private String failOnSeverity;
+
     @Parameter(names = {"--bitbucket-code-insights"},
                description = "Output directory for Bitbucket insights report and annotation files.",
                required = false)
@@ -102,6 +122,120 @@ public class Main {
                description = "KMS Key ID to encrypt source and build artifacts in S3")
     private String kmsKeyId;
 
+    @Parameter(names = {"--stream-upload"},
+               description = "Stream source and build artifacts directly into S3 while they are packed, instead of"
+                             + " writing them to a temporary zip file first.")
+    private boolean streamUpload;
+
+    @Parameter(names = {"--pack-from-git"},
+               description = "Pack source files from the git object database at the analyzed commit instead of the"
+                             + " working tree. The files do not have to be checked out, e.g. after"
+                             + " 'git clone --no-checkout'.")
+    private boolean packFromGit;
+
+    @Parameter(names = {"--full-git-dir"},
+               description = "Pack the whole .git directory into the source artifact instead of a minimal repository"
+                             + " that only has the analyzed commits.")
+    private boolean fullGitDir;
+
+    @Parameter(names = {"--pack-changed-files"},
+               description = "Only pack the source files that changed in the commit range instead of all source"
+                             + " files. Requires --commit-range.")
+    private boolean packChangedFiles;
+
+    @Parameter(names = {"--include-changed-directories"},
+               description = "With --pack-changed-files, also pack the other files in the directories of the changed"
+                             + " files, e.g. the classes of the same Java package.")
+    private boolean includeChangedDirectories;
+
+    @Parameter(names = {"--include-ignored-files"},
+               description = "Also pack the files in the source directories that are ignored by .gitignore,"
+                             + " .git/info/exclude or the global git excludes, e.g. build outputs and dependencies.")
+    private boolean includeIgnoredFiles;
+
+    @Parameter(names = {"--zip-threads"},
+               description = "Number of threads used to compress source and build artifacts.")
+    private int zipThreads = 1;
+
+    @Parameter(names = {"--upload-part-size"},
+               description = "Size in MB of the parts in which source and build artifacts are uploaded to S3."
+                             + " Must be between 5 and 512. Up to one part per upload thread, plus two, is held in"
+                             + " memory, and with --incremental-upload, parts can be twice as large.")
+    private int uploadPartSizeMb = 8;
+
+    @Parameter(names = {"--upload-threads"},
+               description = "Number of parts that are uploaded to S3 at the same time.")
+    private int uploadThreads = 4;
+
+    @Parameter(names = {"--reproducible-zip"},
+               description = "Pack source and build artifacts into reproducible zip files, which are byte-identical"
+                             + " if the files did not change.")
+    private boolean reproducibleZip;
+
+    @Parameter(names = {"--content-addressed-keys"},
+               description = "Upload source and build artifacts under a key derived from their content, and skip the"
+                             + " upload if an object with that key already exists. Objects are shared between scans"
+                             + " and only deleted by the last scan that uses them.")
+    private boolean contentAddressedKeys;
+
+    @Parameter(names = {"--incremental-upload"},
+               description = "Keep the last source and build artifacts in S3 and upload only the parts of the next"
+                             + " artifacts that changed. Unchanged parts are copied from the last artifacts in S3."
+                             + " Works best together with --reproducible-zip.")
+    private boolean incrementalUpload;
+
+    @Parameter(names = {"--start-only"},
+               description = "Upload the artifacts, start the CodeGuru Reviewer scan and exit without waiting for"
+                             + " the results. The scan is written to the given state file, from which --collect reads"
+                             + " the results later.")
+    private String startOnlyStateFile;
+
+    @Parameter(names = {"--collect"},
+               description = "Do not start a scan, but wait for the scan in the given state file that was written"
+                             + " by --start-only, then write the reports and delete the artifacts from S3.")
+    private String collectStateFile;
+
+    @Parameter(names = {"--poll-timeout"},
+               description = "Minutes to wait for the CodeGuru Reviewer scan to complete. If the scan is not complete"
+                             + " by then, the CLI exits with code 4. By default, the CLI waits until the scan"
+                             + " completes.")
+    private int pollTimeoutMinutes;
+
+    @Parameter(names = {"--max-polls"},
+               description = "Maximum number of calls that check if the scan is complete. If the scan is not"
+                             + " complete after that, the CLI exits with code 4. By default, there is no limit.")
+    private int maxPolls;
+
+    @Parameter(names = {"--blame"},
+               description = "Add the author and commit of the last change of the lines of each recommendation to"
+                             + " the Json, SARIF and Bitbucket Code Insights output, using git blame. Blamed lines"
+                             + " are cached in the output directory.")
+    private boolean blame;
+
+    @Parameter(names = {"--blame-threads"},
+               description = "Number of files that are blamed at the same time.")
+    private int blameThreads = 4;
+
+    @Parameter(names = {"--blame-cache-size"},
+               description = "Maximum size of the cache of blamed lines in the output directory in MB.")
+    private long blameCacheSizeMb = 64;
+
+    @Parameter(names = {"--artifact-cache-dir"},
+               description = "Directory for a local cache of source and build artifacts. Artifacts whose content did"
+                             + " not change since an earlier run are not packed or uploaded again. Artifacts in the"
+                             + " cache are kept in S3 until they are evicted from the cache.")
+    private String artifactCacheDir;
+
+    @Parameter(names = {"--artifact-cache-size"},
+               description = "Maximum size of the artifact cache in MB.")
+    private long artifactCacheSizeMb = 2048;
+
+    /**
+     * The session of the repository that is analyzed. It is opened with the git metadata, or when the results of a
+     * collected scan are blamed, and closed when the run ends.
+     */
+    private GitSession gitSession;
+
     public static void main(String[] argv) {
         val textIO = new TextIO(new SystemTextTerminal());
 
@@ -119,73 +253,128 @@ public class Main {
                                       .textIO(textIO)
                                       .interactiveMode(!main.noPrompt)
                                       .bucketName(main.bucketName)
+                                      .streamUpload(main.streamUpload)
+                                      .packFromGit(main.packFromGit)
+                                      .fullGitDir(main.fullGitDir)
+                                      .packChangedFiles(main.packChangedFiles)
+                                      .includeChangedDirectories(main.includeChangedDirectories)
+                                      .includeIgnoredFiles(main.includeIgnoredFiles)
+                                      .zipThreads(main.zipThreads)
+                                      .reproducibleZip(main.reproducibleZip)
+                                      .contentAddressedKeys(main.contentAddressedKeys)
+                                      .incrementalUpload(main.incrementalUpload)
+                                      // other zips are stamped with the time of packing, so they never match.
+                                      .resumableUpload(main.reproducibleZip || main.artifactCacheDir != null)
+                                      .uploadPartSizeMb(main.uploadPartSizeMb)
+                                      .uploadThreads(main.uploadThreads)
+                                      .uploadStateDir(Paths.get(main.outputDir).resolve(".upload-state"))
+                                      .pollTimeoutMinutes(main.pollTimeoutMinutes)
+                                      .maxPolls(main.maxPolls)
+                                      .reviewHistoryDir(Paths.get(main.outputDir).resolve(".review-history"))
                                       .build();
             main.validateInitialConfig(config);
+            if (main.artifactCacheDir != null) {
+                config.setArtifactCache(new ArtifactCache(Paths.get(main.artifactCacheDir),
+                                                          main.artifactCacheSizeMb * 1024 * 1024));
+            }
+            ScanMetaData collectedScan = null;
+            if (main.collectStateFile != null) {
+                collectedScan = JsonUtil.loadScanMetaData(Paths.get(main.collectStateFile));
+                // the scan can only be found in the region where it was started.
+                main.regionName = collectedScan.getRegion();
+            }
             // try to build the AWS client objects first.
             main.createAWSClients(config);
 
             String repoName = config.getRootDir().toFile().getName();
             config.setRepoName(repoName);
 
-            // check if repo is valid git.
-            val gitMetaData = main.readGitMetaData(config, Paths.get(main.repoDir).toRealPath());
+            // check if repo is valid git. The scan that is collected was started from the git metadata already.
+            val gitMetaData = collectedScan == null
+                              ? main.readGitMetaData(config, Paths.get(main.repoDir).toRealPath())
+                              : null;
 
-            ScanMetaData scanMetaData = null;
-            List<RecommendationSummary> results = new ArrayList<>();
+            ScanMetaData scanMetaData = collectedScan;
+            boolean detached = false;
+            SavedResults savedResults = null;
             try {
-                val sourcePaths = main.sourceDirs.stream()
-                                                 .map(Paths::get).map(Path::toAbsolutePath).map(Path::normalize)
-                                                 .collect(Collectors.toList());
-                List<Path> buildPaths = null;
-                if (main.buildDirs != null) {
-                    buildPaths = main.buildDirs.stream()
-                                               .map(Paths::get).map(Path::toAbsolutePath).map(Path::normalize)
-                                               .collect(Collectors.toList());
-                }                scanMetaData = ScanAdapter.startScan(config, gitMetaData, sourcePaths, buildPaths);
-                results.addAll(ScanAdapter.fetchResults(config, scanMetaData));
+                if (scanMetaData == null) {
+                    val sourcePaths = main.sourceDirs.stream()
+                                                     .map(Paths::get).map(Path::toAbsolutePath).map(Path::normalize)
+                                                     .collect(Collectors.toList());
+                    List<Path> buildPaths = null;
+                    if (main.buildDirs != null) {
+                        buildPaths = main.buildDirs.stream()
+                                                   .map(Paths::get).map(Path::toAbsolutePath).map(Path::normalize)
+                                                   .collect(Collectors.toList());
+                    }
+                    scanMetaData = ScanAdapter.startScan(config, main.gitSession, gitMetaData, sourcePaths,
+                                                         buildPaths);
+                    scanMetaData.setCommitId(main.analyzedCommit(config));
+                    // if there is a cache, it owns the objects, unless they are content-addressed and shared with
+                    // other scans. Incremental uploads keep the objects as the base of the next upload, which
+                    // deletes them.
+                    scanMetaData.setKeepArtifacts(config.isIncrementalUpload()
+                                                  || (config.getArtifactCache() != null
+                                                      && scanMetaData.getArtifactReferenceId() == null));
+                }
+                if (main.startOnlyStateFile != null) {
+                    val stateFile = Paths.get(main.startOnlyStateFile).toAbsolutePath();
+                    Files.createDirectories(stateFile.getParent());
+                    JsonUtil.storeScanMetaData(scanMetaData, stateFile);
+                    // the artifacts are deleted by the run that collects the results.
+                    detached = true;
+                    Log.info("Scan state written to %s. Collect the results with --collect %s",
+                             stateFile, stateFile);
+                } else {
+                    ScanAdapter.waitForReview(config, scanMetaData);
+                    // save the results while the git session is still open to blame them.
+                    savedResults = main.saveResults(config, scanMetaData);
+                }
+            } catch (GuruCliException e) {
+                if (collectedScan != null && ErrorCodes.POLL_TIMEOUT.equals(e.getErrorCode())) {
+                    // the scan is still running, so its artifacts are kept for the next attempt to collect it.
+                    detached = true;
+                }
+                throw e;
             } finally {
-                if (scanMetaData != null) {
+                if (main.gitSession != null) {
+                    main.gitSession.close();
+                }
+                if (scanMetaData != null && !detached && !scanMetaData.isKeepArtifacts()) {
                     // try to clean up objects from S3.
-                    main.tryDeleteS3Object(config.getS3Client(),
+                    main.tryDeleteS3Object(config,
                                            scanMetaData.getBucketName(),
-                                           scanMetaData.getSourceKey());
-                    main.tryDeleteS3Object(config.getS3Client(),
+                                           scanMetaData.getSourceKey(),
+                                           scanMetaData.getArtifactReferenceId());
+                    main.tryDeleteS3Object(config,
                                            scanMetaData.getBucketName(),
-                                           scanMetaData.getBuildKey());
+                                           scanMetaData.getBuildKey(),
+                                           scanMetaData.getArtifactReferenceId());
                 }
             }
-
-            val customConfigFile = config.getRootDir().resolve(".codeguru-ignore.yml");
-            if (customConfigFile.toFile().isFile()) {
-                Log.info("Using customer provided config: " + customConfigFile.toAbsolutePath());
-                int originalResultsCount = results.size();
-                results = RecommendationsFilter.filterRecommendations(results,
-                                                                      CustomConfiguration.load(customConfigFile));
-                Log.info("%d recommendations were suppressed.", originalResultsCount - results.size());
+            if (detached) {
+                System.exit(0);
             }
 
-            val outputPath = Paths.get(main.outputDir);
-            if (!outputPath.toFile().exists()) {
-                if (!outputPath.toFile().mkdirs()) {
-                    Log.error("Failed to create output directory %s.", outputPath);
-                }
-            }
-            ResultsAdapter.saveResults(outputPath, results, scanMetaData);
             Log.info("Analysis finished.");
 
-            if (main.bitbucketCodeInsightsDirectory != null) {
-                val bitBucketDir = new File(main.bitbucketCodeInsightsDirectory).getCanonicalFile();
-                FileUtils.mkdirs(bitBucketDir, true);
-                CodeInsightExport.report(results, scanMetaData, bitBucketDir.toPath());
+            if (savedResults.getBlockingCount() > 0) {
+                Log.error("Exiting with code 5 because a recommendation with severity %s or higher was found and"
+                          + " --fail-on-severity is used.", main.failOnSeverity);
+                System.exit(5);
             }
-
-            if (main.failOnRecommendations && !results.isEmpty()) {
-                RecommendationPrinter.print(results);
+            if (main.failOnRecommendations && savedResults.getCount() > 0) {
                 Log.error("Exiting with code 5 because %d recommendations were found and --fail-on-recommendations"
-                         + " is used.", results.size());
+                         + " is used.", savedResults.getCount());
                 System.exit(5);
             }
         } catch (GuruCliException e) {
+            if (ErrorCodes.POLL_TIMEOUT.equals(e.getErrorCode())) {
+                // the scan may still complete, so a timeout is not reported like a failure.
+                Log.error("%s: %s", e.getErrorCode(), e.getMessage());
+                System.exit(4);
+            }
             Log.error("%s: %s", e.getErrorCode(), e.getMessage());
             e.printStackTrace();
             System.exit(3);
@@ -212,7 +401,122 @@ public class Main {
             config.setAfterCommit(commits[1]);
         }
 
-        return GitAdapter.getGitMetaData(config, repoRoot);
+        gitSession = GitAdapter.openSession(repoRoot);
+        return GitAdapter.getGitMetaData(config, gitSession, repoRoot);
+    }
+
+    /**
+     * Download the recommendations page by page, and filter, blame and write each page as it arrives, so that only
+     * one page of a large review is held in memory. With --fail-on-severity, the download stops after the first page
+     * with a blocking recommendation, and the reports are marked as partial.
+     *
+     * @return The number of recommendations that were written, and how many of them are blocking.
+     */
+    private SavedResults saveResults(final Configuration config, final ScanMetaData scanMetaData) throws IOException {
+        val customConfigFile = config.getRootDir().resolve(".codeguru-ignore.yml");
+        CustomConfiguration customConfig = null;
+        if (customConfigFile.toFile().isFile()) {
+            Log.info("Using customer provided config: " + customConfigFile.toAbsolutePath());
+            customConfig = CustomConfiguration.load(customConfigFile);
+        }
+        val filterConfig = customConfig;
+
+        val outputPath = Paths.get(outputDir);
+        if (!outputPath.toFile().exists()) {
+            if (!outputPath.toFile().mkdirs()) {
+                Log.error("Failed to create output directory %s.", outputPath);
+            }
+        }
+        CodeInsightExport.ReportWriter codeInsightsWriter = null;
+        if (bitbucketCodeInsightsDirectory != null) {
+            val bitBucketDir = new File(bitbucketCodeInsightsDirectory).getCanonicalFile();
+            FileUtils.mkdirs(bitBucketDir, true);
+            codeInsightsWriter = CodeInsightExport.openWriter(scanMetaData, bitBucketDir.toPath());
+        }
+
+        val severityThreshold = failOnSeverity == null ? null : RecommendationPrinter.severityToInt(failOnSeverity);
+        val downloaded = new AtomicInteger();
+        val blocking = new AtomicInteger();
+        val blameAdapter = blame ? openBlameAdapter(config, scanMetaData) : null;
+        try (BlameAdapter blamer = blameAdapter;
+             CodeInsightExport.ReportWriter insights = codeInsightsWriter;
+             ResultsAdapter.ResultsWriter writer = ResultsAdapter.openWriter(outputPath, scanMetaData)) {
+            ScanAdapter.streamResults(config, scanMetaData.getCodeReviewArn(), page -> {
+                downloaded.addAndGet(page.size());
+                val results = filterConfig == null
+                              ? page
+                              : RecommendationsFilter.filterRecommendations(page, filterConfig);
+                val pageBlame = blamer != null && !results.isEmpty()
+                                ? blamer.blame(results)
+                                : Collections.<String, BlameInfo>emptyMap();
+                writer.write(results, pageBlame);
+                if (insights != null) {
+                    insights.write(results, pageBlame);
+                }
+                if (failOnRecommendations && !results.isEmpty()) {
+                    RecommendationPrinter.print(results);
+                }
+                if (severityThreshold == null) {
+                    return true;
+                }
+                val blockingResults = results.stream()
+                                             .filter(r -> RecommendationPrinter.severityToInt(r) <= severityThreshold)
+                                             .collect(Collectors.toList());
+                if (blockingResults.isEmpty()) {
+                    return true;
+                }
+                if (!failOnRecommendations) {
+                    RecommendationPrinter.print(blockingResults);
+                }
+                blocking.addAndGet(blockingResults.size());
+                val reason = String.format("The download of recommendations was stopped after a recommendation with "
+                                           + "severity %s or higher was found. More recommendations may exist.",
+                                           failOnSeverity);
+                writer.markPartial(reason);
+                if (insights != null) {
+                    insights.markPartial(reason);
+                }
+                Log.warn(reason);
+                return false;
+            });
+            if (filterConfig != null) {
+                Log.info("%d recommendations were suppressed.", downloaded.get() - writer.getCount());
+            }
+            return new SavedResults(writer.getCount(), blocking.get());
+        }
+    }
+
+    /**
+     * @return The SHA of the commit that is analyzed, or null if the repository is not a git repository.
+     */
+    private String analyzedCommit(final Configuration config) throws IOException {
+        if (gitSession == null) {
+            return null;
+        }
+        val revision = config.getAfterCommit() != null ? config.getAfterCommit() : Constants.HEAD;
+        val commitId = gitSession.getRepository().resolve(revision + "^{commit}");
+        return commitId != null ? commitId.getName() : null;
+    }
+
+    /**
+     * @return An adapter that blames the recommendations of all pages of the review, or null if the repository is not
+     *     a git repository.
+     */
+    private BlameAdapter openBlameAdapter(final Configuration config,
+                                          final ScanMetaData scanMetaData) throws IOException {
+        val gitDir = config.getRootDir().resolve(".git");
+        if (gitSession == null && gitDir.toFile().isDirectory()) {
+            // a scan that is collected did not read the git metadata, so there is no session yet.
+            gitSession = GitSession.open(gitDir);
+        }
+        if (gitSession == null) {
+            Log.warn("Recommendations are not blamed because %s is not a git repository.", config.getRootDir());
+            return null;
+        }
+        // a collected scan was started from a commit that HEAD may have moved away from since.
+        val commit = scanMetaData.getCommitId() != null ? scanMetaData.getCommitId() : config.getAfterCommit();
+        return BlameAdapter.open(gitSession, config.getRootDir(), commit, blameThreads,
+                                 Paths.get(outputDir).resolve(".blame-cache"), blameCacheSizeMb * 1024 * 1024);
     }
 
     private void validateInitialConfig(final Configuration config) throws IOException {
@@ -230,7 +534,8 @@ public class Main {
         }
         sourceDirs.forEach(sourceDir -> {
             val path = Paths.get(sourceDir);
-            if (!path.toFile().isDirectory()) {
+            // source files packed from git do not have to be checked out.
+            if (!packFromGit && !path.toFile().isDirectory()) {
                 throw new GuruCliException(ErrorCodes.DIR_NOT_FOUND,
                                            sourceDir + " is not a valid directory.");
             }
@@ -247,14 +552,78 @@ public class Main {
                 }
             });
         }
+        if (uploadPartSizeMb < 5 || uploadPartSizeMb > MAX_UPLOAD_PART_SIZE_MB) {
+            throw new ParameterException("--upload-part-size must be between 5 and " + MAX_UPLOAD_PART_SIZE_MB
+                                         + " MB.");
+        }
+        if (startOnlyStateFile != null && collectStateFile != null) {
+            throw new ParameterException("--start-only cannot be combined with --collect.");
+        }
+        if (pollTimeoutMinutes < 0 || maxPolls < 0) {
+            throw new ParameterException("--poll-timeout and --max-polls must not be negative.");
+        }
+        if (failOnSeverity != null
+            && Severity.knownValues().stream().noneMatch(s -> s.toString().equalsIgnoreCase(failOnSeverity))) {
+            throw new ParameterException("--fail-on-severity must be one of " + Severity.knownValues() + ".");
+        }
+        if (zipThreads < 1) {
+            throw new ParameterException("--zip-threads must be at least 1.");
+        }
+        if (blameThreads < 1) {
+            throw new ParameterException("--blame-threads must be at least 1.");
+        }
+        if (blameCacheSizeMb < 0) {
+            throw new ParameterException("--blame-cache-size must not be negative.");
+        }
+        if (uploadThreads < 1) {
+            throw new ParameterException("--upload-threads must be at least 1.");
+        }
+        // the pool of an upload has one buffer more than threads, and a streamed upload fills one of its own. The
+        // content-defined parts of an incremental upload can be twice the part size.
+        val bufferSizeMb = incrementalUpload ? 2L * uploadPartSizeMb : uploadPartSizeMb;
+        val uploadBufferBytes = (uploadThreads + 2L) * bufferSizeMb * 1024L * 1024L;
+        if (uploadBufferBytes > Runtime.getRuntime().maxMemory()) {
+            throw new ParameterException(String.format(
+                "--upload-part-size %d MB with --upload-threads %d needs %d MB of memory for part buffers, but the"
+                + " maximum heap is %d MB. Use smaller parts or fewer upload threads.",
+                uploadPartSizeMb, uploadThreads, uploadBufferBytes / (1024L * 1024L),
+                Runtime.getRuntime().maxMemory() / (1024L * 1024L)));
+        }
+        if (incrementalUpload && (streamUpload || contentAddressedKeys)) {
+            throw new ParameterException("--incremental-upload cannot be combined with --stream-upload or"
+                                         + " --content-addressed-keys.");
+        }
+        if (contentAddressedKeys && streamUpload) {
+            // streamed objects do not store their SHA-256, which scans that reuse the object report.
+            throw new ParameterException("--content-addressed-keys cannot be combined with --stream-upload.");
+        }
+        if (packChangedFiles && commitRange == null) {
+            throw new ParameterException("--pack-changed-files requires --commit-range.");
+        }
+        if (includeChangedDirectories && !packChangedFiles) {
+            throw new ParameterException("--include-changed-directories requires --pack-changed-files.");
+        }
         config.setKeyId(this.kmsKeyId);
     }
 
-    private void tryDeleteS3Object(final S3Client s3Client, final String s3Bucket, final String s3Key) {
+    private void tryDeleteS3Object(final Configuration config,
+                                   final String s3Bucket,
+                                   final String s3Key,
+                                   final String referenceId) {
         try {
-            if (s3Key != null) {
-                s3Client.deleteObject(DeleteObjectRequest.builder().bucket(s3Bucket).key(s3Key).build());
+            if (s3Key == null) {
+                return;
             }
+            if (referenceId != null) {
+                // content-addressed objects are shared, only the last scan that uses them deletes them.
+                val references = new S3ObjectReferences(config.getS3Client(), s3Bucket, config.getAccountId(),
+                                                        referenceId);
+                if (!references.release(s3Key)) {
+                    Log.info("Keeping %s in %s because other scans still use it.", s3Key, s3Bucket);
+                }
+                return;
+            }
+            config.getS3Client().deleteObject(DeleteObjectRequest.builder().bucket(s3Bucket).key(s3Key).build());
         } catch (Exception e) {
             Log.warn("Failed to delete %s from %s. Please delete the object by hand.", s3Key, s3Bucket);
         }
@@ -306,4 +675,13 @@ public class Main {
                        .region(Region.of(regionName))
                        .build();
     }
+
+    /**
+     * The number of recommendations that were written, and how many of them are at or above --fail-on-severity.
+     */
+    @Value
+    private static class SavedResults {
+        private final int count;
+        private final int blockingCount;
+    }
 }
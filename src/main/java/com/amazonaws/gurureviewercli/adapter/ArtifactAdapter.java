@@ -4,22 +4,43 @@ import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
 import com.amazonaws.gurureviewercli.model.Configuration;
 import com.amazonaws.gurureviewercli.model.ErrorCodes;
 import com.amazonaws.gurureviewercli.model.ScanMetaData;
+import com.amazonaws.gurureviewercli.util.ArtifactCache;
+import com.amazonaws.gurureviewercli.util.ChangeScope;
+import com.amazonaws.gurureviewercli.util.GitIgnoreRules;
 import com.amazonaws.gurureviewercli.util.Log;
+import com.amazonaws.gurureviewercli.util.PackOptions;
+import com.amazonaws.gurureviewercli.util.PackResult;
+import com.amazonaws.gurureviewercli.util.VersionedFiles;
 import com.amazonaws.gurureviewercli.util.ZipUtils;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Value;
 import lombok.val;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import org.eclipse.jgit.lib.Constants;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 /**
@@ -27,6 +48,12 @@ import java.util.stream.Collectors;
  */
 public final class ArtifactAdapter {
 
+    // user metadata key for the SHA-256 of an uploaded zip.
+    private static final String SHA256_METADATA = "sha256";
+
+    // prefix of the entries in the git directory of the repository.
+    private static final String GIT_DIR_PREFIX = ".git/";
+
     /**
      * Zip and upload source and build artifacts to S3.
      *
@@ -45,9 +72,37 @@ public final class ArtifactAdapter {
                                             final List<Path> sourceDirs,
                                             final List<Path> buildDirs,
                                             final String bucketName) throws IOException {
+        return zipAndUpload(config, null, tempDir, repositoryDir, sourceDirs, buildDirs, bucketName);
+    }
+
+    /**
+     * Zip and upload source and build artifacts to S3, reading the git objects through the session of the run.
+     *
+     * @param config        The current {@link Configuration}
+     * @param gitSession    The session of the repository, or null if the repository is opened when it is needed.
+     * @param tempDir       A temp directory where files can be copied to and zipped. Will be deleted after completion.
+     * @param repositoryDir The root directory of the repo to analyze
+     * @param sourceDirs    The list of source directories under repositoryDir.
+     * @param buildDirs     The list of build directories (can be empty).
+     * @param bucketName    The name of the S3 bucket that should be used for the upload.
+     * @return Metadata about what was zipped and uploaded.
+     * @throws IOException If writing to tempDir fails.
+     */
+    public static ScanMetaData zipAndUpload(final Configuration config,
+                                            @Nullable final GitSession gitSession,
+                                            final Path tempDir,
+                                            final Path repositoryDir,
+                                            final List<Path> sourceDirs,
+                                            final List<Path> buildDirs,
+                                            final String bucketName) throws IOException {
         try {
+            if (config.isContentAddressedKeys() && config.getArtifactReferenceId() == null) {
+                config.setArtifactReferenceId(UUID.randomUUID().toString());
+            }
             boolean scanVersionedFilesOnly = false;
-            if (config.getVersionedFiles() != null && !config.getVersionedFiles().isEmpty()) {
+            // files packed from git objects are all under version control.
+            if (!config.isPackFromGit() && config.getVersionedFiles() != null
+                && !config.getVersionedFiles().isEmpty()) {
                 scanVersionedFilesOnly =
                     !config.isInteractiveMode() ||
                     config.getTextIO()
@@ -56,51 +111,58 @@ public final class ArtifactAdapter {
                           .withFalseInput("n")
                           .read("Only analyze files under version control?");
             }
-            final String sourceKey;
-            if (scanVersionedFilesOnly) {
-                val filesToScan = new ArrayList<Path>(ZipUtils.getFilesInDirectories(sourceDirs));
-                val totalFiles = filesToScan.size();
-                filesToScan.retainAll(config.getVersionedFiles()); // only keep versioned files.
-                val versionedFiles = filesToScan.size();
-                if (versionedFiles == 0) {
+            final Callable<UploadedArtifact> sourcePipeline;
+            if (config.isPackFromGit()) {
+                sourcePipeline = () -> zipAndUploadCommit("analysis-src-", sourceDirs, buildDirs, repositoryDir,
+                        bucketName, tempDir, config, gitSession);
+            } else if (scanVersionedFilesOnly) {
+                val versionedFiles = VersionedFiles.of(repositoryDir.toRealPath(), config.getVersionedFiles());
+                val changeScope = changeScope(repositoryDir, config);
+                final List<Path> filesToScan;
+                if (changeScope != null) {
+                    filesToScan = changeScope.listFiles(sourceDirs);
+                    filesToScan.removeIf(file -> !versionedFiles.contains(file));
+                } else {
+                    // only walk the directories that have versioned files.
+                    filesToScan = ZipUtils.getVersionedFilesInDirectories(sourceDirs, versionedFiles);
+                }
+                if (filesToScan.isEmpty()) {
                     Log.error(sourceDirs.toString());
                     Log.error(config.getVersionedFiles().toString());
                     throw new GuruCliException(ErrorCodes.GIT_EMPTY_DIFF,
                                                "No versioned files to analyze in directories: " + sourceDirs);
                 }
                 Log.info("Adding %d out of %d files under version control in %s",
-                         versionedFiles, totalFiles, repositoryDir.toAbsolutePath());
-                filesToScan.addAll(ZipUtils.getFilesInDirectory(repositoryDir.resolve(".git")));
-                sourceKey = zipAndUploadFiles("analysis-src-" + UUID.randomUUID(), filesToScan, buildDirs,
-                        repositoryDir, bucketName, tempDir, config.getAccountId(), config.getS3Client());
+                         filesToScan.size(), versionedFiles.size(), repositoryDir.toAbsolutePath());
+                sourcePipeline = () -> zipAndUploadFiles("analysis-src-", filesToScan, buildDirs,
+                        repositoryDir, bucketName, tempDir, config, gitSession);
             } else {
-                val sourceDirsAndGit = new ArrayList<Path>(sourceDirs);
-                if (config.getBeforeCommit() != null && config.getAfterCommit() != null) {
-                    // only add the git folder if a commit range is provided.
-                    sourceDirsAndGit.add(repositoryDir.resolve(".git"));
-                }
-                sourceKey = zipAndUploadDir("analysis-src-" + UUID.randomUUID(), sourceDirsAndGit,
-                        buildDirs, repositoryDir, bucketName, tempDir, config.getAccountId(), config.getS3Client());
+                sourcePipeline = () -> zipAndUploadSources("analysis-src-", sourceDirs, buildDirs,
+                        repositoryDir, bucketName, tempDir, config, gitSession);
             }
-            final String buildKey;
+            Callable<UploadedArtifact> buildPipeline = null;
             if (buildDirs != null && !buildDirs.isEmpty()) {
                 for (val buildDir : buildDirs) {
                     if (!buildDir.toFile().isDirectory()) {
                         throw new FileNotFoundException("Provided build directory not found " + buildDir);
                     }
                 }
-                buildKey =
-                    zipAndUploadDir("analysis-bin-" + UUID.randomUUID(), buildDirs,
-                            Collections.emptyList(), bucketName, tempDir, config.getAccountId(), config.getS3Client());
-            } else {
-                buildKey = null;
+                buildPipeline = () -> zipAndUploadDir("analysis-bin-", buildDirs,
+                        Collections.emptyList(), bucketName, tempDir, config);
             }
+            // source and build artifacts are independent, so they are packed and uploaded at the same time.
+            val uploaded = runPipelines(Arrays.asList(sourcePipeline, buildPipeline), bucketName, config);
+            val source = uploaded.get(0);
+            val build = uploaded.get(1);
             return ScanMetaData.builder()
                                .bucketName(bucketName)
                                .repositoryRoot(repositoryDir)
                                .sourceDirectories(sourceDirs)
-                               .sourceKey(sourceKey)
-                               .buildKey(buildKey)
+                               .sourceKey(source != null ? source.getS3Key() : null)
+                               .sourceSha256(source != null ? source.getSha256() : null)
+                               .buildKey(build != null ? build.getS3Key() : null)
+                               .buildSha256(build != null ? build.getSha256() : null)
+                               .artifactReferenceId(config.getArtifactReferenceId())
                                .build();
         } finally {
             // Delete the temp dir.
@@ -113,77 +175,473 @@ public final class ArtifactAdapter {
     }
 
 
-    private static String zipAndUploadDir(final String artifactName,
-                                          final List<Path> dirNames,
-                                          final List<Path> excludeList,
-                                          final String bucketName,
-                                          final Path tempDir,
-                                          final String accountId,
-                                          final S3Client s3Client) throws IOException {
-        return zipAndUploadDir(artifactName, dirNames, excludeList, null, bucketName, tempDir, accountId, s3Client);
+    /**
+     * Run the pipelines concurrently and wait for all of them. If one of them fails, the others are still awaited,
+     * so that the artifacts they uploaded can be deleted from S3 before the failure is rethrown.
+     *
+     * @param pipelines The pipelines to run. Null entries are skipped.
+     * @return The uploaded artifacts, in the order of the pipelines. Null for skipped pipelines.
+     */
+    private static List<UploadedArtifact> runPipelines(final List<Callable<UploadedArtifact>> pipelines,
+                                                       final String bucketName,
+                                                       final Configuration config) throws IOException {
+        val threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("artifact-pipeline-%d").build();
+        val executor = Executors.newFixedThreadPool(pipelines.size(), threadFactory);
+        try {
+            val futures = new ArrayList<Future<UploadedArtifact>>(pipelines.size());
+            for (val pipeline : pipelines) {
+                futures.add(pipeline != null ? executor.submit(pipeline) : null);
+            }
+            val uploaded = new ArrayList<UploadedArtifact>(pipelines.size());
+            Throwable failure = null;
+            for (val future : futures) {
+                try {
+                    uploaded.add(future != null ? future.get() : null);
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                    uploaded.add(null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while uploading artifacts to " + bucketName);
+                }
+            }
+            if (failure == null) {
+                return uploaded;
+            }
+            for (val artifact : uploaded) {
+                if (artifact != null) {
+                    deleteUploadedArtifact(bucketName, artifact.getS3Key(), config);
+                }
+            }
+            Throwables.throwIfInstanceOf(failure, IOException.class);
+            Throwables.throwIfUnchecked(failure);
+            throw new IOException(failure);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private static String zipAndUploadDir(final String artifactName,
-                                          final List<Path> dirNames,
-                                          final List<Path> excludeList,
-                                          final Path rootDir,
-                                          final String bucketName,
-                                          final Path tempDir,
-                                          final String accountId,
-                                          final S3Client s3Client) throws IOException {
+    private static UploadedArtifact zipAndUploadDir(final String artifactPrefix,
+                                                    final List<Path> dirNames,
+                                                    final List<Path> excludeList,
+                                                    final String bucketName,
+                                                    final Path tempDir,
+                                                    final Configuration config) throws IOException {
         if (dirNames != null) {
-            val zipFileName = artifactName + ".zip";
-            val zipFile = tempDir.resolve(zipFileName).toAbsolutePath();
-            val s3Key = zipFileName;
-            if (!zipFile.toFile().isFile()) {
-                if (rootDir != null) {
-                    ZipUtils.pack(dirNames, excludeList, rootDir, zipFile.toString());
-                } else {
-                    ZipUtils.pack(dirNames, excludeList, zipFile.toString());
-                }
-            }
-            val putObjectRequest = PutObjectRequest.builder()
-                                                   .bucket(bucketName)
-                                                   .key(s3Key)
-                                                   .expectedBucketOwner(accountId)
-                                                   .build();
-            s3Client.putObject(putObjectRequest, zipFile);
-            return s3Key;
+            val entries = ZipUtils.listEntries(dirNames, excludeList);
+            return packAndUpload(artifactPrefix, entries, bucketName, tempDir, config);
         }
         return null;
     }
 
-    private static String zipAndUploadFiles(final String artifactName,
-                                            final List<Path> files,
-                                            final List<Path> excludeDirs,
-                                            final Path rootDir,
-                                            final String bucketName,
-                                            final Path tempDir,
-                                            final String accountId,
-                                            final S3Client s3Client) throws IOException {
+    private static UploadedArtifact zipAndUploadFiles(final String artifactPrefix,
+                                                      final List<Path> files,
+                                                      final List<Path> excludeDirs,
+                                                      final Path rootDir,
+                                                      final String bucketName,
+                                                      final Path tempDir,
+                                                      final Configuration config,
+                                                      @Nullable final GitSession gitSession) throws IOException {
         if (files != null && rootDir != null) {
-            val zipFileName = artifactName + ".zip";
-            val zipFile = tempDir.resolve(zipFileName).toAbsolutePath();
-            val s3Key = zipFileName;
-            if (!zipFile.toFile().isFile()) {
-                ZipUtils.packFiles(files, excludeDirs, rootDir, zipFile);
-            }
-            val putObjectRequest = PutObjectRequest.builder()
-                                                   .bucket(bucketName)
-                                                   .key(s3Key)
-                                                   .expectedBucketOwner(accountId)
-                                                   .build();
-            s3Client.putObject(putObjectRequest, zipFile);
-            return s3Key;
+            val entries = ZipUtils.listFileEntries(files, excludeDirs, rootDir);
+            // the versioned files are analyzed with the history of the repository.
+            entries.addAll(gitDirEntries(rootDir, excludeDirs, tempDir, config, gitSession));
+            return packAndUpload(artifactPrefix, entries, bucketName, tempDir, config);
         }
         return null;
     }
 
+    /**
+     * Pack the source directories of the repository. Files that git ignores are skipped, unless ignored files are
+     * included. The git directory is only packed if a commit range is analyzed, or if it is in one of the source
+     * directories, and it is replaced by a minimal repository then.
+     */
+    private static UploadedArtifact zipAndUploadSources(final String artifactPrefix,
+                                                        final List<Path> sourceDirs,
+                                                        final List<Path> excludeDirs,
+                                                        final Path repositoryDir,
+                                                        final String bucketName,
+                                                        final Path tempDir,
+                                                        final Configuration config,
+                                                        @Nullable final GitSession gitSession) throws IOException {
+        val changeScope = changeScope(repositoryDir, config);
+        // the changed files are versioned, so ignore rules do not apply to them.
+        val entries = changeScope != null
+                      ? ZipUtils.listFileEntries(changeScope.listFiles(sourceDirs), excludeDirs, repositoryDir)
+                      : ZipUtils.listEntries(sourceDirs, excludeDirs, repositoryDir,
+                                             ignoreRules(repositoryDir, config));
+        if (changeScope != null) {
+            if (entries.isEmpty()) {
+                throw new GuruCliException(ErrorCodes.GIT_EMPTY_DIFF,
+                                           "No changed files to analyze in directories: " + sourceDirs);
+            }
+            Log.info("Adding %d files for %d changed paths in %s",
+                     entries.size(), changeScope.getChangedPathCount(), repositoryDir.toAbsolutePath());
+        }
+        val hasGitDir = entries.removeIf(entry -> entry.getName().startsWith(GIT_DIR_PREFIX));
+        if (hasGitDir || hasCommitRange(config)) {
+            entries.addAll(gitDirEntries(repositoryDir, excludeDirs, tempDir, config, gitSession));
+        }
+        return packAndUpload(artifactPrefix, entries, bucketName, tempDir, config);
+    }
+
+    /**
+     * Pack the source files of the analyzed commit from the git object database instead of the working tree. The
+     * commit is the after commit of the commit range, or HEAD.
+     */
+    private static UploadedArtifact zipAndUploadCommit(final String artifactPrefix,
+                                                       final List<Path> sourceDirs,
+                                                       final List<Path> excludeDirs,
+                                                       final Path repositoryDir,
+                                                       final String bucketName,
+                                                       final Path tempDir,
+                                                       final Configuration config,
+                                                       @Nullable final GitSession gitSession) throws IOException {
+        val commit = config.getAfterCommit() != null ? config.getAfterCommit() : Constants.HEAD;
+        val gitDir = repositoryDir.resolve(".git");
+        val excluded = excludeDirs != null ? excludeDirs : Collections.<Path>emptyList();
+        // the session of the run is reused if there is one, and stays open.
+        try (val tree = gitSession != null ? GitTreeSource.of(gitSession) : GitTreeSource.open(gitDir)) {
+            val entries = tree.listEntries(commit, sourceDirs, excluded);
+            val changeScope = changeScope(repositoryDir, config);
+            if (changeScope != null) {
+                entries.removeIf(entry -> !changeScope.includes(entry.getName()));
+            }
+            Log.info("Packing %d files of %s from the git object database", entries.size(), commit);
+            if (hasCommitRange(config)) {
+                // the history is not part of the tree, so it is packed as a git directory.
+                entries.addAll(gitDirEntries(repositoryDir, excluded, tempDir, config, gitSession));
+            }
+            // the repository has to stay open until the entries are packed.
+            return packAndUpload(artifactPrefix, entries, bucketName, tempDir, config);
+        }
+    }
+
+    /**
+     * List the entries of the git directory. Unless the full git directory is requested, a minimal repository with
+     * only the analyzed commits and their trees is written to tempDir and packed as the .git directory, so that the
+     * size of the artifact scales with the commit range instead of the history of the repository. If the minimal
+     * repository cannot be written, the git directory of the repository is packed.
+     */
+    private static List<ZipUtils.PackEntry> gitDirEntries(final Path repositoryDir,
+                                                          final List<Path> excludeDirs,
+                                                          final Path tempDir,
+                                                          final Configuration config,
+                                                          @Nullable final GitSession gitSession) throws IOException {
+        val gitDir = repositoryDir.resolve(".git");
+        if (!gitDir.toFile().isDirectory()) {
+            return Collections.emptyList();
+        }
+        if (!config.isFullGitDir()) {
+            val afterCommit = config.getAfterCommit() != null ? config.getAfterCommit() : Constants.HEAD;
+            try {
+                val targetDir = Files.createTempDirectory(tempDir, "git").resolve(".git");
+                val written = gitSession != null
+                              ? MinimalGitRepository.write(gitSession, config.getBeforeCommit(), afterCommit, targetDir)
+                              : MinimalGitRepository.write(gitDir, config.getBeforeCommit(), afterCommit, targetDir);
+                val minimalGitDir = written.toRealPath();
+                return ZipUtils.listFileEntries(ZipUtils.getFilesInDirectory(minimalGitDir),
+                                                Collections.emptyList(), minimalGitDir.getParent());
+            } catch (IOException | RuntimeException e) {
+                Log.warn("Failed to write a minimal git repository, packing %s instead: %s", gitDir, e.getMessage());
+            }
+        }
+        return ZipUtils.listFileEntries(ZipUtils.getFilesInDirectory(gitDir), excludeDirs, repositoryDir);
+    }
+
+    /**
+     * @return The changed files that are packed instead of all source files, or null if all source files are packed.
+     *     The changed paths are computed by the first call.
+     */
+    @Nullable
+    private static ChangeScope changeScope(final Path repositoryDir, final Configuration config) throws IOException {
+        if (!config.isPackChangedFiles() || config.getChangedPaths() == null) {
+            return null;
+        }
+        return new ChangeScope(repositoryDir.toRealPath(), config.getChangedPaths().get(),
+                               config.isIncludeChangedDirectories());
+    }
+
+    /**
+     * @return The ignore rules of the repository, or null if ignored files are packed too.
+     */
+    @Nullable
+    private static GitIgnoreRules ignoreRules(final Path repositoryDir, final Configuration config) throws IOException {
+        return config.isIncludeIgnoredFiles() ? null : GitIgnoreRules.load(repositoryDir);
+    }
+
+    private static boolean hasCommitRange(final Configuration config) {
+        return config.getBeforeCommit() != null && config.getAfterCommit() != null;
+    }
+
+    /**
+     * Pack an artifact and upload it to S3. By default, the zip is written to tempDir and uploaded once packing is
+     * done. In streaming mode, the zip is written directly into a multipart upload so that packing and uploading
+     * overlap and no zip file is written to disk. If an artifact cache is configured, the zip is written into the
+     * cache instead, and zips and S3 objects from earlier runs are reused if the content did not change. With
+     * content-addressed keys, the S3 key is derived from the content, and nothing is packed or uploaded if an object
+     * with that key already exists.
+     */
+    private static UploadedArtifact packAndUpload(final String artifactPrefix,
+                                                  final List<ZipUtils.PackEntry> entries,
+                                                  final String bucketName,
+                                                  final Path tempDir,
+                                                  final Configuration config) throws IOException {
+        if (config.isContentAddressedKeys()) {
+            return packAndUploadContentAddressed(artifactPrefix, entries, bucketName, tempDir, config);
+        }
+        val s3Key = artifactPrefix + UUID.randomUUID() + ".zip";
+        if (config.getArtifactCache() != null) {
+            return packAndUploadCached(artifactPrefix, entries, bucketName, s3Key, config);
+        }
+        return packAndUploadTo(artifactPrefix, entries, bucketName, s3Key, tempDir, config);
+    }
+
+    private static UploadedArtifact packAndUploadTo(final String artifactPrefix,
+                                                    final List<ZipUtils.PackEntry> entries,
+                                                    final String bucketName,
+                                                    final String s3Key,
+                                                    final Path tempDir,
+                                                    final Configuration config) throws IOException {
+        if (config.isStreamUpload()) {
+            Log.info("Streaming %s to s3://%s", s3Key, bucketName);
+            val upload = new S3MultipartOutputStream(config.getS3Client(), bucketName, s3Key, config.getAccountId(),
+                                                     uploadPartSize(config), uploadConcurrency(config));
+            final PackResult packed;
+            try {
+                packed = ZipUtils.pack(entries, upload, packOptions(config));
+            } catch (IOException | RuntimeException e) {
+                upload.abort();
+                throw e;
+            }
+            upload.close();
+            return new UploadedArtifact(s3Key, packed.getSha256());
+        }
+        val zipFile = tempDir.resolve(s3Key).toAbsolutePath();
+        final PackResult packed;
+        try (val out = Files.newOutputStream(Files.createFile(zipFile))) {
+            packed = ZipUtils.pack(entries, out, packOptions(config));
+        }
+        val uploadedKey = upload(artifactPrefix, zipFile, bucketName, s3Key, packed, config);
+        return new UploadedArtifact(uploadedKey, packed.getSha256());
+    }
+
+    private static UploadedArtifact packAndUploadContentAddressed(final String artifactPrefix,
+                                                                  final List<ZipUtils.PackEntry> entries,
+                                                                  final String bucketName,
+                                                                  final Path tempDir,
+                                                                  final Configuration config) throws IOException {
+        val contentHash = ArtifactCache.hashContent(artifactKind(artifactPrefix, config), entries,
+                                                    config.getRootDir());
+        val sharedKey = artifactPrefix + contentHash + ".zip";
+        val references = new S3ObjectReferences(config.getS3Client(), bucketName, config.getAccountId(),
+                                                config.getArtifactReferenceId());
+        final String s3Key;
+        if (references.acquire(sharedKey)) {
+            val existing = headS3Object(bucketName, sharedKey, config);
+            final Optional<String> existingSha256 = existing.map(head -> head.metadata().get(SHA256_METADATA));
+            if (existingSha256.isPresent()) {
+                Log.info("Skipping upload of s3://%s/%s because it already exists", bucketName, sharedKey);
+                return new UploadedArtifact(sharedKey, existingSha256.get());
+            }
+            if (existing.isPresent()) {
+                // the object has the same content, so it is replaced with a copy that records its SHA-256.
+                Log.info("Uploading s3://%s/%s again because it has no SHA-256", bucketName, sharedKey);
+            }
+            s3Key = sharedKey;
+        } else {
+            // another scan is deleting the shared object, so this scan uploads a copy that no other scan uses.
+            s3Key = artifactPrefix + contentHash + "-" + config.getArtifactReferenceId() + ".zip";
+            Log.info("s3://%s/%s is being deleted by another scan, uploading to %s", bucketName, sharedKey, s3Key);
+        }
+        if (config.getArtifactCache() != null) {
+            return packAndUploadCached(artifactPrefix, entries, bucketName, s3Key, config);
+        }
+        return packAndUploadTo(artifactPrefix, entries, bucketName, s3Key, tempDir, config);
+    }
+
+    private static UploadedArtifact packAndUploadCached(final String artifactPrefix,
+                                                        final List<ZipUtils.PackEntry> entries,
+                                                        final String bucketName,
+                                                        final String s3Key,
+                                                        final Configuration config) throws IOException {
+        val cache = config.getArtifactCache();
+        val cacheKey = cache.computeKey(artifactKind(artifactPrefix, config), entries, config.getRootDir());
+        // content-addressed objects are shared with other scans, so the cache must not delete them on eviction.
+        val ownsS3Objects = !config.isContentAddressedKeys();
+        val cachedZip = cache.lookup(cacheKey);
+        final Path zipFile;
+        final PackResult packed;
+        if (cachedZip.isPresent()) {
+            zipFile = cachedZip.get();
+            // zips cached by older versions have no stored checksums.
+            val cachedChecksums = cache.findChecksums(cacheKey);
+            packed = cachedChecksums.isPresent() ? cachedChecksums.get() : ZipUtils.checksum(zipFile);
+            val cachedS3Key = ownsS3Objects ? cache.findS3Key(cacheKey, bucketName) : Optional.<String>empty();
+            if (cachedS3Key.isPresent() && headS3Object(bucketName, cachedS3Key.get(), config).isPresent()) {
+                Log.info("Reusing s3://%s/%s because the content did not change", bucketName, cachedS3Key.get());
+                return new UploadedArtifact(cachedS3Key.get(), packed.getSha256());
+            }
+            Log.info("Reusing cached zip %s because the content did not change", zipFile);
+        } else {
+            val tempZip = cache.newTempFile(cacheKey);
+            try {
+                try (val out = Files.newOutputStream(tempZip)) {
+                    packed = ZipUtils.pack(entries, out, packOptions(config));
+                }
+                val stored = cache.store(cacheKey, tempZip, packed);
+                zipFile = stored.getZipFile();
+                for (val evicted : stored.getEvicted()) {
+                    deleteS3Object(evicted.getBucketName(), evicted.getKey(), config);
+                }
+            } finally {
+                Files.deleteIfExists(tempZip);
+            }
+        }
+        val uploadedKey = upload(artifactPrefix, zipFile, bucketName, s3Key, packed, config);
+        if (ownsS3Objects) {
+            cache.recordS3Key(cacheKey, bucketName, uploadedKey);
+        }
+        return new UploadedArtifact(uploadedKey, packed.getSha256());
+    }
+
+    /**
+     * @return The kind of artifact for content hashes. Reproducible and regular zips of the same files differ, so
+     *     they must not share a hash.
+     */
+    private static String artifactKind(final String artifactPrefix, final Configuration config) {
+        return config.isReproducibleZip() ? artifactPrefix + "reproducible" : artifactPrefix;
+    }
+
+    /**
+     * Upload a zip with the checksums from packing it. Its SHA-256 is also stored in the object metadata, so that
+     * scans which reuse the object can report it without downloading the zip. If uploads are resumable, an
+     * interrupted upload of the same zip from an earlier run is resumed. In incremental mode, the parts that did not
+     * change since the last upload are copied from the last artifact in S3 instead.
+     *
+     * @return The key the zip was uploaded to, which is the key of the earlier upload if one was resumed.
+     */
+    private static String upload(final String artifactPrefix,
+                                 final Path zipFile,
+                                 final String bucketName,
+                                 final String s3Key,
+                                 final PackResult packed,
+                                 final Configuration config) throws IOException {
+        val metadata = Collections.singletonMap(SHA256_METADATA, packed.getSha256());
+        if (config.isIncrementalUpload() && config.getUploadStateDir() != null) {
+            val manifestFile = config.getUploadStateDir().resolve(artifactPrefix + "manifest.json");
+            // the cache owns the objects it uploaded, and deletes them on eviction.
+            IncrementalUpload.uploadFile(config.getS3Client(), bucketName, s3Key, config.getAccountId(), zipFile,
+                                         uploadPartSize(config), uploadConcurrency(config), metadata, packed,
+                                         manifestFile, config.getArtifactCache() == null);
+            return s3Key;
+        }
+        if (config.isResumableUpload() && config.getUploadStateDir() != null) {
+            // runs that upload different zips, e.g. at the same time, must not share the state.
+            val stateFile = config.getUploadStateDir().resolve(artifactPrefix + packed.getSha256() + "-upload.json");
+            // a content-addressed key was marked as referenced, so the zip must be uploaded to exactly that key.
+            return ResumableUpload.uploadFile(config.getS3Client(), bucketName, s3Key,
+                                              config.isContentAddressedKeys(), config.getAccountId(), zipFile,
+                                              uploadPartSize(config), uploadConcurrency(config), metadata, packed,
+                                              stateFile);
+        }
+        MultipartUpload.uploadFile(config.getS3Client(), bucketName, s3Key, config.getAccountId(), zipFile,
+                                   uploadPartSize(config), uploadConcurrency(config), metadata, packed);
+        return s3Key;
+    }
+
+    private static Optional<HeadObjectResponse> headS3Object(final String bucketName,
+                                                             final String s3Key,
+                                                             final Configuration config) {
+        try {
+            return Optional.of(config.getS3Client().headObject(HeadObjectRequest.builder()
+                                                                                .bucket(bucketName)
+                                                                                .key(s3Key)
+                                                                                .expectedBucketOwner(
+                                                                                    config.getAccountId())
+                                                                                .build()));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Delete an artifact of this scan, unless it is still needed. Content-addressed artifacts are only deleted if no
+     * other scan references them, and artifacts in the cache are owned by the cache and may be reused by the next
+     * run. Incremental uploads keep the artifact as the base of the next upload.
+     */
+    private static void deleteUploadedArtifact(final String bucketName,
+                                               final String s3Key,
+                                               final Configuration config) {
+        if (config.isContentAddressedKeys()) {
+            new S3ObjectReferences(config.getS3Client(), bucketName, config.getAccountId(),
+                                   config.getArtifactReferenceId()).release(s3Key);
+            return;
+        }
+        if (config.getArtifactCache() != null || config.isIncrementalUpload()) {
+            return;
+        }
+        deleteS3Object(bucketName, s3Key, config);
+    }
+
+    private static void deleteS3Object(final String bucketName, final String s3Key, final Configuration config) {
+        try {
+            config.getS3Client().deleteObject(DeleteObjectRequest.builder()
+                                                                 .bucket(bucketName)
+                                                                 .key(s3Key)
+                                                                 .expectedBucketOwner(config.getAccountId())
+                                                                 .build());
+        } catch (Exception e) {
+            Log.warn("Failed to delete %s from %s. Please delete the object by hand.", s3Key, bucketName);
+        }
+    }
+
+    private static PackOptions packOptions(final Configuration config) {
+        return PackOptions.builder()
+                          .threads(Math.max(1, config.getZipThreads()))
+                          .reproducible(config.isReproducibleZip())
+                          .build();
+    }
+
+    private static int uploadPartSize(final Configuration config) {
+        if (config.getUploadPartSizeMb() <= 0) {
+            return MultipartUpload.DEFAULT_PART_SIZE;
+        }
+        // multiply as long, so that a large size does not overflow before it is clamped.
+        val partSize = config.getUploadPartSizeMb() * 1024L * 1024L;
+        return (int) Math.min(MultipartUpload.MAX_PART_SIZE, Math.max(MultipartUpload.MIN_PART_SIZE, partSize));
+    }
+
+    private static int uploadConcurrency(final Configuration config) {
+        if (config.getUploadThreads() <= 0) {
+            return MultipartUpload.DEFAULT_CONCURRENCY;
+        }
+        return config.getUploadThreads();
+    }
+
     private static List<Path> filterAgainstExcludeDirs(final List<Path> original, final List<Path> exclude) {
         return original.stream().filter(path -> exclude.stream().anyMatch(ex -> path.startsWith(ex)))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * An artifact that was uploaded to S3.
+     */
+    @Value
+    private static class UploadedArtifact {
+        private final String s3Key;
+        private final String sha256;
+    }
+
     private ArtifactAdapter() {
         // do not instantiate
     }
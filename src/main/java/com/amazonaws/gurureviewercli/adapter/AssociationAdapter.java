@@ -1,7 +1,5 @@
 package com.amazonaws.gurureviewercli.adapter;
 
-import java.util.concurrent.TimeUnit;
-
 import lombok.val;
 import software.amazon.awssdk.services.codegurureviewer.model.AssociateRepositoryRequest;
 import software.amazon.awssdk.services.codegurureviewer.model.DescribeRepositoryAssociationRequest;
@@ -21,6 +19,7 @@ import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
 import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
 import com.amazonaws.gurureviewercli.model.Configuration;
 import com.amazonaws.gurureviewercli.model.ErrorCodes;
+import com.amazonaws.gurureviewercli.model.PollStrategy;
 import com.amazonaws.gurureviewercli.util.Log;
 
 /**
@@ -29,7 +28,6 @@ import com.amazonaws.gurureviewercli.util.Log;
 public final class AssociationAdapter {
 
     private static final String BUCKET_NAME_PATTERN = "codeguru-reviewer-cli-%s-%s";
-    private static final long WAIT_TIME_IN_SECONDS = 1L;
 
     /**
      * Get or create a CodeGuru Repository Association (and, if necessary an S3 bucket).
@@ -137,6 +135,11 @@ public final class AssociationAdapter {
         DescribeRepositoryAssociationRequest associationRequest =
             DescribeRepositoryAssociationRequest.builder().associationArn(associationArn).build();
 
+        val strategy = config.getPollStrategy() != null
+                       ? config.getPollStrategy()
+                       : BackoffPollStrategy.forAssociation();
+        val poller = Poller.of("repository association " + associationArn, strategy, config);
+        poller.awaitNextCall();
         DescribeRepositoryAssociationResponse associationResponse =
             config.getGuruFrontendService().describeRepositoryAssociation(associationRequest);
         while (associationResponse != null) {
@@ -149,17 +152,13 @@ public final class AssociationAdapter {
                 return association;
             } else if (RepositoryAssociationState.ASSOCIATING.equals(association.state())) {
                 Log.print(".");
-                try {
-                    Thread.sleep(TimeUnit.SECONDS.toMillis(WAIT_TIME_IN_SECONDS));
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
             } else {
                 val msg = String.format("Repository association in unexpected state %s: %s",
                                         association.state(),
                                         association.stateReason());
                 throw new GuruCliException(ErrorCodes.ASSOCIATION_FAILED, msg);
             }
+            poller.awaitNextCall();
             associationResponse = config.getGuruFrontendService().describeRepositoryAssociation(associationRequest);
         }
         throw new GuruCliException(ErrorCodes.ASSOCIATION_FAILED, "Unexpected error during association");
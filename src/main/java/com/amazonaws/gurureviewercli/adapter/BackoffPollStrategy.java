@@ -0,0 +1,78 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import lombok.val;
+
+import com.amazonaws.gurureviewercli.model.PollStrategy;
+
+/**
+ * Polls with exponential backoff and jitter. Without an expected duration, each delay is half of the time that
+ * elapsed so far, between the initial and the maximum delay, so the delays grow by half with every call. With an
+ * expected duration, e.g. from earlier reviews of the same repository, the strategy first waits for half of the
+ * remaining expected time, so it only polls a few times before the operation usually completes, and backs off from
+ * the expected duration on when it takes longer. Every delay is randomized by up to 20% in either direction, so that
+ * many clients that started at the same time do not poll in lockstep.
+ */
+public final class BackoffPollStrategy implements PollStrategy {
+
+    private static final double JITTER = 0.2;
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final long expectedDurationMillis;
+    private final DoubleSupplier random;
+
+    /**
+     * @param initialDelayMillis     The shortest delay.
+     * @param maxDelayMillis         The longest delay once the expected duration has passed.
+     * @param expectedDurationMillis The expected duration of the operation, or null if it is not known.
+     */
+    public BackoffPollStrategy(final long initialDelayMillis,
+                               final long maxDelayMillis,
+                               @Nullable final Long expectedDurationMillis) {
+        this(initialDelayMillis, maxDelayMillis, expectedDurationMillis,
+             () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    BackoffPollStrategy(final long initialDelayMillis,
+                        final long maxDelayMillis,
+                        @Nullable final Long expectedDurationMillis,
+                        final DoubleSupplier random) {
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = Math.max(initialDelayMillis, maxDelayMillis);
+        this.expectedDurationMillis = expectedDurationMillis != null ? expectedDurationMillis : 0L;
+        this.random = random;
+    }
+
+    /**
+     * @param expectedDurationMillis The usual duration of a code review of the repository, or null if it is not known.
+     * @return The strategy to poll the state of a code review.
+     */
+    public static BackoffPollStrategy forCodeReview(@Nullable final Long expectedDurationMillis) {
+        return new BackoffPollStrategy(TimeUnit.SECONDS.toMillis(2), TimeUnit.SECONDS.toMillis(60),
+                                       expectedDurationMillis);
+    }
+
+    /**
+     * @return The strategy to poll the state of a new repository association, which usually takes a few seconds.
+     */
+    public static BackoffPollStrategy forAssociation() {
+        return new BackoffPollStrategy(TimeUnit.SECONDS.toMillis(1), TimeUnit.SECONDS.toMillis(10), null);
+    }
+
+    @Override
+    public long nextDelayMillis(final int calls, final long elapsedMillis) {
+        final long delay;
+        if (elapsedMillis < expectedDurationMillis) {
+            delay = Math.max(initialDelayMillis, (expectedDurationMillis - elapsedMillis) / 2);
+        } else {
+            val overtimeMillis = elapsedMillis - expectedDurationMillis;
+            delay = Math.min(maxDelayMillis, Math.max(initialDelayMillis, overtimeMillis / 2));
+        }
+        return Math.max(1L, Math.round(delay * (1 - JITTER + 2 * JITTER * random.getAsDouble())));
+    }
+}
@@ -0,0 +1,400 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.val;
+import org.eclipse.jgit.blame.BlameGenerator;
+import org.eclipse.jgit.blame.BlameResult;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
+
+import com.amazonaws.gurureviewercli.model.BlameInfo;
+import com.amazonaws.gurureviewercli.model.FileBlame;
+import com.amazonaws.gurureviewercli.util.JsonUtil;
+import com.amazonaws.gurureviewercli.util.Log;
+
+/**
+ * Enriches recommendations with the last change of their lines, as reported by git blame. Only the files that have
+ * recommendations are blamed, and only the lines of the recommendations in them, so the cost scales with the number
+ * of findings and not with the size of the repository. Files are blamed in parallel on the object database of the
+ * shared git session, and the blamed lines are cached by commit and path, so the next run for the same commit does
+ * not blame them again.
+ *
+ * An adapter is used for all pages of recommendations of a review. It keeps the blame of each file for the whole
+ * run, so a file with findings on several pages continues the blame it started instead of starting over. The cache
+ * is bounded by size, and the least recently used files are evicted when the adapter is closed.
+ */
+public final class BlameAdapter implements Closeable {
+
+    private final Repository repository;
+    private final Path workTree;
+    private final Path root;
+    private final @Nullable ObjectId commitId;
+    private final @Nullable Path cacheDir;
+    private final long maxCacheBytes;
+    private final ExecutorService executor;
+    // the files that were blamed in this run, by path. Pages are blamed one after the other, so a file is never
+    // blamed on two threads at the same time.
+    private final Map<String, BlamedFile> files = new HashMap<>();
+
+    private BlameAdapter(final GitSession session,
+                         final Path repositoryRoot,
+                         @Nullable final ObjectId commitId,
+                         final int threads,
+                         @Nullable final Path cacheDir,
+                         final long maxCacheBytes) throws IOException {
+        this.repository = session.getRepository();
+        this.workTree = session.getGitDir().toPath().toRealPath().getParent();
+        this.root = repositoryRoot.toRealPath();
+        this.commitId = commitId;
+        this.cacheDir = cacheDir;
+        this.maxCacheBytes = maxCacheBytes;
+        val threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("blame-%d").build();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), threadFactory);
+    }
+
+    /**
+     * Open an adapter to blame the recommendations of a review.
+     *
+     * @param session        The git session of the analyzed repository.
+     * @param repositoryRoot The directory that the file paths of the recommendations are relative to.
+     * @param commit         The analyzed commit, or null for HEAD.
+     * @param threads        The number of files that are blamed at the same time.
+     * @param cacheDir       The directory of the blame cache, or null to not cache blamed lines.
+     * @param maxCacheBytes  The size of the cache above which the least recently used files are evicted.
+     * @return The adapter. If the commit cannot be resolved, it blames nothing.
+     * @throws IOException If the repository root cannot be resolved.
+     */
+    public static BlameAdapter open(final GitSession session,
+                                    final Path repositoryRoot,
+                                    @Nullable final String commit,
+                                    final int threads,
+                                    @Nullable final Path cacheDir,
+                                    final long maxCacheBytes) throws IOException {
+        val revision = commit != null ? commit : Constants.HEAD;
+        val commitId = session.getRepository().resolve(revision + "^{commit}");
+        if (commitId == null) {
+            Log.warn("Cannot blame recommendations because %s is not a commit.", revision);
+        }
+        return new BlameAdapter(session, repositoryRoot, commitId, threads, cacheDir, maxCacheBytes);
+    }
+
+    /**
+     * Blame the lines of the recommendations.
+     *
+     * @param recommendations The recommendations.
+     * @return For each recommendation id, the most recent change of the lines of the recommendation. Recommendations
+     *     whose file is not in the commit are missing.
+     * @throws IOException If blaming is interrupted.
+     */
+    public Map<String, BlameInfo> blame(final List<RecommendationSummary> recommendations) throws IOException {
+        if (commitId == null) {
+            return Collections.emptyMap();
+        }
+        val byPath = new LinkedHashMap<String, List<RecommendationSummary>>();
+        for (val recommendation : recommendations) {
+            if (recommendation.filePath() == null || recommendation.startLine() == null) {
+                continue;
+            }
+            val file = root.resolve(recommendation.filePath()).normalize();
+            if (!file.startsWith(workTree) || file.equals(workTree)) {
+                continue;
+            }
+            val path = workTree.relativize(file).toString().replace('\\', '/');
+            byPath.computeIfAbsent(path, p -> new ArrayList<>()).add(recommendation);
+        }
+        if (byPath.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        try {
+            val futures = new LinkedHashMap<String, Future<FileBlame>>();
+            for (val entry : byPath.entrySet()) {
+                val lines = lines(entry.getValue());
+                val file = files.computeIfAbsent(entry.getKey(), BlamedFile::new);
+                futures.put(entry.getKey(), executor.submit(() -> blameFile(file, lines)));
+            }
+            val result = new HashMap<String, BlameInfo>();
+            for (val entry : futures.entrySet()) {
+                final FileBlame fileBlame;
+                try {
+                    fileBlame = entry.getValue().get();
+                } catch (ExecutionException e) {
+                    Log.warn("Failed to blame %s: %s", entry.getKey(), e.getCause().getMessage());
+                    continue;
+                }
+                for (val recommendation : byPath.get(entry.getKey())) {
+                    val blameInfo = latestChange(fileBlame, recommendation);
+                    if (blameInfo != null) {
+                        result.put(recommendation.recommendationId(), blameInfo);
+                    }
+                }
+            }
+            Log.info("Blamed %d of %d recommendations in %d files at %s",
+                     result.size(), recommendations.size(), byPath.size(), commitId.abbreviate(8).name());
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while blaming recommendations");
+        }
+    }
+
+    /**
+     * Stop the workers, release the blame of all files, and evict the least recently used files from the cache until
+     * it fits into its size bound.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (val file : files.values()) {
+            file.release();
+        }
+        files.clear();
+        if (cacheDir != null) {
+            evictCache(cacheDir);
+        }
+    }
+
+    /**
+     * Blame the lines of a file that are not known yet. Each file uses its own object reader, since readers are not
+     * thread-safe, but all of them share the object database and window cache of the repository.
+     */
+    private FileBlame blameFile(final BlamedFile file, final TreeSet<Integer> lines) throws IOException {
+        if (file.fileBlame == null) {
+            file.fileBlame = loadCached(cacheFile(file.path), file.path);
+            if (file.fileBlame == null) {
+                file.fileBlame = FileBlame.builder().commitId(commitId.name()).path(file.path).build();
+            }
+        }
+        val fileBlame = file.fileBlame;
+        val missing = new TreeSet<Integer>(lines);
+        missing.removeAll(fileBlame.getLines().keySet());
+        if (fileBlame.getLineCount() != null) {
+            // lines past the end of the file, e.g. because the working tree differs from the commit, have no blame.
+            missing.removeIf(line -> line > fileBlame.getLineCount());
+        }
+        if (missing.isEmpty()) {
+            return fileBlame;
+        }
+        if (file.result == null) {
+            file.generator = new BlameGenerator(repository, file.path);
+            file.generator.push(null, commitId);
+            file.result = BlameResult.create(file.generator);
+            if (file.result == null) {
+                // the file is not in the commit, so none of its lines has a blame.
+                file.release();
+                fileBlame.setLineCount(0);
+                storeCached(fileBlame, cacheFile(file.path));
+                return fileBlame;
+            }
+            fileBlame.setLineCount(file.result.getResultContents().size());
+        }
+        val blameResult = file.result;
+        val lineCount = fileBlame.getLineCount();
+        // blame each run of consecutive lines, the generator stops once all lines of a run have a source.
+        int runStart = -1;
+        int previous = -1;
+        for (val line : missing) {
+            if (line > lineCount) {
+                break;
+            }
+            if (line != previous + 1) {
+                if (runStart > 0) {
+                    blameResult.computeRange(runStart - 1, previous);
+                }
+                runStart = line;
+            }
+            previous = line;
+        }
+        if (runStart > 0) {
+            blameResult.computeRange(runStart - 1, previous);
+        }
+        for (val line : missing) {
+            if (line > lineCount) {
+                break;
+            }
+            val sourceCommit = blameResult.getSourceCommit(line - 1);
+            val author = blameResult.getSourceAuthor(line - 1);
+            if (sourceCommit != null && author != null) {
+                fileBlame.getLines().put(line, BlameInfo.builder()
+                                                        .commitId(sourceCommit.name())
+                                                        .authorName(author.getName())
+                                                        .authorEmail(author.getEmailAddress())
+                                                        .authorTime(author.getWhen().getTime() / 1000)
+                                                        .build());
+            }
+        }
+        storeCached(fileBlame, cacheFile(file.path));
+        return fileBlame;
+    }
+
+    @Nullable
+    private Path cacheFile(final String path) {
+        if (cacheDir == null) {
+            return null;
+        }
+        return cacheDir.resolve(commitId.name())
+                       .resolve(Hashing.sha256().hashString(path, StandardCharsets.UTF_8) + ".json");
+    }
+
+    private static TreeSet<Integer> lines(final List<RecommendationSummary> recommendations) {
+        val lines = new TreeSet<Integer>();
+        for (val recommendation : recommendations) {
+            val endLine = endLine(recommendation);
+            for (int line = Math.max(1, recommendation.startLine()); line <= endLine; line++) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static int endLine(final RecommendationSummary recommendation) {
+        val endLine = recommendation.endLine();
+        return endLine != null && endLine > recommendation.startLine() ? endLine : recommendation.startLine();
+    }
+
+    /**
+     * @return The most recent change of the lines of the recommendation, or null if none of them was blamed.
+     */
+    @Nullable
+    private static BlameInfo latestChange(final FileBlame fileBlame, final RecommendationSummary recommendation) {
+        BlameInfo latest = null;
+        val endLine = endLine(recommendation);
+        for (int line = Math.max(1, recommendation.startLine()); line <= endLine; line++) {
+            val blameInfo = fileBlame.getLines().get(line);
+            if (blameInfo != null && (latest == null || blameInfo.getAuthorTime() > latest.getAuthorTime())) {
+                latest = blameInfo;
+            }
+        }
+        return latest;
+    }
+
+    @Nullable
+    private static FileBlame loadCached(@Nullable final Path cacheFile, final String path) {
+        if (cacheFile == null || !cacheFile.toFile().isFile()) {
+            return null;
+        }
+        try {
+            val fileBlame = JsonUtil.loadFileBlame(cacheFile);
+            // the file name is a hash of the path, so check that it is the same file.
+            if (!path.equals(fileBlame.getPath()) || fileBlame.getLines() == null) {
+                return null;
+            }
+            // the cache evicts the least recently used files first.
+            Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return fileBlame;
+        } catch (IOException e) {
+            Log.warn("Ignoring unreadable blame cache %s: %s", cacheFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void storeCached(final FileBlame fileBlame, @Nullable final Path cacheFile) {
+        if (cacheFile == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(cacheFile.getParent());
+            // write a copy and move it into place, so that a run that is killed while writing leaves a valid cache.
+            val tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            JsonUtil.storeFileBlame(fileBlame, tempFile);
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.warn("Failed to cache the blame of %s in %s: %s", fileBlame.getPath(), cacheFile, e.getMessage());
+        }
+    }
+
+    private void evictCache(final Path directory) {
+        if (!directory.toFile().isDirectory()) {
+            return;
+        }
+        try {
+            final List<Path> cacheFiles;
+            try (val walk = Files.walk(directory, 2)) {
+                cacheFiles = walk.filter(file -> file.getFileName().toString().endsWith(".json"))
+                                 .collect(Collectors.toList());
+            }
+            long totalBytes = 0;
+            val lastModified = new HashMap<Path, Long>();
+            for (val file : cacheFiles) {
+                totalBytes += Files.size(file);
+                lastModified.put(file, Files.getLastModifiedTime(file).toMillis());
+            }
+            if (totalBytes <= maxCacheBytes) {
+                return;
+            }
+            cacheFiles.sort(Comparator.comparing(lastModified::get));
+            int evictedFiles = 0;
+            for (val file : cacheFiles) {
+                if (totalBytes <= maxCacheBytes) {
+                    break;
+                }
+                totalBytes -= Files.size(file);
+                Files.deleteIfExists(file);
+                evictedFiles++;
+            }
+            // remove the directories of commits that have no cached files anymore.
+            try (val commitDirs = Files.list(directory)) {
+                for (val commitDir : (Iterable<Path>) commitDirs::iterator) {
+                    val names = commitDir.toFile().list();
+                    if (names != null && names.length == 0) {
+                        Files.deleteIfExists(commitDir);
+                    }
+                }
+            }
+            Log.info("Evicted the blame of %d files from the blame cache in %s", evictedFiles, directory);
+        } catch (IOException | UncheckedIOException e) {
+            // another run may be evicting the same files.
+            Log.warn("Failed to evict files from the blame cache in %s: %s", directory, e.getMessage());
+        }
+    }
+
+    /**
+     * The blame of a file in this run. The blame result keeps its generator, so that lines of later pages continue
+     * the blame where it stopped.
+     */
+    private static final class BlamedFile {
+        private final String path;
+        private FileBlame fileBlame;
+        private BlameGenerator generator;
+        private BlameResult result;
+
+        BlamedFile(final String path) {
+            this.path = path;
+        }
+
+        void release() {
+            if (generator != null) {
+                generator.close();
+            }
+            generator = null;
+            result = null;
+        }
+    }
+}
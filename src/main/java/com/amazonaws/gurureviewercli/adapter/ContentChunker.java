@@ -0,0 +1,113 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.val;
+
+import com.amazonaws.gurureviewercli.model.ChunkManifest;
+
+/**
+ * Splits a file into content-defined chunks with a gear rolling hash. A chunk ends where the hash of the last bytes
+ * matches a bit pattern, so the boundaries depend on the content around them and not on their offset. If bytes are
+ * inserted or removed in one place, only the chunks around that place change, and all other chunks are the same as
+ * before, even though they moved.
+ *
+ * Chunks are used as multipart upload parts, so they are at least {@link MultipartUpload#MIN_PART_SIZE} long, except
+ * for the last one.
+ */
+final class ContentChunker {
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    // the table must never change, otherwise chunks of artifacts uploaded by earlier versions do not match.
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x6775727572657669L;
+        for (int i = 0; i < GEAR.length; i++) {
+            // SplitMix64
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final int minSize;
+    private final int maxSize;
+    private final long boundaryMask;
+
+    /**
+     * @param minSize     Minimum size of a chunk, except for the last one.
+     * @param averageBits After the minimum size, a chunk ends with a probability of 1 in 2^averageBits per byte.
+     * @param maxSize     Maximum size of a chunk.
+     */
+    ContentChunker(final int minSize, final int averageBits, final int maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        // the high bits of the gear hash depend on the last 64 bytes.
+        this.boundaryMask = -1L << (Long.SIZE - averageBits);
+    }
+
+    /**
+     * @param partSize The configured part size.
+     * @return A chunker for chunks of about the part size, and at most twice the part size.
+     */
+    static ContentChunker forPartSize(final int partSize) {
+        val minSize = Math.min(MultipartUpload.MIN_PART_SIZE, partSize);
+        val averageBits = Math.max(1, 31 - Integer.numberOfLeadingZeros(Math.max(1, partSize - minSize)));
+        return new ContentChunker(minSize, averageBits, Math.max(minSize, 2 * partSize));
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Split a file into chunks and hash each of them.
+     *
+     * @param file The file.
+     * @return The chunks, in the order of their offsets.
+     * @throws IOException If the file cannot be read.
+     */
+    List<ChunkManifest.Chunk> chunk(final Path file) throws IOException {
+        val chunks = new ArrayList<ChunkManifest.Chunk>();
+        val buffer = new byte[READ_BUFFER_SIZE];
+        long chunkStart = 0;
+        int chunkLength = 0;
+        long hash = 0;
+        Hasher hasher = Hashing.sha256().newHasher();
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                int hashedUpTo = 0;
+                for (int i = 0; i < read; i++) {
+                    hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+                    chunkLength++;
+                    if (chunkLength >= maxSize || chunkLength >= minSize && (hash & boundaryMask) == 0) {
+                        hasher.putBytes(buffer, hashedUpTo, i + 1 - hashedUpTo);
+                        hashedUpTo = i + 1;
+                        chunks.add(new ChunkManifest.Chunk(chunkStart, chunkLength, hasher.hash().toString()));
+                        chunkStart += chunkLength;
+                        chunkLength = 0;
+                        hash = 0;
+                        hasher = Hashing.sha256().newHasher();
+                    }
+                }
+                hasher.putBytes(buffer, hashedUpTo, read - hashedUpTo);
+            }
+        }
+        if (chunkLength > 0) {
+            chunks.add(new ChunkManifest.Chunk(chunkStart, chunkLength, hasher.hash().toString()));
+        }
+        return chunks;
+    }
+}
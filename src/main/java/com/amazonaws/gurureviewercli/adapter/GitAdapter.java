@@ -1,29 +1,27 @@
 package com.amazonaws.gurureviewercli.adapter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.file.Path;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Supplier;
 
+import com.google.common.base.Suppliers;
 import lombok.val;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.lib.Constants;
-import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevWalk;
-import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
 import com.amazonaws.gurureviewercli.model.Configuration;
 import com.amazonaws.gurureviewercli.model.ErrorCodes;
 import com.amazonaws.gurureviewercli.model.GitMetaData;
 import com.amazonaws.gurureviewercli.util.Log;
+import com.amazonaws.gurureviewercli.util.VersionedFiles;
 
 /**
  * Util to sanity-check if a repo is a valid git repository that can be analyzed by CodeGuru.
@@ -34,10 +32,34 @@ public final class GitAdapter {
     // this is the sha for an empty commit, so any diff against this will return the full repo content.
     private static final String GITHUB_EMPTY_COMMIT_SHA = "4b825dc642cb6eb9a060e54bf8d69288fbee4904";
 
-    @Nonnull
-    public static GitMetaData getGitMetaData(final Configuration config, final Path pathToRepo) throws IOException {
+    /**
+     * Open the repository once for the whole run. The session is passed to the later stages alongside the
+     * {@link Configuration}, and the caller closes it at the end of the run.
+     *
+     * @param pathToRepo The root of the repository.
+     * @return The session, or null if the directory is not under version control.
+     * @throws IOException If the path cannot be resolved.
+     */
+    @Nullable
+    public static GitSession openSession(final Path pathToRepo) throws IOException {
         val gitDir = pathToRepo.toRealPath().resolve(".git");
         if (!gitDir.toFile().isDirectory()) {
+            return null;
+        }
+        return openGitDir(gitDir);
+    }
+
+    /**
+     * @param config     The configuration of the run.
+     * @param session    The session of the repository, or null if it is not under version control.
+     * @param pathToRepo The root of the repository.
+     * @return The metadata of the repository.
+     */
+    @Nonnull
+    public static GitMetaData getGitMetaData(final Configuration config,
+                                             @Nullable final GitSession session,
+                                             final Path pathToRepo) {
+        if (session == null) {
             // if the directory is not under version control, return a dummy object.
             return GitMetaData.builder()
                               .repoRoot(pathToRepo)
@@ -45,16 +67,30 @@ public final class GitAdapter {
                               .currentBranch("unknown")
                               .build();
         }
-        return tryGetMetaData(config, pathToRepo.toRealPath().resolve(".git"));
+        return tryGetMetaData(config, session);
     }
 
     @Nonnull
-    protected static GitMetaData tryGetMetaData(final Configuration config, final Path gitDir) {
+    protected static GitSession openGitDir(final Path gitDir) {
         if (!gitDir.toFile().isDirectory()) {
             throw new GuruCliException(ErrorCodes.GIT_INVALID_DIR);
         }
-        val builder = new FileRepositoryBuilder();
-        try (val repository = builder.setGitDir(gitDir.toFile()).findGitDir().build()) {
+        try {
+            return GitSession.open(gitDir);
+        } catch (IOException e) {
+            throw new GuruCliException(ErrorCodes.GIT_INVALID_DIR, "Cannot read " + gitDir, e);
+        }
+    }
+
+    /**
+     * Read the metadata of the repository. The changed paths are read from the session when they are first used, so
+     * it has to stay open as long as the metadata is used.
+     */
+    @Nonnull
+    protected static GitMetaData tryGetMetaData(final Configuration config, final GitSession session) {
+        val gitDir = session.getGitDir().toPath();
+        try {
+            val repository = session.getRepository();
             val userName = repository.getConfig().getString("user", null, "email");
             val urlString = repository.getConfig().getString("remote", "origin", "url");
             val branchName = repository.getBranch();
@@ -69,7 +105,8 @@ public final class GitAdapter {
                                       .remoteUrl(urlString)
                                       .build();
 
-            metadata.setVersionedFiles(getChangedFiles(repository));
+            // the index is only read if the versioned files are used.
+            metadata.setVersionedFiles(VersionedFiles.readIndex(gitDir.getParent(), gitDir));
             config.setVersionedFiles(metadata.getVersionedFiles());
             if (config.getBeforeCommit() == null || config.getAfterCommit() == null) {
                 // ask if commits should be inferred or if the entire repo should be scanned.
@@ -89,63 +126,81 @@ public final class GitAdapter {
                 }
             }
 
-            validateCommits(config, repository);
+            validateCommits(config, session);
             metadata.setBeforeCommit(config.getBeforeCommit());
             metadata.setAfterCommit(config.getAfterCommit());
+            metadata.setChangedPaths(changedPaths(session, config.getBeforeCommit(), config.getAfterCommit()));
+            config.setChangedPaths(metadata.getChangedPaths());
             return metadata;
 
-        } catch (IOException | GitAPIException e) {
+        } catch (IOException e) {
             throw new GuruCliException(ErrorCodes.GIT_INVALID_DIR, "Cannot read " + gitDir, e);
         }
     }
 
-    private static Collection<Path> getChangedFiles(final Repository repository) throws IOException {
-        val headCommitId = repository.resolve(Constants.HEAD);
-        if (headCommitId == null) {
-            return Collections.emptySet();
-        }
-        val rootDir = repository.getWorkTree().toPath();
-        RevWalk revWalk = new RevWalk(repository);
-        RevCommit commit = revWalk.parseCommit(headCommitId);
-        val treeWalk = new TreeWalk(repository);
-        treeWalk.addTree(commit.getTree());
-        treeWalk.setRecursive(false);
-        val allFiles = new HashSet<Path>();
-        while (treeWalk.next()) {
-            if (treeWalk.isSubtree()) {
-                treeWalk.enterSubtree();
-            } else {
-                val normalizedFile = rootDir.resolve(treeWalk.getPathString()).toFile().getCanonicalFile();
-                if (normalizedFile.isFile()) {
-                    allFiles.add(normalizedFile.toPath());
-                }
-            }
-        }
-        return allFiles;
-    }
-
-    private static boolean validateCommits(final Configuration config, final Repository repo)
-        throws GitAPIException {
+    private static boolean validateCommits(final Configuration config, final GitSession session) throws IOException {
+        val repo = session.getRepository();
         String beforeCommitSha = config.getBeforeCommit();
         if (GITHUB_UNKNOWN_COMMIT.equals(config.getBeforeCommit())) {
             beforeCommitSha = GITHUB_EMPTY_COMMIT_SHA;
         }
 
-        val beforeTreeIter = treeForCommitId(repo, beforeCommitSha);
-        val afterTreeIter = treeForCommitId(repo, config.getAfterCommit());
+        try (val treeWalk = diffWalk(session, beforeCommitSha, config.getAfterCommit())) {
+            // Resolve git constants, such as HEAD^^ to the actual commit hash
+            config.setBeforeCommit(resolveSha(repo, beforeCommitSha));
+            config.setAfterCommit(resolveSha(repo, config.getAfterCommit()));
 
-        // Resolve git constants, such as HEAD^^ to the actual commit hash
-        config.setBeforeCommit(resolveSha(repo, beforeCommitSha));
-        config.setAfterCommit(resolveSha(repo, config.getAfterCommit()));
-
-        val diffEntries = new Git(repo).diff().setOldTree(beforeTreeIter).setNewTree(afterTreeIter).call();
-        if (diffEntries.isEmpty()) {
-            throw new GuruCliException(ErrorCodes.GIT_EMPTY_DIFF, String.format("No difference between {} and {}",
-                                                                                beforeTreeIter, afterTreeIter));
+            // the walk stops at the first path that differs, instead of diffing the whole range.
+            if (!treeWalk.next()) {
+                throw new GuruCliException(ErrorCodes.GIT_EMPTY_DIFF,
+                                           String.format("No difference between %s and %s",
+                                                         config.getBeforeCommit(), config.getAfterCommit()));
+            }
         }
         return true;
     }
 
+    /**
+     * @return The paths that differ between the commits. They are only computed when they are first used, since
+     *     only some stages need them and the diff of a large range is expensive. The session has to be open then.
+     */
+    private static Supplier<Set<String>> changedPaths(final GitSession session,
+                                                      final String beforeCommit,
+                                                      final String afterCommit) {
+        return Suppliers.memoize(() -> {
+            try (val treeWalk = diffWalk(session, beforeCommit, afterCommit)) {
+                val paths = new LinkedHashSet<String>();
+                while (treeWalk.next()) {
+                    paths.add(treeWalk.getPathString());
+                }
+                return Collections.unmodifiableSet(paths);
+            } catch (IOException e) {
+                throw new GuruCliException(ErrorCodes.GIT_INVALID_COMMITS,
+                                           "Cannot diff " + beforeCommit + " and " + afterCommit, e);
+            }
+        });
+    }
+
+    /**
+     * @return A recursive walk over the files that differ between the commits. Subtrees that are the same in both
+     *     commits are skipped without being read.
+     */
+    private static TreeWalk diffWalk(final GitSession session,
+                                     final String beforeCommit,
+                                     final String afterCommit) throws IOException {
+        val treeWalk = new TreeWalk(session.getRepository(), session.getReader());
+        try {
+            treeWalk.addTree(treeForCommitId(session, beforeCommit));
+            treeWalk.addTree(treeForCommitId(session, afterCommit));
+        } catch (IOException | RuntimeException e) {
+            treeWalk.close();
+            throw e;
+        }
+        treeWalk.setRecursive(true);
+        treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        return treeWalk;
+    }
+
     private static String resolveSha(final Repository repo, final String commitName) {
         try {
             return repo.resolve(commitName).getName();
@@ -154,13 +209,10 @@ public final class GitAdapter {
         }
     }
 
-    private static CanonicalTreeParser treeForCommitId(final Repository repo, final String commitId) {
-        try (RevWalk walk = new RevWalk(repo)) {
-            val commit = walk.parseCommit(repo.resolve(commitId));
-            val treeId = commit.getTree().getId();
-            try (ObjectReader reader = repo.newObjectReader()) {
-                return new CanonicalTreeParser(null, reader, treeId);
-            }
+    private static CanonicalTreeParser treeForCommitId(final GitSession session, final String commitId) {
+        try {
+            val commit = session.getRevWalk().parseCommit(session.getRepository().resolve(commitId));
+            return new CanonicalTreeParser(null, session.getReader(), commit.getTree().getId());
         } catch (NullPointerException e) {
             throw new GuruCliException(ErrorCodes.GIT_INVALID_COMMITS, "Not a valid commit id " + commitId, e);
         } catch (IOException e) {
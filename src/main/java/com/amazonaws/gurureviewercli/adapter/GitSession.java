@@ -0,0 +1,134 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.val;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.eclipse.jgit.util.SystemReader;
+
+import com.amazonaws.gurureviewercli.util.Log;
+
+/**
+ * The open repository that is analyzed, shared by all git operations of a run, so that the repository is only opened
+ * once and parsed commits and trees, as well as the pack files that are open in the window cache, are reused.
+ *
+ * The reader and the rev walk are not thread-safe, so they must only be used by one thread at a time. Code that
+ * reads blobs on several threads has to create a reader per thread from the repository.
+ */
+public final class GitSession implements Closeable {
+
+    // repositories with more pack data than this read pack files in larger windows.
+    private static final long LARGE_REPOSITORY_BYTES = 256L * 1024 * 1024;
+
+    private static final int SMALL_WINDOW_SIZE = 8 * 1024;
+
+    private static final int LARGE_WINDOW_SIZE = 64 * 1024;
+
+    // limit for the pack data that is mapped into memory.
+    private static final long MAX_MAPPED_BYTES = 1024L * 1024 * 1024;
+
+    // file handles for pack files beyond the ones of the analyzed repository, e.g. for the minimal repository.
+    private static final int EXTRA_OPEN_FILES = 16;
+
+    // the window cache is global, so it is configured once, for the first repository that is opened.
+    private static final AtomicBoolean WINDOW_CACHE_CONFIGURED = new AtomicBoolean();
+
+    private final Repository repository;
+    private final ObjectReader reader;
+    private final RevWalk revWalk;
+
+    private GitSession(final Repository repository) {
+        this.repository = repository;
+        this.reader = repository.newObjectReader();
+        this.revWalk = new RevWalk(reader);
+    }
+
+    /**
+     * @param gitDir The git directory. Its parent is the root of the repository.
+     * @return A session for the repository.
+     * @throws IOException If the repository cannot be opened.
+     */
+    public static GitSession open(final Path gitDir) throws IOException {
+        if (WINDOW_CACHE_CONFIGURED.compareAndSet(false, true)) {
+            val packDir = gitDir.resolve("objects").resolve("pack").toFile();
+            val packFiles = packDir.listFiles((dir, name) -> name.endsWith(".pack"));
+            long packBytes = 0;
+            if (packFiles != null) {
+                for (val packFile : packFiles) {
+                    packBytes += packFile.length();
+                }
+            }
+            val windowCacheConfig = windowCacheConfig(packBytes, packFiles != null ? packFiles.length : 0,
+                                                      !SystemReader.getInstance().isWindows());
+            windowCacheConfig.install();
+            Log.info("Reading %d MB of pack files with %d KB windows%s",
+                     packBytes / (1024 * 1024), windowCacheConfig.getPackedGitWindowSize() / 1024,
+                     windowCacheConfig.isPackedGitMMAP() ? " mapped into memory" : "");
+        }
+        // like a freshly initialized repository, the git directory may not have objects yet.
+        val repository = new FileRepositoryBuilder().setGitDir(gitDir.toFile()).build();
+        return new GitSession(repository);
+    }
+
+    /**
+     * @param packBytes The size of all pack files of the repository.
+     * @param packFiles The number of pack files.
+     * @param mmap      If pack files can be mapped into memory. On Windows, mapped files cannot be deleted until
+     *                  they are garbage collected, so they are read into the heap instead.
+     * @return The window cache configuration for a repository of this size.
+     */
+    static WindowCacheConfig windowCacheConfig(final long packBytes, final int packFiles, final boolean mmap) {
+        val config = new WindowCacheConfig();
+        config.setPackedGitMMAP(mmap);
+        // a large repository is read in fewer, larger windows.
+        config.setPackedGitWindowSize(packBytes > LARGE_REPOSITORY_BYTES ? LARGE_WINDOW_SIZE : SMALL_WINDOW_SIZE);
+        // mapped windows are not on the heap, so more of them can be cached.
+        val maxCachedBytes = mmap ? MAX_MAPPED_BYTES : Runtime.getRuntime().maxMemory() / 4;
+        config.setPackedGitLimit(Math.max(config.getPackedGitLimit(), Math.min(packBytes, maxCachedBytes)));
+        config.setPackedGitOpenFiles(Math.max(config.getPackedGitOpenFiles(), packFiles + EXTRA_OPEN_FILES));
+        return config;
+    }
+
+    /**
+     * @return The repository. It is closed with the session.
+     */
+    public Repository getRepository() {
+        return repository;
+    }
+
+    /**
+     * @return The reader of the session.
+     */
+    public ObjectReader getReader() {
+        return reader;
+    }
+
+    /**
+     * @return The rev walk of the session. Callers that mark commits have to reset it first.
+     */
+    public RevWalk getRevWalk() {
+        return revWalk;
+    }
+
+    /**
+     * @return The git directory.
+     */
+    public File getGitDir() {
+        return repository.getDirectory();
+    }
+
+    @Override
+    public void close() {
+        revWalk.close();
+        reader.close();
+        repository.close();
+    }
+}
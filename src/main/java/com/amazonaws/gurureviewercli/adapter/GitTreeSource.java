@@ -0,0 +1,262 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import lombok.val;
+import org.eclipse.jgit.internal.storage.file.ObjectDirectory;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+
+import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
+import com.amazonaws.gurureviewercli.model.ErrorCodes;
+import com.amazonaws.gurureviewercli.util.Log;
+import com.amazonaws.gurureviewercli.util.ZipUtils;
+
+/**
+ * Lists the files of a commit as zip entries whose content is read from the git object database instead of the
+ * working tree. A checkout without files, e.g. from {@code git clone --no-checkout}, can be packed this way, the
+ * files are not stat'ed, and the zip is a consistent snapshot of the commit even if files change while it is packed.
+ *
+ * Entries are ordered by the offset of their blobs in the pack files, so that packing reads each pack file front to
+ * back and the bases of deltas are usually still cached when they are needed. The repository has to stay open until
+ * the entries are packed.
+ */
+public final class GitTreeSource implements Closeable {
+
+    // name of the CodeGuru configuration file, which is packed even if it is outside of the source directories.
+    private static final String CODEGURU_CONFIG_FILE = "aws-codeguru-reviewer.yml";
+
+    private final GitSession session;
+    private final Repository repository;
+    private final Path workTree;
+    private final boolean ownsSession;
+
+    private GitTreeSource(final GitSession session, final boolean ownsSession) {
+        this.session = session;
+        this.repository = session.getRepository();
+        this.workTree = session.getGitDir().toPath().toAbsolutePath().normalize().getParent();
+        this.ownsSession = ownsSession;
+    }
+
+    /**
+     * @param gitDir The git directory. Its parent is the root of the repository.
+     * @return A source for the commits of the repository, which closes the repository when it is closed.
+     * @throws IOException If the repository cannot be opened.
+     */
+    public static GitTreeSource open(final Path gitDir) throws IOException {
+        return new GitTreeSource(GitSession.open(gitDir), true);
+    }
+
+    /**
+     * @param session The session of the repository. It stays open when the source is closed.
+     * @return A source for the commits of the repository.
+     */
+    public static GitTreeSource of(final GitSession session) {
+        return new GitTreeSource(session, false);
+    }
+
+    /**
+     * List the files of a commit that are under the source directories. Entry names are relative to the root of the
+     * repository, like {@link ZipUtils#listEntries(List, List, Path)}.
+     *
+     * @param commit      The commit, e.g. a SHA or HEAD.
+     * @param sourceDirs  Directories in the root of the repository whose files are listed.
+     * @param excludeDirs Directories whose files are not listed.
+     * @return The entries in the order in which they should be packed.
+     * @throws IOException If the commit or its trees cannot be read.
+     */
+    public List<ZipUtils.PackEntry> listEntries(final String commit,
+                                                final List<Path> sourceDirs,
+                                                final List<Path> excludeDirs) throws IOException {
+        val commitId = repository.resolve(commit);
+        if (commitId == null) {
+            throw new GuruCliException(ErrorCodes.GIT_INVALID_COMMITS, "Not a valid commit id " + commit);
+        }
+        val prefixes = new ArrayList<String>();
+        for (val sourceDir : sourceDirs) {
+            val relative = relativePath(sourceDir);
+            if (relative == null) {
+                throw new IllegalArgumentException(sourceDir + " is not in " + workTree);
+            }
+            if (relative.isEmpty()) {
+                // the whole repository is packed.
+                prefixes.clear();
+                break;
+            }
+            prefixes.add(relative);
+        }
+        val excluded = new ArrayList<String>();
+        for (val excludeDir : excludeDirs) {
+            val relative = relativePath(excludeDir);
+            // build directories outside of the repository have no files in the commit.
+            if (relative != null) {
+                excluded.add(relative + "/");
+            }
+        }
+        val blobs = new ArrayList<Blob>();
+        int skipped = 0;
+        try (val treeWalk = new TreeWalk(repository, session.getReader())) {
+            treeWalk.addTree(session.getRevWalk().parseCommit(commitId).getTree());
+            treeWalk.setRecursive(true);
+            if (!prefixes.isEmpty()) {
+                prefixes.add(CODEGURU_CONFIG_FILE);
+                treeWalk.setFilter(PathFilterGroup.createFromStrings(prefixes));
+            }
+            while (treeWalk.next()) {
+                val path = treeWalk.getPathString();
+                if (excluded.stream().anyMatch(path::startsWith)) {
+                    continue;
+                }
+                val mode = treeWalk.getFileMode(0);
+                // submodules are not in this repository, and symbolic links have their target as content.
+                if (mode != FileMode.REGULAR_FILE && mode != FileMode.EXECUTABLE_FILE) {
+                    skipped++;
+                    continue;
+                }
+                blobs.add(new Blob(path, treeWalk.getObjectId(0)));
+            }
+        }
+        if (skipped > 0) {
+            Log.info("Skipped %d submodules and symbolic links in %s", skipped, commit);
+        }
+        try {
+            sortByPackOffset(blobs);
+        } catch (IOException | RuntimeException | LinkageError e) {
+            // the pack offsets are read with internal JGit classes, which may change between JGit versions.
+            Log.warn("Packing %s in the order of the tree, the pack files cannot be read: %s", commit, e);
+        }
+        val entries = new ArrayList<ZipUtils.PackEntry>(blobs.size());
+        for (val blob : blobs) {
+            entries.add(new ZipUtils.PackEntry(blob.path, workTree.resolve(blob.path),
+                                               new BlobSource(repository, blob.id)));
+        }
+        return entries;
+    }
+
+    @Override
+    public void close() {
+        if (ownsSession) {
+            session.close();
+        }
+    }
+
+    /**
+     * @return The path of the directory relative to the root of the repository, or null if it is not in the
+     *     repository, neither as given nor after resolving symbolic links.
+     */
+    private @Nullable String relativePath(final Path dir) {
+        val absolute = dir.toAbsolutePath().normalize();
+        if (absolute.startsWith(workTree)) {
+            return workTree.relativize(absolute).toString().replace('\\', '/');
+        }
+        final Path realDir;
+        final Path realWorkTree;
+        try {
+            realDir = dir.toRealPath();
+            realWorkTree = workTree.toRealPath();
+        } catch (IOException e) {
+            return null;
+        }
+        if (!realDir.startsWith(realWorkTree)) {
+            return null;
+        }
+        return realWorkTree.relativize(realDir).toString().replace('\\', '/');
+    }
+
+    /**
+     * Sort the blobs by the first pack file that has them and their offset in it. Loose blobs come last, in the
+     * order of the tree. The blobs are only reordered once all offsets are known.
+     */
+    private void sortByPackOffset(final List<Blob> blobs) throws IOException {
+        if (!(repository.getObjectDatabase() instanceof ObjectDirectory)) {
+            return;
+        }
+        val packDir = new File(((ObjectDirectory) repository.getObjectDatabase()).getDirectory(), "pack");
+        val indexFiles = packDir.listFiles((dir, name) -> name.endsWith(".idx"));
+        if (indexFiles == null || indexFiles.length == 0) {
+            return;
+        }
+        int packNumber = 0;
+        for (val indexFile : indexFiles) {
+            final PackIndex index;
+            try {
+                index = PackIndex.open(indexFile);
+            } catch (IOException e) {
+                Log.warn("Ignoring pack index %s: %s", indexFile, e.getMessage());
+                continue;
+            }
+            for (val blob : blobs) {
+                if (blob.pack == Integer.MAX_VALUE) {
+                    val offset = index.findOffset(blob.id);
+                    if (offset >= 0) {
+                        blob.pack = packNumber;
+                        blob.offset = offset;
+                    }
+                }
+            }
+            packNumber++;
+        }
+        // the sort is stable, so loose blobs keep the order of the tree.
+        blobs.sort(Comparator.<Blob>comparingInt(blob -> blob.pack).thenComparingLong(blob -> blob.offset));
+    }
+
+    /**
+     * A file of the commit and where its blob is stored.
+     */
+    private static final class Blob {
+        private final String path;
+        private final ObjectId id;
+        private int pack = Integer.MAX_VALUE;
+        private long offset;
+
+        Blob(final String path, final ObjectId id) {
+            this.path = path;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Reads the content of a blob. Every call uses its own reader, since readers must not be shared between the
+     * threads that pack entries.
+     */
+    private static final class BlobSource implements ZipUtils.EntrySource {
+        private final Repository repository;
+        private final ObjectId blobId;
+
+        BlobSource(final Repository repository, final ObjectId blobId) {
+            this.repository = repository;
+            this.blobId = blobId;
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            return repository.open(blobId, Constants.OBJ_BLOB).openStream();
+        }
+
+        @Override
+        public long size() throws IOException {
+            try (val reader = repository.newObjectReader()) {
+                return reader.getObjectSize(blobId, Constants.OBJ_BLOB);
+            }
+        }
+
+        @Override
+        public String contentId() {
+            // the same id as for files whose blob id is taken from the git index.
+            return "git:" + blobId.name();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.val;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import com.amazonaws.gurureviewercli.model.ChunkManifest;
+import com.amazonaws.gurureviewercli.util.JsonUtil;
+import com.amazonaws.gurureviewercli.util.Log;
+import com.amazonaws.gurureviewercli.util.PackResult;
+
+/**
+ * A multipart upload that reuses the unchanged parts of the last artifact of the same kind. The artifact is split
+ * into content-defined chunks, see {@link ContentChunker}, and a manifest with the offset, length and hash of each
+ * chunk is kept next to the upload state. The next upload copies every chunk that the last artifact also had from
+ * that object in S3 with UploadPartCopy, and only uploads the chunks that changed.
+ *
+ * The last artifact stays in S3 as the base for the next upload, which deletes it once it is done. Zip entries only
+ * keep the same bytes if the files did not change, so this works best with reproducible zips.
+ */
+final class IncrementalUpload {
+
+    private static final String SHA256_METADATA = "sha256";
+
+    /**
+     * Upload a file, copying the chunks it shares with the last artifact in the manifest, and replace the manifest.
+     *
+     * @param s3Client           The client used for all requests.
+     * @param bucketName         Target bucket.
+     * @param key                Target key.
+     * @param accountId          Expected owner of the bucket.
+     * @param file               The file to upload.
+     * @param partSize           Average size of the chunks.
+     * @param concurrency        Maximum number of parts that are uploaded or copied at the same time.
+     * @param metadata           User metadata of the object. Must contain the SHA-256 of the file.
+     * @param checksums          Checksums of the file from packing it.
+     * @param manifestFile       The manifest of the last artifact, which is replaced by the manifest of the file.
+     * @param deletePreviousBase Whether to delete the last artifact once the file is uploaded.
+     * @throws IOException If reading the file or the upload fails. A failed upload is aborted.
+     */
+    static void uploadFile(final S3Client s3Client,
+                           final String bucketName,
+                           final String key,
+                           final String accountId,
+                           final Path file,
+                           final int partSize,
+                           final int concurrency,
+                           final Map<String, String> metadata,
+                           final PackResult checksums,
+                           final Path manifestFile,
+                           final boolean deletePreviousBase) throws IOException {
+        val chunker = ContentChunker.forPartSize(partSize);
+        val chunks = chunker.chunk(file);
+        val previous = loadManifest(manifestFile);
+        val reusableChunks = new HashMap<String, ChunkManifest.Chunk>();
+        if (previous != null && bucketName.equals(previous.getBucketName())
+            && baseExists(s3Client, previous, accountId)) {
+            for (val chunk : previous.getChunks()) {
+                reusableChunks.putIfAbsent(chunk.getSha256(), chunk);
+            }
+        }
+        if (checksums.getSize() <= partSize) {
+            MultipartUpload.uploadFile(s3Client, bucketName, key, accountId, file, partSize, concurrency, metadata,
+                                       checksums);
+        } else {
+            val upload = new MultipartUpload(s3Client, bucketName, key, accountId, chunker.getMaxSize(), concurrency,
+                                             metadata);
+            int copiedParts = 0;
+            long copiedBytes = 0;
+            try (val channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                for (val chunk : chunks) {
+                    val base = reusableChunks.get(chunk.getSha256());
+                    if (base != null && base.getLength() == chunk.getLength()) {
+                        upload.submitCopy(previous.getBucketName(), previous.getKey(), base.getOffset(), file,
+                                          chunk.getOffset(), chunk.getLength());
+                        copiedParts++;
+                        copiedBytes += chunk.getLength();
+                    } else {
+                        val buffer = upload.nextBuffer();
+                        MultipartUpload.readFully(channel, file, buffer, chunk.getOffset(), chunk.getLength());
+                        upload.submitPart(buffer, chunk.getLength());
+                    }
+                }
+                upload.complete();
+            } catch (IOException | RuntimeException e) {
+                upload.abort();
+                throw e;
+            }
+            if (previous != null) {
+                Log.info("Copied %d of %d parts (%.1f MB) of s3://%s/%s from s3://%s/%s",
+                         copiedParts, chunks.size(), copiedBytes / (1024.0 * 1024.0), bucketName, key,
+                         previous.getBucketName(), previous.getKey());
+            }
+        }
+        storeManifest(ChunkManifest.builder()
+                                   .bucketName(bucketName)
+                                   .key(key)
+                                   .sha256(checksums.getSha256())
+                                   .size(checksums.getSize())
+                                   .chunks(chunks)
+                                   .build(), manifestFile);
+        if (deletePreviousBase && previous != null && !key.equals(previous.getKey())) {
+            deleteBase(s3Client, previous, accountId);
+        }
+    }
+
+    /**
+     * @return True if the object of the manifest still exists and has the content that the manifest describes.
+     */
+    private static boolean baseExists(final S3Client s3Client, final ChunkManifest manifest, final String accountId) {
+        try {
+            val response = s3Client.headObject(HeadObjectRequest.builder()
+                                                                .bucket(manifest.getBucketName())
+                                                                .key(manifest.getKey())
+                                                                .expectedBucketOwner(accountId)
+                                                                .build());
+            if (manifest.getSha256().equals(response.metadata().get(SHA256_METADATA))) {
+                return true;
+            }
+            Log.info("Uploading all parts because s3://%s/%s changed", manifest.getBucketName(), manifest.getKey());
+            return false;
+        } catch (NoSuchKeyException e) {
+            Log.info("Uploading all parts because s3://%s/%s no longer exists",
+                     manifest.getBucketName(), manifest.getKey());
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) {
+                Log.info("Uploading all parts because s3://%s/%s no longer exists",
+                         manifest.getBucketName(), manifest.getKey());
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    private static void deleteBase(final S3Client s3Client, final ChunkManifest manifest, final String accountId) {
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder()
+                                                     .bucket(manifest.getBucketName())
+                                                     .key(manifest.getKey())
+                                                     .expectedBucketOwner(accountId)
+                                                     .build());
+        } catch (Exception e) {
+            Log.warn("Failed to delete %s from %s. Please delete the object by hand.",
+                     manifest.getKey(), manifest.getBucketName());
+        }
+    }
+
+    private static ChunkManifest loadManifest(final Path manifestFile) {
+        if (!manifestFile.toFile().isFile()) {
+            return null;
+        }
+        try {
+            return JsonUtil.loadChunkManifest(manifestFile);
+        } catch (IOException e) {
+            Log.warn("Ignoring unreadable chunk manifest %s: %s", manifestFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void storeManifest(final ChunkManifest manifest, final Path manifestFile) throws IOException {
+        Files.createDirectories(manifestFile.getParent());
+        // a run that is killed while writing must not leave a manifest that describes the wrong object.
+        val tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        JsonUtil.storeChunkManifest(manifest, tempFile);
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private IncrementalUpload() {
+        // do not instantiate
+    }
+}
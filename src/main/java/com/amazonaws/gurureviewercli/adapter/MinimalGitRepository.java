@@ -0,0 +1,215 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import lombok.val;
+import org.eclipse.jgit.internal.storage.pack.PackWriter;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.pack.PackConfig;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
+import com.amazonaws.gurureviewercli.model.ErrorCodes;
+import com.amazonaws.gurureviewercli.util.Log;
+
+/**
+ * Writes a shallow git repository that only has the objects that are needed to analyze a commit range: the commits
+ * from the before commit to the after commit, and the trees and blobs of these commits. The objects are written into
+ * a single pack file, and the current branch points to the after commit. Unlike the git directory of the analyzed
+ * repository, it has no other history, no reflogs, hooks or LFS objects, so its size scales with the commit range
+ * and not with the history of the repository.
+ */
+final class MinimalGitRepository {
+
+    /**
+     * Write a minimal repository.
+     *
+     * @param gitDir       The git directory of the analyzed repository.
+     * @param beforeCommit The first commit of the range, or null to write only the after commit. If it is not a
+     *                     commit, e.g. the empty tree for a new branch, only the after commit is written.
+     * @param afterCommit  The last commit of the range.
+     * @param targetDir    The git directory to write. It must not exist yet.
+     * @return The git directory that was written.
+     * @throws IOException If reading objects or writing the repository fails.
+     */
+    static Path write(final Path gitDir,
+                      @Nullable final String beforeCommit,
+                      final String afterCommit,
+                      final Path targetDir) throws IOException {
+        try (val session = GitSession.open(gitDir)) {
+            return write(session, beforeCommit, afterCommit, targetDir);
+        }
+    }
+
+    /**
+     * Write a minimal repository with the objects of an open session.
+     *
+     * @see #write(Path, String, String, Path)
+     */
+    static Path write(final GitSession session,
+                      @Nullable final String beforeCommit,
+                      final String afterCommit,
+                      final Path targetDir) throws IOException {
+        val repository = session.getRepository();
+        val reader = session.getReader();
+        val revWalk = session.getRevWalk();
+        revWalk.reset();
+        try {
+            val after = revWalk.parseCommit(resolve(repository, afterCommit));
+            val commits = new LinkedHashSet<RevCommit>();
+            val beforeId = beforeCommit != null ? resolve(repository, beforeCommit) : null;
+            // the empty tree of a new branch is usually not stored in the repository.
+            val beforeObject = beforeId != null && reader.has(beforeId) ? revWalk.parseAny(beforeId) : null;
+            if (beforeObject instanceof RevCommit) {
+                revWalk.markStart(after);
+                revWalk.markUninteresting((RevCommit) beforeObject);
+                for (val commit : revWalk) {
+                    commits.add(commit);
+                }
+                commits.add((RevCommit) beforeObject);
+            } else {
+                commits.add(after);
+            }
+            val objects = collectObjects(revWalk, reader, commits);
+
+            val packDir = targetDir.resolve("objects").resolve("pack");
+            Files.createDirectories(packDir);
+            Files.createDirectories(targetDir.resolve("refs").resolve("tags"));
+            val packName = writePack(repository, objects, packDir);
+
+            val branch = repository.getFullBranch();
+            if (branch != null && branch.startsWith(Constants.R_HEADS)) {
+                writeLines(targetDir.resolve("HEAD"), "ref: " + branch);
+                val branchFile = targetDir.resolve(branch);
+                Files.createDirectories(branchFile.getParent());
+                writeLines(branchFile, after.name());
+            } else {
+                Files.createDirectories(targetDir.resolve("refs").resolve("heads"));
+                writeLines(targetDir.resolve("HEAD"), after.name());
+            }
+            writeLines(targetDir.resolve("config"),
+                       "[core]",
+                       "\trepositoryformatversion = 0",
+                       "\tbare = false");
+            val shallow = new ArrayList<String>();
+            for (val commit : commits) {
+                for (val parent : commit.getParents()) {
+                    if (!commits.contains(parent)) {
+                        shallow.add(commit.name());
+                        break;
+                    }
+                }
+            }
+            if (!shallow.isEmpty()) {
+                writeLines(targetDir.resolve("shallow"), shallow.toArray(new String[0]));
+            }
+            Log.info("Packed %d commits and %d objects of the analyzed commits into pack-%s",
+                     commits.size(), objects.size(), packName);
+            return targetDir;
+        } finally {
+            // the walk is shared with the other git operations.
+            revWalk.reset();
+        }
+    }
+
+    /**
+     * @return The commits and all trees and blobs of their trees. Trees that were already visited are not visited
+     *     again, so each distinct tree is only read once no matter how many commits share it.
+     */
+    private static List<RevObject> collectObjects(final RevWalk revWalk,
+                                                  final ObjectReader reader,
+                                                  final Set<RevCommit> commits) throws IOException {
+        val objects = new ArrayList<RevObject>();
+        val seen = new HashSet<ObjectId>();
+        for (val commit : commits) {
+            objects.add(commit);
+            val tree = commit.getTree();
+            if (!seen.add(tree)) {
+                continue;
+            }
+            objects.add(revWalk.lookupTree(tree));
+            try (val treeWalk = new TreeWalk(reader)) {
+                treeWalk.addTree(tree);
+                treeWalk.setRecursive(false);
+                while (treeWalk.next()) {
+                    val mode = treeWalk.getFileMode(0);
+                    if (mode == FileMode.GITLINK) {
+                        // submodule commits are not in this repository.
+                        continue;
+                    }
+                    val id = treeWalk.getObjectId(0);
+                    if (!seen.add(id)) {
+                        // a tree that was seen before is not entered again.
+                        continue;
+                    }
+                    if (treeWalk.isSubtree()) {
+                        objects.add(revWalk.lookupTree(id));
+                        treeWalk.enterSubtree();
+                    } else {
+                        objects.add(revWalk.lookupBlob(id));
+                    }
+                }
+            }
+        }
+        return objects;
+    }
+
+    private static String writePack(final Repository repository,
+                                    final List<RevObject> objects,
+                                    final Path packDir) throws IOException {
+        // the pack writer closes its reader, so it cannot use the reader of the session.
+        try (val packWriter = new PackWriter(new PackConfig(repository), repository.newObjectReader())) {
+            packWriter.preparePack(objects.iterator());
+            val tempPack = packDir.resolve("incoming.pack");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPack))) {
+                packWriter.writePack(NullProgressMonitor.INSTANCE, NullProgressMonitor.INSTANCE, out);
+            }
+            val packName = packWriter.computeName().name();
+            Files.move(tempPack, packDir.resolve("pack-" + packName + ".pack"));
+            try (OutputStream out = new BufferedOutputStream(
+                Files.newOutputStream(packDir.resolve("pack-" + packName + ".idx")))) {
+                packWriter.writeIndex(out);
+            }
+            return packName;
+        }
+    }
+
+    private static ObjectId resolve(final Repository repository, final String revision) throws IOException {
+        val id = repository.resolve(revision);
+        if (id == null) {
+            throw new GuruCliException(ErrorCodes.GIT_INVALID_COMMITS, "Not a valid commit id " + revision);
+        }
+        return id;
+    }
+
+    private static void writeLines(final Path file, final String... lines) throws IOException {
+        val content = new StringBuilder();
+        for (val line : lines) {
+            content.append(line).append('\n');
+        }
+        Files.write(file, content.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private MinimalGitRepository() {
+        // do not instantiate
+    }
+}
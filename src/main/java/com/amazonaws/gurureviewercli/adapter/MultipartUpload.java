@@ -0,0 +1,580 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.val;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.utils.http.SdkHttpUtils;
+
+import com.amazonaws.gurureviewercli.util.Log;
+import com.amazonaws.gurureviewercli.util.PackResult;
+
+/**
+ * Uploads an object to S3 in parts, with several parts in flight at the same time. Each part is retried on its
+ * own, so a single failed request does not restart the whole upload.
+ *
+ * Every part is sent with a CRC32C that is computed from the part buffer in memory, so the SDK does not have to
+ * compute a checksum from the data again, and S3 verifies each part as well as the completed object.
+ *
+ * Part data is passed in buffers that come from {@link #nextBuffer()}. The number of buffers is bounded, so a
+ * producer that is faster than the network blocks until a part is done, and memory stays bounded by the part size
+ * times the concurrency.
+ */
+final class MultipartUpload {
+
+    // S3 requires at least 5MB for every part but the last one.
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    // parts are buffered in byte arrays, and content-defined chunks may be twice the part size.
+    static final int MAX_PART_SIZE = 512 * 1024 * 1024;
+    static final int DEFAULT_CONCURRENCY = 4;
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 500L;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final String accountId;
+    private final String uploadId;
+    private final int partSize;
+    private final int maxBuffers;
+    private final ExecutorService uploader;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final List<Future<CompletedPart>> parts = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+
+    private int allocatedBuffers;
+    private long uploadedBytes;
+    private volatile Throwable failure;
+    private volatile Consumer<CompletedPart> partListener;
+    private boolean finished;
+
+    /**
+     * Start a multipart upload.
+     *
+     * @param s3Client    The client used for all requests.
+     * @param bucketName  Target bucket.
+     * @param key         Target key.
+     * @param accountId   Expected owner of the bucket.
+     * @param partSize    Size of each part but the last one.
+     * @param concurrency Maximum number of parts that are uploaded at the same time.
+     * @param metadata    User metadata of the object.
+     */
+    MultipartUpload(final S3Client s3Client,
+                    final String bucketName,
+                    final String key,
+                    final String accountId,
+                    final int partSize,
+                    final int concurrency,
+                    final Map<String, String> metadata) {
+        this(s3Client, bucketName, key, accountId, partSize, concurrency,
+             createUpload(s3Client, bucketName, key, accountId, metadata));
+    }
+
+    private MultipartUpload(final S3Client s3Client,
+                            final String bucketName,
+                            final String key,
+                            final String accountId,
+                            final int partSize,
+                            final int concurrency,
+                            final String uploadId) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.accountId = accountId;
+        this.partSize = partSize;
+        this.uploadId = uploadId;
+        // one more buffer than threads, so the producer can fill a part while the others are uploaded.
+        this.maxBuffers = concurrency + 1;
+        this.freeBuffers = new ArrayBlockingQueue<>(maxBuffers + 1);
+        val threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("s3-upload-%d").build();
+        this.uploader = Executors.newFixedThreadPool(concurrency, threadFactory);
+    }
+
+    /**
+     * Continue a multipart upload that was started earlier, e.g. by a run that was interrupted. Parts that were
+     * uploaded before have to be passed to {@link #addUploadedPart} instead of being uploaded again.
+     *
+     * @param s3Client    The client used for all requests.
+     * @param bucketName  Target bucket.
+     * @param key         Target key of the existing upload.
+     * @param accountId   Expected owner of the bucket.
+     * @param partSize    Size of each part but the last one. Must be the same as for the parts uploaded before.
+     * @param concurrency Maximum number of parts that are uploaded at the same time.
+     * @param uploadId    Id of the existing upload.
+     * @return The upload.
+     */
+    static MultipartUpload resume(final S3Client s3Client,
+                                  final String bucketName,
+                                  final String key,
+                                  final String accountId,
+                                  final int partSize,
+                                  final int concurrency,
+                                  final String uploadId) {
+        return new MultipartUpload(s3Client, bucketName, key, accountId, partSize, concurrency, uploadId);
+    }
+
+    private static String createUpload(final S3Client s3Client,
+                                       final String bucketName,
+                                       final String key,
+                                       final String accountId,
+                                       final Map<String, String> metadata) {
+        val createRequest = CreateMultipartUploadRequest.builder()
+                                                        .bucket(bucketName)
+                                                        .key(key)
+                                                        .expectedBucketOwner(accountId)
+                                                        .metadata(metadata)
+                                                        .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
+                                                        .build();
+        return s3Client.createMultipartUpload(createRequest).uploadId();
+    }
+
+    /**
+     * Upload a file without user metadata.
+     *
+     * @see #uploadFile(S3Client, String, String, String, Path, int, int, Map, PackResult)
+     */
+    static void uploadFile(final S3Client s3Client,
+                           final String bucketName,
+                           final String key,
+                           final String accountId,
+                           final Path file,
+                           final int partSize,
+                           final int concurrency) throws IOException {
+        uploadFile(s3Client, bucketName, key, accountId, file, partSize, concurrency, Collections.emptyMap(), null);
+    }
+
+    /**
+     * Upload a file, with a single PutObject call if it fits into one part, and in parallel parts otherwise. If the
+     * checksums of the file are known, a single PutObject call sends its SHA-256, so the file is read only once.
+     *
+     * @param s3Client    The client used for all requests.
+     * @param bucketName  Target bucket.
+     * @param key         Target key.
+     * @param accountId   Expected owner of the bucket.
+     * @param file        The file to upload.
+     * @param partSize    Size of each part but the last one.
+     * @param concurrency Maximum number of parts that are uploaded at the same time.
+     * @param metadata    User metadata of the object.
+     * @param checksums   Checksums of the file from packing it, or null.
+     * @throws IOException If reading the file or the upload fails. A failed upload is aborted.
+     */
+    static void uploadFile(final S3Client s3Client,
+                           final String bucketName,
+                           final String key,
+                           final String accountId,
+                           final Path file,
+                           final int partSize,
+                           final int concurrency,
+                           final Map<String, String> metadata,
+                           @Nullable final PackResult checksums) throws IOException {
+        val size = Files.size(file);
+        if (size <= partSize) {
+            val startNanos = System.nanoTime();
+            val putObjectRequest = PutObjectRequest.builder()
+                                                   .bucket(bucketName)
+                                                   .key(key)
+                                                   .expectedBucketOwner(accountId)
+                                                   .metadata(metadata)
+                                                   .checksumSHA256(checksums != null ? checksums.sha256Base64() : null)
+                                                   .build();
+            s3Client.putObject(putObjectRequest, file);
+            logThroughput(bucketName, key, size, startNanos);
+            return;
+        }
+        val upload = new MultipartUpload(s3Client, bucketName, key, accountId, partSize, concurrency, metadata);
+        try {
+            upload.uploadParts(file, size, Collections.emptyMap());
+            upload.complete();
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Upload a file in parts of the part size, reading each part with positional reads into a pooled buffer.
+     *
+     * @param file          The file to upload.
+     * @param size          Size of the file.
+     * @param uploadedParts Parts that were uploaded before, by part number. They are not read or uploaded again.
+     * @throws IOException If reading the file or a part fails.
+     */
+    void uploadParts(final Path file,
+                     final long size,
+                     final Map<Integer, CompletedPart> uploadedParts) throws IOException {
+        try (val channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < size) {
+                val length = (int) Math.min(partSize, size - position);
+                val uploadedPart = uploadedParts.get(parts.size() + 1);
+                if (uploadedPart != null) {
+                    addUploadedPart(uploadedPart);
+                    position += length;
+                    continue;
+                }
+                val buffer = nextBuffer();
+                readFully(channel, file, buffer, position, length);
+                submitPart(buffer, length);
+                position += length;
+            }
+        }
+    }
+
+    /**
+     * @return A buffer of the part size to fill with the data of the next part. Blocks while all buffers are in
+     *     flight.
+     * @throws IOException If a part failed or the thread was interrupted.
+     */
+    byte[] nextBuffer() throws IOException {
+        checkFailure();
+        val free = freeBuffers.poll();
+        if (free != null) {
+            return free;
+        }
+        if (allocatedBuffers < maxBuffers) {
+            allocatedBuffers++;
+            return new byte[partSize];
+        }
+        try {
+            while (true) {
+                val buffer = freeBuffers.poll(1, TimeUnit.SECONDS);
+                checkFailure();
+                if (buffer != null) {
+                    return buffer;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading " + key);
+        }
+    }
+
+    /**
+     * Upload the next part in the background. The buffer must not be used by the caller anymore.
+     *
+     * @param buffer A buffer from {@link #nextBuffer()}, or any other buffer.
+     * @param length Number of bytes in the buffer that belong to the part.
+     * @throws IOException If an earlier part failed.
+     */
+    void submitPart(final byte[] buffer, final int length) throws IOException {
+        checkFailure();
+        val partNumber = parts.size() + 1;
+        uploadedBytes += length;
+        parts.add(uploader.submit(() -> {
+            try {
+                val part = uploadPart(partNumber, buffer, length);
+                val listener = partListener;
+                if (listener != null) {
+                    listener.accept(part);
+                }
+                return part;
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                freeBuffers.offer(buffer);
+            }
+        }));
+    }
+
+    /**
+     * Copy the next part from a byte range of an existing object in the background, so that its data does not have
+     * to be uploaded. If the copy fails, e.g. because the object was deleted, the part is read from the file and
+     * uploaded instead. The buffer for that is reserved from the pool, so like {@link #nextBuffer()}, this blocks
+     * while all buffers are in flight.
+     *
+     * @param sourceBucket Bucket of the object to copy from.
+     * @param sourceKey    Key of the object to copy from.
+     * @param sourceOffset Offset of the part in the object to copy from.
+     * @param file         A file that has the same data at the position.
+     * @param position     Offset of the part in the file.
+     * @param length       Length of the part. Must not be larger than the part size.
+     * @throws IOException If an earlier part failed.
+     */
+    void submitCopy(final String sourceBucket,
+                    final String sourceKey,
+                    final long sourceOffset,
+                    final Path file,
+                    final long position,
+                    final int length) throws IOException {
+        checkFailure();
+        val buffer = nextBuffer();
+        val partNumber = parts.size() + 1;
+        parts.add(uploader.submit(() -> {
+            try {
+                CompletedPart part;
+                try {
+                    part = copyPart(partNumber, sourceBucket, sourceKey, sourceOffset, length);
+                } catch (S3Exception e) {
+                    Log.warn("Uploading part %d of s3://%s/%s because it cannot be copied from s3://%s/%s: %s",
+                             partNumber, bucketName, key, sourceBucket, sourceKey, e.getMessage());
+                    try (val channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        readFully(channel, file, buffer, position, length);
+                    }
+                    part = uploadPart(partNumber, buffer, length);
+                }
+                val listener = partListener;
+                if (listener != null) {
+                    listener.accept(part);
+                }
+                return part;
+            } catch (IOException | RuntimeException | Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                freeBuffers.offer(buffer);
+            }
+        }));
+    }
+
+    /**
+     * Add a part that was uploaded before this upload was resumed.
+     *
+     * @param part The part. Its number must be the next part number.
+     */
+    void addUploadedPart(final CompletedPart part) {
+        if (part.partNumber() != parts.size() + 1) {
+            throw new IllegalArgumentException("Expected part " + (parts.size() + 1) + " but got " + part.partNumber());
+        }
+        // the bytes of the part are not counted, the throughput only covers what this run uploaded.
+        parts.add(CompletableFuture.completedFuture(part));
+    }
+
+    /**
+     * @param listener Called from the upload threads after each part that was uploaded successfully.
+     */
+    void setPartListener(final Consumer<CompletedPart> listener) {
+        this.partListener = listener;
+    }
+
+    String getUploadId() {
+        return uploadId;
+    }
+
+    /**
+     * Wait for all parts and complete the upload.
+     *
+     * @throws IOException If a part failed. The upload is not aborted, the caller has to call {@link #abort()}.
+     */
+    void complete() throws IOException {
+        val completedParts = new ArrayList<CompletedPart>(parts.size());
+        for (val part : parts) {
+            completedParts.add(await(part));
+        }
+        completedParts.sort(Comparator.comparing(CompletedPart::partNumber));
+        val completeRequest =
+            CompleteMultipartUploadRequest.builder()
+                                          .bucket(bucketName)
+                                          .key(key)
+                                          .uploadId(uploadId)
+                                          .expectedBucketOwner(accountId)
+                                          .multipartUpload(CompletedMultipartUpload.builder()
+                                                                                   .parts(completedParts)
+                                                                                   .build())
+                                          .build();
+        s3Client.completeMultipartUpload(completeRequest);
+        finished = true;
+        uploader.shutdownNow();
+        logThroughput(bucketName, key, uploadedBytes, startNanos);
+    }
+
+    /**
+     * Stop uploading parts without aborting the upload, so that the parts that were uploaded so far are kept and
+     * the upload can be resumed later.
+     */
+    void stop() {
+        uploader.shutdownNow();
+        for (val part : parts) {
+            part.cancel(true);
+        }
+    }
+
+    /**
+     * Abort the upload and discard all parts that were already uploaded. Safe to call more than once.
+     */
+    void abort() {
+        stop();
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                                                                     .bucket(bucketName)
+                                                                     .key(key)
+                                                                     .uploadId(uploadId)
+                                                                     .expectedBucketOwner(accountId)
+                                                                     .build());
+        } catch (Exception e) {
+            Log.warn("Failed to abort upload %s of s3://%s/%s. Please abort it by hand.", uploadId, bucketName, key);
+        }
+    }
+
+    private CompletedPart uploadPart(final int partNumber, final byte[] data, final int length) {
+        val checksum = crc32c(data, length);
+        val uploadPartRequest = UploadPartRequest.builder()
+                                                 .bucket(bucketName)
+                                                 .key(key)
+                                                 .uploadId(uploadId)
+                                                 .partNumber(partNumber)
+                                                 .contentLength((long) length)
+                                                 .checksumCRC32C(checksum)
+                                                 .expectedBucketOwner(accountId)
+                                                 .build();
+        return withRetries(partNumber, () -> {
+            val response = s3Client.uploadPart(uploadPartRequest,
+                                               RequestBody.fromByteBuffer(ByteBuffer.wrap(data, 0, length)));
+            return CompletedPart.builder()
+                                .partNumber(partNumber)
+                                .eTag(response.eTag())
+                                .checksumCRC32C(checksum)
+                                .build();
+        });
+    }
+
+    private CompletedPart copyPart(final int partNumber,
+                                   final String sourceBucket,
+                                   final String sourceKey,
+                                   final long sourceOffset,
+                                   final int length) {
+        val copyRequest = UploadPartCopyRequest.builder()
+                                               .copySource(SdkHttpUtils.urlEncodeIgnoreSlashes(
+                                                   sourceBucket + "/" + sourceKey))
+                                               .copySourceRange("bytes=" + sourceOffset + "-"
+                                                                + (sourceOffset + length - 1))
+                                               .bucket(bucketName)
+                                               .key(key)
+                                               .uploadId(uploadId)
+                                               .partNumber(partNumber)
+                                               .expectedBucketOwner(accountId)
+                                               .expectedSourceBucketOwner(accountId)
+                                               .build();
+        return withRetries(partNumber, () -> {
+            // S3 computes the checksum of the copied range, because the upload was created with one.
+            val result = s3Client.uploadPartCopy(copyRequest).copyPartResult();
+            return CompletedPart.builder()
+                                .partNumber(partNumber)
+                                .eTag(result.eTag())
+                                .checksumCRC32C(result.checksumCRC32C())
+                                .build();
+        });
+    }
+
+    private CompletedPart withRetries(final int partNumber, final Supplier<CompletedPart> request) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return request.get();
+            } catch (SdkException e) {
+                if (attempt >= MAX_ATTEMPTS || !isRetryable(e)) {
+                    throw e;
+                }
+                Log.warn("Retrying part %d of s3://%s/%s: %s", partNumber, bucketName, key, e.getMessage());
+                sleep(RETRY_DELAY_MILLIS << (attempt - 1));
+            }
+        }
+    }
+
+    /**
+     * Read length bytes at the position of the file into the start of the buffer.
+     */
+    static void readFully(final FileChannel channel,
+                          final Path file,
+                          final byte[] buffer,
+                          final long position,
+                          final int length) throws IOException {
+        val target = ByteBuffer.wrap(buffer, 0, length);
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException(file + " was truncated while it was uploaded.");
+            }
+        }
+    }
+
+    private CompletedPart await(final Future<CompletedPart> part) throws IOException {
+        try {
+            return part.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading " + key);
+        } catch (ExecutionException e) {
+            throw new IOException(String.format("Failed to upload s3://%s/%s", bucketName, key), e.getCause());
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException(String.format("Failed to upload s3://%s/%s", bucketName, key), failure);
+        }
+    }
+
+    private static boolean isRetryable(final SdkException e) {
+        if (e instanceof S3Exception) {
+            val status = ((S3Exception) e).statusCode();
+            // client errors other than throttling will fail again.
+            return status >= 500 || status == 429;
+        }
+        // anything else is a client side error, like a timeout or a reset connection.
+        return !(e.getCause() instanceof InterruptedException);
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry.", e);
+        }
+    }
+
+    /**
+     * @return The CRC32C of the first length bytes of the buffer, encoded for S3 checksum headers.
+     */
+    static String crc32c(final byte[] buffer, final int length) {
+        return PackResult.crc32cBase64(Hashing.crc32c().hashBytes(buffer, 0, length).asInt());
+    }
+
+    static void logThroughput(final String bucketName, final String key, final long bytes, final long startNanos) {
+        val seconds = Math.max(System.nanoTime() - startNanos, 1L) / 1e9;
+        val megabytes = bytes / (1024.0 * 1024.0);
+        Log.info("Uploaded %.1f MB to s3://%s/%s in %.1f s (%.1f MB/s)",
+                 megabytes, bucketName, key, seconds, megabytes / seconds);
+    }
+}
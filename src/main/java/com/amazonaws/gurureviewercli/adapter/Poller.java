@@ -0,0 +1,138 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import lombok.val;
+
+import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
+import com.amazonaws.gurureviewercli.model.Configuration;
+import com.amazonaws.gurureviewercli.model.ErrorCodes;
+import com.amazonaws.gurureviewercli.model.PollStrategy;
+import com.amazonaws.gurureviewercli.model.ScanContext;
+
+/**
+ * Paces the calls that poll the state of a long-running operation with a {@link PollStrategy}, and gives up with
+ * {@link ErrorCodes#POLL_TIMEOUT} once the deadline has passed or the maximum number of calls was made. The last call
+ * is made at the deadline, so an operation that completes just before it is not missed.
+ */
+final class Poller {
+
+    private final String operation;
+    private final PollStrategy strategy;
+    private final long timeoutMillis;
+    private final int maxCalls;
+    private final long startNanos = System.nanoTime();
+    private int calls;
+    // how long the operation was running before polling started.
+    private long operationAgeMillis = -1;
+
+    /**
+     * @param operation     The operation that is polled, for the error message.
+     * @param strategy      The strategy for the delays between calls.
+     * @param timeoutMillis The time after which polling gives up, or 0 to poll until the operation completes.
+     * @param maxCalls      The maximum number of calls, or 0 for no limit.
+     */
+    Poller(final String operation, final PollStrategy strategy, final long timeoutMillis, final int maxCalls) {
+        this.operation = operation;
+        this.strategy = strategy;
+        this.timeoutMillis = timeoutMillis;
+        this.maxCalls = maxCalls;
+    }
+
+    /**
+     * @param operation The operation that is polled, for the error message.
+     * @param strategy  The strategy for the delays between calls.
+     * @param config    The configuration with the timeout and the maximum number of calls.
+     * @return A poller for the operation.
+     */
+    static Poller of(final String operation, final PollStrategy strategy, final Configuration config) {
+        return new Poller(operation, strategy, TimeUnit.MINUTES.toMillis(config.getPollTimeoutMinutes()),
+                          config.getMaxPolls());
+    }
+
+    /**
+     * @param operation The operation that is polled, for the error message.
+     * @param strategy  The strategy for the delays between calls.
+     * @param context   The context of the scan with the timeout and the maximum number of calls.
+     * @return A poller for the operation.
+     */
+    static Poller of(final String operation, final PollStrategy strategy, final ScanContext context) {
+        return new Poller(operation, strategy, TimeUnit.MINUTES.toMillis(context.getPollTimeoutMinutes()),
+                          context.getMaxPolls());
+    }
+
+    /**
+     * Wait until the next call is due. Must be called before every call, the first call is not delayed.
+     *
+     * @throws GuruCliException With {@link ErrorCodes#POLL_TIMEOUT} if no more calls are allowed.
+     */
+    void awaitNextCall() {
+        try {
+            Thread.sleep(nextCallDelayMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Count the next call and return how long to wait for it, for callers that schedule the call instead of sleeping
+     * until it is due. Must be called before every call, the delay of the first call is 0.
+     *
+     * @return The delay until the next call, in milliseconds.
+     * @throws GuruCliException With {@link ErrorCodes#POLL_TIMEOUT} if no more calls are allowed.
+     */
+    long nextCallDelayMillis() {
+        if (maxCalls > 0 && calls >= maxCalls) {
+            throw new GuruCliException(ErrorCodes.POLL_TIMEOUT,
+                                       String.format("Gave up waiting for %s after %d calls.", operation, calls));
+        }
+        long delayMillis = 0;
+        if (calls > 0) {
+            val elapsedMillis = elapsedMillis();
+            delayMillis = strategy.nextDelayMillis(calls, elapsedMillis + Math.max(0, operationAgeMillis));
+            if (timeoutMillis > 0) {
+                if (elapsedMillis >= timeoutMillis) {
+                    throw new GuruCliException(ErrorCodes.POLL_TIMEOUT,
+                                               String.format("Gave up waiting for %s after %d seconds.", operation,
+                                                             TimeUnit.MILLISECONDS.toSeconds(elapsedMillis)));
+                }
+                delayMillis = Math.min(delayMillis, timeoutMillis - elapsedMillis);
+            }
+        }
+        calls++;
+        return delayMillis;
+    }
+
+    /**
+     * Let the strategy back off from when the operation was started instead of from when polling started, e.g. for
+     * an operation that an earlier run started. The timeout still counts from when polling started. Only the first
+     * call has an effect.
+     *
+     * @param started When the operation was started, or null if that is unknown.
+     */
+    void setOperationStart(@Nullable final Instant started) {
+        if (started == null || operationAgeMillis >= 0) {
+            return;
+        }
+        // the clocks of the service and this machine may differ, so the age is never negative.
+        operationAgeMillis = Math.max(0, Duration.between(started, Instant.now()).toMillis() - elapsedMillis());
+    }
+
+    /**
+     * @return The time since the poller was created, in milliseconds.
+     */
+    long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return The number of calls that were made so far.
+     */
+    int getCalls() {
+        return calls;
+    }
+}
@@ -1,24 +1,35 @@
 package com.amazonaws.gurureviewercli.adapter;
 
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import lombok.Getter;
+import lombok.Value;
 import lombok.val;
 import org.commonmark.node.Node;
 import org.commonmark.parser.Parser;
 import org.commonmark.renderer.html.HtmlRenderer;
 import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
 
+import com.amazonaws.gurureviewercli.model.BlameInfo;
 import com.amazonaws.gurureviewercli.model.ScanMetaData;
 import com.amazonaws.gurureviewercli.util.JsonUtil;
 import com.amazonaws.gurureviewercli.util.Log;
-import com.amazonaws.gurureviewercli.util.SarifConverter;
 
 /**
  * Util to save Guru recommendations to disk and convert them to HTML.
@@ -28,34 +39,191 @@ public final class ResultsAdapter {
     public static void saveResults(final Path outputDir,
                                    final List<RecommendationSummary> results,
                                    final ScanMetaData scanMetaData) throws IOException {
-        val jsonFile = outputDir.resolve("recommendations.json");
-        JsonUtil.storeRecommendations(results, jsonFile);
-        Log.info("Recommendations in Json format written to:%n%s", jsonFile.normalize().toUri());
-        val sarifFile = outputDir.resolve("recommendations.sarif.json");
-        JsonUtil.writeSarif(SarifConverter.createSarifReport(results), sarifFile);
-        Log.info("Recommendations in SARIF format written to:%n%s", sarifFile.normalize().toUri());
-
-        createHtmlReport(outputDir, scanMetaData, results);
+        saveResults(outputDir, results, Collections.emptyMap(), scanMetaData);
     }
 
-    private static void createHtmlReport(final Path outputDir,
-                                         final ScanMetaData scanMetaData,
-                                         final List<RecommendationSummary> recommendations) throws IOException {
+    /**
+     * Save the recommendations as Json, SARIF and HTML. The last change of the lines of a recommendation is added to
+     * the Json and SARIF output.
+     *
+     * @param outputDir    The output directory.
+     * @param results      The recommendations.
+     * @param blame        The last change of each recommendation, by recommendation id.
+     * @param scanMetaData The metadata of the scan.
+     * @throws IOException If writing fails.
+     */
+    public static void saveResults(final Path outputDir,
+                                   final List<RecommendationSummary> results,
+                                   final Map<String, BlameInfo> blame,
+                                   final ScanMetaData scanMetaData) throws IOException {
+        try (ResultsWriter writer = openWriter(outputDir, scanMetaData)) {
+            writer.write(results, blame);
+        }
+    }
+
+    /**
+     * Open a writer that saves the recommendations like {@link #saveResults(Path, List, Map, ScanMetaData)}, but one
+     * page at a time, so that the recommendations of a large review do not have to be held in memory. The reports are
+     * complete when the writer is closed.
+     *
+     * @param outputDir    The output directory.
+     * @param scanMetaData The metadata of the scan.
+     * @return The writer.
+     * @throws IOException If the output files cannot be opened.
+     */
+    public static ResultsWriter openWriter(final Path outputDir, final ScanMetaData scanMetaData) throws IOException {
+        return new ResultsWriter(outputDir, scanMetaData);
+    }
+
+    /**
+     * Writes the Json, SARIF and HTML reports page by page.
+     */
+    public static final class ResultsWriter implements Closeable {
+
+        private final Path jsonFile;
+
+        private final Path sarifFile;
+
+        private final JsonUtil.RecommendationsWriter jsonWriter;
+
+        private final JsonUtil.SarifWriter sarifWriter;
+
+        private final HtmlReportWriter htmlWriter;
+
+        @Getter
+        private int count = 0;
+
+        private ResultsWriter(final Path outputDir, final ScanMetaData scanMetaData) throws IOException {
+            this.jsonFile = outputDir.resolve("recommendations.json");
+            this.sarifFile = outputDir.resolve("recommendations.sarif.json");
+            this.jsonWriter = JsonUtil.openRecommendationsWriter(jsonFile);
+            this.sarifWriter = JsonUtil.openSarifWriter(sarifFile);
+            this.htmlWriter = new HtmlReportWriter(outputDir, scanMetaData);
+        }
+
+        /**
+         * @param recommendations The recommendations of one page.
+         * @param blame           The last change of each recommendation, by recommendation id.
+         * @throws IOException If writing fails.
+         */
+        public void write(final List<RecommendationSummary> recommendations,
+                          final Map<String, BlameInfo> blame) throws IOException {
+            jsonWriter.write(recommendations, blame);
+            sarifWriter.write(recommendations, blame);
+            htmlWriter.write(recommendations);
+            count += recommendations.size();
+        }
+
+        /**
+         * Mark the SARIF and HTML reports as partial, e.g., because the download of recommendations was stopped
+         * early. The Json file stays a plain array of recommendations.
+         *
+         * @param reason Why the reports are partial.
+         */
+        public void markPartial(final String reason) {
+            sarifWriter.markPartial(reason);
+            htmlWriter.markPartial(reason);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                jsonWriter.close();
+            } finally {
+                try {
+                    sarifWriter.close();
+                } finally {
+                    htmlWriter.close();
+                }
+            }
+            Log.info("Recommendations in Json format written to:%n%s", jsonFile.normalize().toUri());
+            Log.info("Recommendations in SARIF format written to:%n%s", sarifFile.normalize().toUri());
+        }
+    }
+
+    /**
+     * Renders each recommendation into a file of fragments as it arrives, and assembles the report sorted by file name
+     * and line number when it is closed. Only the sort key and the position of each fragment are held in memory.
+     */
+    private static final class HtmlReportWriter implements Closeable {
 
-        int validFindings = 0;
-        // sort by file name and line number
-        sortByFileName(recommendations);
+        private final Parser parser = Parser.builder().build();
 
-        Parser parser = Parser.builder().build();
-        HtmlRenderer renderer = HtmlRenderer.builder().build();
+        private final HtmlRenderer renderer = HtmlRenderer.builder().build();
 
-        val htmlFile = outputDir.resolve("codeguru-report.html");
-        try (OutputStreamWriter writer =
-                 new OutputStreamWriter(new FileOutputStream(htmlFile.toFile()), StandardCharsets.UTF_8)) {
+        private final ScanMetaData scanMetaData;
+
+        private final Path htmlFile;
+
+        private final Path fragmentsFile;
+
+        private final OutputStream fragments;
+
+        private final List<Fragment> index = new ArrayList<>();
+
+        private long position = 0;
+
+        private String partialReason;
+
+        private HtmlReportWriter(final Path outputDir, final ScanMetaData scanMetaData) throws IOException {
+            this.scanMetaData = scanMetaData;
+            this.htmlFile = outputDir.resolve("codeguru-report.html");
+            this.fragmentsFile = Files.createTempFile(outputDir, "codeguru-report", ".html.tmp");
+            this.fragments = new BufferedOutputStream(Files.newOutputStream(fragmentsFile));
+        }
 
+        private void write(final List<RecommendationSummary> recommendations) throws IOException {
+            for (val recommendation : recommendations) {
+                val filePath = scanMetaData.getRepositoryRoot().resolve(recommendation.filePath()).toAbsolutePath();
+                if (filePath == null || !filePath.toFile().isFile()) {
+                    if (filePath != null && !(filePath.endsWith(".") || filePath.endsWith("/"))) {
+                        Log.warn("Dropping finding because file not found on disk: %s", filePath);
+                    }
+                    continue;
+                }
+                val bytes = render(recommendation, filePath).getBytes(StandardCharsets.UTF_8);
+                fragments.write(bytes);
+                index.add(new Fragment(recommendation.filePath(), recommendation.startLine(), position, bytes.length));
+                position += bytes.length;
+            }
+        }
+
+        private void markPartial(final String reason) {
+            this.partialReason = reason;
+        }
+
+        @Override
+        public void close() throws IOException {
+            fragments.close();
+            try (OutputStreamWriter writer =
+                     new OutputStreamWriter(new FileOutputStream(htmlFile.toFile()), StandardCharsets.UTF_8);
+                 RandomAccessFile input = new RandomAccessFile(fragmentsFile.toFile(), "r")) {
+                writeHeader(writer);
+                // sort by file name and line number
+                index.sort(Comparator.comparing(Fragment::getFilePath)
+                                     .thenComparing(Fragment::getStartLine,
+                                                    Comparator.nullsFirst(Comparator.naturalOrder())));
+                for (val fragment : index) {
+                    val bytes = new byte[fragment.getLength()];
+                    input.seek(fragment.getOffset());
+                    input.readFully(bytes);
+                    writer.write(new String(bytes, StandardCharsets.UTF_8));
+                }
+                writer.write("</body>\n");
+                writer.write("</html>\n");
+            } finally {
+                Files.deleteIfExists(fragmentsFile);
+            }
+            Log.info("Report with %d recommendations written to:%n%s", index.size(), htmlFile.normalize().toUri());
+        }
+
+        private void writeHeader(final Writer writer) throws IOException {
             writer.write("<!DOCTYPE html>\n<html lang=\"en\">\n");
             writer.write("<body>\n");
             writer.write("<h2>CodeGuru Reviewer Recommendations</h2>\n");
+            if (partialReason != null) {
+                writer.write(renderer.render(parser.parse("**Partial report**: " + partialReason)));
+            }
             val awsUrlPrfix = "https://console.aws.amazon.com/codeguru/reviewer";
             val associationUrl = String.format("%s?region=%s#/ciworkflows/associationdetails/%s",
                                                awsUrlPrfix, scanMetaData.getRegion(), scanMetaData.getAssociationArn());
@@ -69,70 +237,48 @@ public final class ResultsAdapter {
                                                                     scanMetaData.getCodeReviewArn(),
                                                                     scanUrl))));
             writer.write("\n<br/><hr style=\"width:90%\"><br/>\n");
+        }
 
-            for (val recommendation : recommendations) {
-                val filePath = scanMetaData.getRepositoryRoot().resolve(recommendation.filePath()).toAbsolutePath();
-                if (filePath == null || !filePath.toFile().isFile()) {
-                    if (filePath != null && !(filePath.endsWith(".") || filePath.endsWith("/"))) {
-                        Log.warn("Dropping finding because file not found on disk: %s", filePath);
-                    }
-                    continue;
-                }
-                validFindings++;
-                String lineMsg;
-                if (!recommendation.startLine().equals(recommendation.endLine())
-                    && recommendation.endLine() != null) {
-                    lineMsg = String.format("### In: [%s](%s) L%d %n",
-                                            filePath, filePath.toUri(),
-                                            recommendation.startLine());
-                } else {
-                    lineMsg = String.format("### In: [%s](%s) L%d - L%d %n",
-                                            filePath, filePath.toUri(),
-                                            recommendation.startLine(),
-                                            recommendation.endLine());
-                }
+        private String render(final RecommendationSummary recommendation, final Path filePath) {
+            val html = new StringBuilder();
+            Node document = parser.parse(String.format("### In: [%s](%s) L%d %n",
+                                                       filePath, filePath.toUri(),
+                                                       recommendation.startLine()));
+            html.append(renderer.render(document));
 
-                Node document = parser.parse(String.format("### In: [%s](%s) L%d %n",
-                                                           filePath, filePath.toUri(),
-                                                           recommendation.startLine()));
-                writer.write(renderer.render(document));
-
-                document = parser.parse("**Issue:** " + recommendation.description());
-                writer.write(renderer.render(document));
-
-                writer.write(String.format("<p><strong>Severity:</strong> %s<p/>", recommendation.severity()));
-
-                if (recommendation.ruleMetadata() != null && recommendation.ruleMetadata().ruleId() != null) {
-                    val manifest = recommendation.ruleMetadata();
-                    writer.write(String.format("<p><strong>Rule ID:</strong> %s<p/>", manifest.ruleId()));
-                    writer.write(String.format("<p><strong>Rule Name:</strong> %s<p/>", manifest.ruleName()));
-                    document = parser.parse("**Description:** " + manifest.longDescription());
-                    writer.write(renderer.render(document));
-                    if (manifest.ruleTags() != null && !manifest.ruleTags().isEmpty()) {
-                        val mdList = manifest.ruleTags().stream()
-                                             .map(s -> String.format("- %s%n", s))
-                                             .collect(Collectors.joining());
-                        document = parser.parse("**Tags:**\n" + mdList);
-                        writer.write(renderer.render(document));
-                    }
+            document = parser.parse("**Issue:** " + recommendation.description());
+            html.append(renderer.render(document));
+
+            html.append(String.format("<p><strong>Severity:</strong> %s<p/>", recommendation.severity()));
+
+            if (recommendation.ruleMetadata() != null && recommendation.ruleMetadata().ruleId() != null) {
+                val manifest = recommendation.ruleMetadata();
+                html.append(String.format("<p><strong>Rule ID:</strong> %s<p/>", manifest.ruleId()));
+                html.append(String.format("<p><strong>Rule Name:</strong> %s<p/>", manifest.ruleName()));
+                document = parser.parse("**Description:** " + manifest.longDescription());
+                html.append(renderer.render(document));
+                if (manifest.ruleTags() != null && !manifest.ruleTags().isEmpty()) {
+                    val mdList = manifest.ruleTags().stream()
+                                         .map(s -> String.format("- %s%n", s))
+                                         .collect(Collectors.joining());
+                    document = parser.parse("**Tags:**\n" + mdList);
+                    html.append(renderer.render(document));
                 }
-                writer.write("\n<hr style=\"width:80%\">\n");
             }
-            writer.write("</body>\n");
-            writer.write("</html>\n");
+            html.append("\n<hr style=\"width:80%\">\n");
+            return html.toString();
         }
-        Log.info("Report with %d recommendations written to:%n%s", validFindings, htmlFile.normalize().toUri());
     }
 
-
-    private static void sortByFileName(final List<RecommendationSummary> recommendations) {
-        Collections.sort(recommendations, (o1, o2) -> {
-            int pathComp = o1.filePath().compareTo(o2.filePath());
-            if (pathComp == 0) {
-                return o1.startLine().compareTo(o2.startLine());
-            }
-            return pathComp;
-        });
+    /**
+     * The sort key of a rendered recommendation and its position in the file of fragments.
+     */
+    @Value
+    private static class Fragment {
+        private final String filePath;
+        private final Integer startLine;
+        private final long offset;
+        private final int length;
     }
 
     private ResultsAdapter() {
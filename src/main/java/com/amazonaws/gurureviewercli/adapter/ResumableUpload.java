@@ -0,0 +1,237 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.val;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import com.amazonaws.gurureviewercli.model.UploadState;
+import com.amazonaws.gurureviewercli.util.JsonUtil;
+import com.amazonaws.gurureviewercli.util.Log;
+import com.amazonaws.gurureviewercli.util.PackResult;
+
+/**
+ * A multipart upload of a file whose progress is persisted in a state file, so that a run that is interrupted, e.g.
+ * because a CI job was preempted, can be resumed by the next run instead of starting over.
+ *
+ * The state file records the upload id, the parts that were uploaded and the SHA-256 of the file, and should be named
+ * by that SHA-256, so that runs which upload different files do not share it. The next run resumes the upload if the
+ * file has the same content, which requires the same zip, e.g. from the artifact cache or a reproducible zip. Uploads
+ * that are not resumed are never aborted, because they may belong to a run that is still in progress. Abandoned
+ * uploads are left to an AbortIncompleteMultipartUpload lifecycle rule of the bucket.
+ */
+final class ResumableUpload {
+
+    /**
+     * Upload a file and persist the progress in the state file while the upload runs. If the upload fails, it is
+     * not aborted, so that the next run can resume it. While a run uploads the file, the state file is locked, and
+     * other runs for the same file upload it without resuming or recording their progress.
+     *
+     * @param s3Client     The client used for all requests.
+     * @param bucketName   Target bucket.
+     * @param key          Target key, unless an earlier upload of the same file is resumed.
+     * @param keyIsFixed   If true, only an earlier upload to the same key is resumed, e.g. because the key is derived
+     *                     from the content and other scans expect the object there.
+     * @param accountId    Expected owner of the bucket.
+     * @param file         The file to upload.
+     * @param partSize     Size of each part but the last one.
+     * @param concurrency  Maximum number of parts that are uploaded at the same time.
+     * @param metadata     User metadata of the object.
+     * @param checksums    Checksums of the file from packing it.
+     * @param stateFile    The file that stores the progress of the upload.
+     * @return The key the file was uploaded to. This is the key of the earlier upload if it was resumed.
+     * @throws IOException If reading the file or the upload fails.
+     */
+    static String uploadFile(final S3Client s3Client,
+                             final String bucketName,
+                             final String key,
+                             final boolean keyIsFixed,
+                             final String accountId,
+                             final Path file,
+                             final int partSize,
+                             final int concurrency,
+                             final Map<String, String> metadata,
+                             final PackResult checksums,
+                             final Path stateFile) throws IOException {
+        val size = Files.size(file);
+        if (size <= partSize) {
+            // a single request cannot be resumed.
+            MultipartUpload.uploadFile(s3Client, bucketName, key, accountId, file, partSize, concurrency, metadata,
+                                       checksums);
+            return key;
+        }
+        Files.createDirectories(stateFile.getParent());
+        // the lock file is empty and kept, so that all runs lock the same file.
+        val lockFile = stateFile.resolveSibling(stateFile.getFileName() + ".lock");
+        try (val channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             val lock = tryLock(channel)) {
+            if (lock == null) {
+                Log.info("Another run is uploading the same artifact, so the upload to s3://%s/%s cannot be resumed",
+                         bucketName, key);
+                MultipartUpload.uploadFile(s3Client, bucketName, key, accountId, file, partSize, concurrency,
+                                           metadata, checksums);
+                return key;
+            }
+            return uploadLocked(s3Client, bucketName, key, keyIsFixed, accountId, file, size, partSize, concurrency,
+                                metadata, checksums, stateFile);
+        }
+    }
+
+    private static String uploadLocked(final S3Client s3Client,
+                                       final String bucketName,
+                                       final String key,
+                                       final boolean keyIsFixed,
+                                       final String accountId,
+                                       final Path file,
+                                       final long size,
+                                       final int partSize,
+                                       final int concurrency,
+                                       final Map<String, String> metadata,
+                                       final PackResult checksums,
+                                       final Path stateFile) throws IOException {
+        val previous = loadState(stateFile);
+        UploadState state = null;
+        if (previous != null) {
+            if (matches(previous, bucketName, checksums, partSize)
+                && (!keyIsFixed || key.equals(previous.getKey()))
+                && uploadExists(s3Client, previous, accountId)) {
+                state = previous;
+            } else {
+                Log.info("Not resuming upload %s of s3://%s/%s from an earlier run because it does not match",
+                         previous.getUploadId(), previous.getBucketName(), previous.getKey());
+            }
+        }
+        final MultipartUpload upload;
+        if (state != null) {
+            Log.info("Resuming upload of s3://%s/%s with %d parts from an earlier run",
+                     bucketName, state.getKey(), state.getCompletedParts().size());
+            upload = MultipartUpload.resume(s3Client, bucketName, state.getKey(), accountId, partSize, concurrency,
+                                            state.getUploadId());
+        } else {
+            upload = new MultipartUpload(s3Client, bucketName, key, accountId, partSize, concurrency, metadata);
+            state = UploadState.builder()
+                               .bucketName(bucketName)
+                               .key(key)
+                               .uploadId(upload.getUploadId())
+                               .sha256(checksums.getSha256())
+                               .size(size)
+                               .partSize(partSize)
+                               .build();
+            storeState(state, stateFile);
+        }
+        val uploadedParts = new HashMap<Integer, CompletedPart>();
+        for (val part : state.getCompletedParts()) {
+            uploadedParts.put(part.getPartNumber(), CompletedPart.builder()
+                                                                 .partNumber(part.getPartNumber())
+                                                                 .eTag(part.getEtag())
+                                                                 .checksumCRC32C(part.getChecksumCrc32c())
+                                                                 .build());
+        }
+        val recordedState = state;
+        upload.setPartListener(part -> recordPart(recordedState, part, stateFile));
+        try {
+            upload.uploadParts(file, size, uploadedParts);
+            upload.complete();
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof S3Exception && ((S3Exception) e).statusCode() == 400) {
+                // S3 rejected the parts, e.g. because they do not match, so resuming would fail again.
+                upload.abort();
+                Files.deleteIfExists(stateFile);
+            } else {
+                upload.stop();
+                Log.warn("Upload of s3://%s/%s failed. The next run for the same artifact resumes it.",
+                         bucketName, state.getKey());
+            }
+            throw e;
+        }
+        Files.deleteIfExists(stateFile);
+        return state.getKey();
+    }
+
+    /**
+     * @return The lock of the channel, or null if another run holds it.
+     */
+    private static FileLock tryLock(final FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // another scan of this process holds the lock.
+            return null;
+        }
+    }
+
+    private static boolean matches(final UploadState state,
+                                   final String bucketName,
+                                   final PackResult checksums,
+                                   final int partSize) {
+        return bucketName.equals(state.getBucketName())
+               && checksums.getSha256().equals(state.getSha256())
+               && checksums.getSize() == state.getSize()
+               && partSize == state.getPartSize();
+    }
+
+    private static boolean uploadExists(final S3Client s3Client, final UploadState state, final String accountId) {
+        try {
+            s3Client.listParts(ListPartsRequest.builder()
+                                               .bucket(state.getBucketName())
+                                               .key(state.getKey())
+                                               .uploadId(state.getUploadId())
+                                               .expectedBucketOwner(accountId)
+                                               .maxParts(1)
+                                               .build());
+            return true;
+        } catch (NoSuchUploadException e) {
+            // the upload was completed, aborted or expired.
+            return false;
+        }
+    }
+
+    private static void recordPart(final UploadState state, final CompletedPart part, final Path stateFile) {
+        // parts complete on several threads, and each of them rewrites the whole state.
+        synchronized (state) {
+            state.getCompletedParts().add(new UploadState.Part(part.partNumber(), part.eTag(), part.checksumCRC32C()));
+            try {
+                storeState(state, stateFile);
+            } catch (IOException e) {
+                Log.warn("Failed to record the progress of the upload in %s: %s", stateFile, e.getMessage());
+            }
+        }
+    }
+
+    private static UploadState loadState(final Path stateFile) {
+        if (!stateFile.toFile().isFile()) {
+            return null;
+        }
+        try {
+            return JsonUtil.loadUploadState(stateFile);
+        } catch (IOException e) {
+            Log.warn("Ignoring unreadable upload state %s: %s", stateFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void storeState(final UploadState state, final Path stateFile) throws IOException {
+        Files.createDirectories(stateFile.getParent());
+        // write a copy and move it into place, so that a run that is killed while writing leaves a valid state.
+        val tempFile = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        JsonUtil.storeUploadState(state, tempFile);
+        Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private ResumableUpload() {
+        // do not instantiate
+    }
+}
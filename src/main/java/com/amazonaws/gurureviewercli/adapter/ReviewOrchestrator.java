@@ -0,0 +1,183 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.val;
+import software.amazon.awssdk.services.codegurureviewer.model.DescribeCodeReviewRequest;
+import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
+
+import com.amazonaws.gurureviewercli.model.Configuration;
+import com.amazonaws.gurureviewercli.model.GitMetaData;
+import com.amazonaws.gurureviewercli.model.ScanContext;
+import com.amazonaws.gurureviewercli.model.ScanMetaData;
+import com.amazonaws.gurureviewercli.util.Log;
+
+/**
+ * Runs several code reviews at the same time without blocking the caller. A single scheduler thread polls the state
+ * of all reviews that are in flight, so waiting for a review costs a scheduled task instead of a sleeping thread.
+ * Scans are started and completed reviews are downloaded on a separate pool of workers, so that an upload or a large
+ * download does not delay the polling of the other reviews.
+ */
+public final class ReviewOrchestrator implements Closeable {
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService workers;
+
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param workerThreads The number of threads that start scans and download results.
+     */
+    public ReviewOrchestrator(final int workerThreads) {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("review-poller").build());
+        this.workers = Executors.newFixedThreadPool(
+            workerThreads, new ThreadFactoryBuilder().setDaemon(true).setNameFormat("review-worker-%d").build());
+    }
+
+    /**
+     * Start a scan on a worker thread. The scan works on its own copy of the configuration, so several scans can be
+     * started with the same one. It should be non-interactive because several scans may ask questions at the same
+     * time.
+     *
+     * @param config      The configuration of the scan.
+     * @param gitMetaData The git metadata of the repository.
+     * @param sourceDirs  The source directories.
+     * @param buildDirs   The build directories.
+     * @return The metadata of the started scan, which is needed to clean up its artifacts.
+     */
+    public CompletableFuture<ScanMetaData> start(final Configuration config,
+                                                 final GitMetaData gitMetaData,
+                                                 final List<Path> sourceDirs,
+                                                 final List<Path> buildDirs) {
+        val scanConfig = scanConfiguration(config, sourceDirs, buildDirs);
+        return track(CompletableFuture.supplyAsync(() -> {
+            try {
+                // a git session is not shared between threads, so each scan opens the repository when it packs it.
+                return ScanAdapter.startScan(scanConfig, null, gitMetaData, sourceDirs, buildDirs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, workers));
+    }
+
+    /**
+     * @return A copy of the configuration for one scan. Packing and uploading record state of the scan in it, e.g. the
+     *     id with which the scan references shared artifacts, so it must not be shared with other scans. Scans of
+     *     different directories also keep their upload state apart, so that an incremental upload of one scan does
+     *     not use the artifacts of another one as its base.
+     */
+    static Configuration scanConfiguration(final Configuration config,
+                                           final List<Path> sourceDirs,
+                                           final List<Path> buildDirs) {
+        val builder = config.toBuilder().artifactReferenceId(UUID.randomUUID().toString());
+        if (config.getUploadStateDir() != null) {
+            val scanId = Hashing.sha256()
+                                .hashString(config.getRootDir() + "\n" + sourceDirs + "\n" + buildDirs,
+                                            StandardCharsets.UTF_8)
+                                .toString();
+            builder.uploadStateDir(config.getUploadStateDir().resolve(scanId.substring(0, 16)));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Wait for a started review and download its recommendations. Cancelling the future stops polling the review.
+     *
+     * @param context The context of the started scan.
+     * @return The recommendations of the review. Completes exceptionally if the review failed or polling timed out.
+     */
+    public CompletableFuture<List<RecommendationSummary>> awaitResults(final ScanContext context) {
+        val future = track(new CompletableFuture<List<RecommendationSummary>>());
+        schedulePoll(context, ScanAdapter.reviewPoller(context), future);
+        return future;
+    }
+
+    /**
+     * Stop polling and cancel all reviews that are still in flight.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        workers.shutdownNow();
+        for (val future : inFlight) {
+            future.cancel(true);
+        }
+    }
+
+    private <T> CompletableFuture<T> track(final CompletableFuture<T> future) {
+        inFlight.add(future);
+        future.whenComplete((result, error) -> inFlight.remove(future));
+        return future;
+    }
+
+    private void schedulePoll(final ScanContext context,
+                              final Poller poller,
+                              final CompletableFuture<List<RecommendationSummary>> future) {
+        try {
+            scheduler.schedule(() -> poll(context, poller, future), poller.nextCallDelayMillis(),
+                               TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // the poll timed out, or the orchestrator was closed.
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void poll(final ScanContext context,
+                      final Poller poller,
+                      final CompletableFuture<List<RecommendationSummary>> future) {
+        if (future.isDone()) {
+            // cancelled by the caller.
+            return;
+        }
+        try {
+            val request = DescribeCodeReviewRequest.builder().codeReviewArn(context.getCodeReviewArn()).build();
+            val response = context.getGuruFrontendService().describeCodeReview(request);
+            if (response == null) {
+                throw new RuntimeException("Unable to find information for scan " + context.getCodeReviewArn());
+            }
+            poller.setOperationStart(response.codeReview().createdTimeStamp());
+            if (!ScanAdapter.isCompleted(response.codeReview())) {
+                schedulePoll(context, poller, future);
+                return;
+            }
+            // only the scheduler thread records durations, so the history file is not written concurrently.
+            ScanAdapter.recordReviewDuration(context, response.codeReview(), poller);
+            workers.execute(() -> download(context, future));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static void download(final ScanContext context,
+                                 final CompletableFuture<List<RecommendationSummary>> future) {
+        try {
+            val recommendations = new ArrayList<RecommendationSummary>();
+            ScanAdapter.streamResults(context.getGuruFrontendService(), context.getCodeReviewArn(), page -> {
+                recommendations.addAll(page);
+                return !future.isDone();
+            });
+            future.complete(recommendations);
+            Log.info("Downloaded %d recommendations of %s", recommendations.size(), context.getCodeReviewArn());
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import lombok.val;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * An {@link OutputStream} that uploads everything written to it to S3 without touching the disk. Bytes are
+ * collected in a part buffer, and each full part is handed to a {@link MultipartUpload} that uploads several parts
+ * in parallel while the next one is filled. Memory is bounded by the part size times the concurrency. If the stream
+ * is closed before the first part is full, the object is uploaded with a single PutObject call instead.
+ *
+ * The multipart upload is only completed by {@link #close()}. Callers that fail while writing have to call
+ * {@link #abort()} so that S3 does not keep the uploaded parts.
+ */
+final class S3MultipartOutputStream extends OutputStream {
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final String accountId;
+    private final int partSize;
+    private final int concurrency;
+    private final long startNanos = System.nanoTime();
+
+    private byte[] buffer;
+    private int position;
+    private MultipartUpload upload;
+    private boolean closed;
+
+    S3MultipartOutputStream(final S3Client s3Client,
+                            final String bucketName,
+                            final String key,
+                            final String accountId) {
+        this(s3Client, bucketName, key, accountId, MultipartUpload.DEFAULT_PART_SIZE,
+             MultipartUpload.DEFAULT_CONCURRENCY);
+    }
+
+    S3MultipartOutputStream(final S3Client s3Client,
+                            final String bucketName,
+                            final String key,
+                            final String accountId,
+                            final int partSize,
+                            final int concurrency) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.accountId = accountId;
+        this.partSize = partSize;
+        this.concurrency = concurrency;
+        this.buffer = new byte[partSize];
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+        buffer[position++] = (byte) b;
+        if (position == buffer.length) {
+            flushPart();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+        int offset = off;
+        int remaining = len;
+        while (remaining > 0) {
+            val count = Math.min(remaining, buffer.length - position);
+            System.arraycopy(b, offset, buffer, position, count);
+            position += count;
+            offset += count;
+            remaining -= count;
+            if (position == buffer.length) {
+                flushPart();
+            }
+        }
+    }
+
+    /**
+     * Upload the remaining buffer and complete the upload. If anything fails, the upload is aborted.
+     *
+     * @throws IOException If the upload fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (upload == null) {
+                val putObjectRequest = PutObjectRequest.builder()
+                                                       .bucket(bucketName)
+                                                       .key(key)
+                                                       .expectedBucketOwner(accountId)
+                                                       .checksumCRC32C(MultipartUpload.crc32c(buffer, position))
+                                                       .build();
+                s3Client.putObject(putObjectRequest, RequestBody.fromByteBuffer(ByteBuffer.wrap(buffer, 0, position)));
+                MultipartUpload.logThroughput(bucketName, key, position, startNanos);
+            } else {
+                if (position > 0) {
+                    upload.submitPart(buffer, position);
+                }
+                upload.complete();
+            }
+        } catch (IOException | RuntimeException e) {
+            abortUpload();
+            throw e;
+        } finally {
+            buffer = null;
+        }
+    }
+
+    /**
+     * Abort the upload and discard all parts that were already uploaded. Safe to call more than once.
+     */
+    public void abort() {
+        closed = true;
+        abortUpload();
+        buffer = null;
+    }
+
+    private void flushPart() throws IOException {
+        try {
+            if (upload == null) {
+                upload = new MultipartUpload(s3Client, bucketName, key, accountId, partSize, concurrency,
+                                             Collections.emptyMap());
+            }
+            upload.submitPart(buffer, position);
+            buffer = upload.nextBuffer();
+            position = 0;
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    private void abortUpload() {
+        if (upload != null) {
+            upload.abort();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Upload to s3://" + bucketName + "/" + key + " is already closed.");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import lombok.val;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import com.amazonaws.gurureviewercli.util.Log;
+
+/**
+ * Tracks which scans use an S3 object, so that an object with a content-addressed key can be shared by concurrent
+ * scans of the same content and is only deleted by the last scan that releases it.
+ *
+ * Each scan marks its use of an object with an empty marker object under {@value #PREFIX}, named after the object and
+ * a reference id that is unique to the scan. A scan that releases the object and wants to delete it first announces
+ * the deletion with a marker under {@value #DELETIONS_PREFIX} and then lists the references, while a scan that takes a
+ * reference first writes its marker and then lists the deletions. S3 lists are strongly consistent, so at least one of
+ * two concurrent scans sees the marker of the other: either the releasing scan keeps the object, or the acquiring scan
+ * does not reuse it and uploads its own copy under a different key.
+ *
+ * Markers of scans that did not remove them, e.g. because they were killed, are ignored and cleaned up once they are
+ * older than {@link #STALE_REFERENCE_MILLIS} or {@link #STALE_DELETION_MILLIS}.
+ */
+public final class S3ObjectReferences {
+
+    static final String PREFIX = "analysis-refs/";
+
+    static final String DELETIONS_PREFIX = "analysis-deletions/";
+
+    private static final long STALE_REFERENCE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final long STALE_DELETION_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String accountId;
+    private final String referenceId;
+
+    /**
+     * @param s3Client    The client used for all requests.
+     * @param bucketName  The bucket of the referenced objects.
+     * @param accountId   Expected owner of the bucket.
+     * @param referenceId Identifies the scan that holds the references.
+     */
+    public S3ObjectReferences(final S3Client s3Client,
+                              final String bucketName,
+                              final String accountId,
+                              final String referenceId) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.accountId = accountId;
+        this.referenceId = referenceId;
+    }
+
+    /**
+     * Mark the object as used by this scan.
+     *
+     * @param s3Key The key of the object, which does not have to exist yet.
+     * @return True if the object is protected from deletion until this scan releases it. False if another scan is
+     *     deleting it, or if the deletions cannot be listed. In that case the reference is removed again, and the
+     *     scan must not use an existing object under the key.
+     */
+    public boolean acquire(final String s3Key) {
+        putMarker(markerKey(PREFIX, s3Key));
+        try {
+            if (!hasLiveMarkers(DELETIONS_PREFIX, s3Key, STALE_DELETION_MILLIS)) {
+                return true;
+            }
+        } catch (Exception e) {
+            Log.warn("Failed to list the deletions of %s in %s: %s", s3Key, bucketName, e.getMessage());
+        }
+        deleteMarker(markerKey(PREFIX, s3Key));
+        return false;
+    }
+
+    /**
+     * Remove the reference of this scan to the object, and delete the object if no other scan references it.
+     *
+     * @param s3Key The key of the object.
+     * @return True if the object was deleted. False if it is still referenced, or if the references cannot be listed.
+     */
+    public boolean release(final String s3Key) {
+        deleteMarker(markerKey(PREFIX, s3Key));
+        val deletionMarker = markerKey(DELETIONS_PREFIX, s3Key);
+        try {
+            putMarker(deletionMarker);
+            if (hasLiveMarkers(PREFIX, s3Key, STALE_REFERENCE_MILLIS)) {
+                return false;
+            }
+            s3Client.deleteObject(DeleteObjectRequest.builder()
+                                                     .bucket(bucketName)
+                                                     .key(s3Key)
+                                                     .expectedBucketOwner(accountId)
+                                                     .build());
+            return true;
+        } catch (Exception e) {
+            Log.warn("Failed to release %s in %s, keeping the object: %s", s3Key, bucketName, e.getMessage());
+            return false;
+        } finally {
+            deleteMarker(deletionMarker);
+        }
+    }
+
+    /**
+     * @return True if a marker of another scan under the prefix is younger than maxAgeMillis. Older markers are
+     *     deleted.
+     */
+    private boolean hasLiveMarkers(final String prefix, final String s3Key, final long maxAgeMillis) {
+        val now = Instant.now().toEpochMilli();
+        val request = ListObjectsV2Request.builder()
+                                          .bucket(bucketName)
+                                          .prefix(markerPrefix(prefix, s3Key))
+                                          .expectedBucketOwner(accountId)
+                                          .build();
+        boolean live = false;
+        for (val marker : s3Client.listObjectsV2Paginator(request).contents()) {
+            if (marker.key().equals(markerKey(prefix, s3Key))) {
+                continue;
+            }
+            if (now - marker.lastModified().toEpochMilli() > maxAgeMillis) {
+                deleteMarker(marker.key());
+            } else {
+                live = true;
+            }
+        }
+        return live;
+    }
+
+    private void putMarker(final String markerKey) {
+        s3Client.putObject(PutObjectRequest.builder()
+                                           .bucket(bucketName)
+                                           .key(markerKey)
+                                           .expectedBucketOwner(accountId)
+                                           .build(),
+                           RequestBody.empty());
+    }
+
+    private void deleteMarker(final String markerKey) {
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder()
+                                                     .bucket(bucketName)
+                                                     .key(markerKey)
+                                                     .expectedBucketOwner(accountId)
+                                                     .build());
+        } catch (Exception e) {
+            Log.warn("Failed to delete %s from %s. Please delete the object by hand.", markerKey, bucketName);
+        }
+    }
+
+    private String markerKey(final String prefix, final String s3Key) {
+        return markerPrefix(prefix, s3Key) + referenceId;
+    }
+
+    private static String markerPrefix(final String prefix, final String s3Key) {
+        return prefix + s3Key + "/";
+    }
+}
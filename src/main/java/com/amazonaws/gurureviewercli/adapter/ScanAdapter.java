@@ -1,18 +1,29 @@
 package com.amazonaws.gurureviewercli.adapter;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import com.beust.jcommander.internal.Nullable;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.val;
 import software.amazon.awssdk.services.codegurureviewer.CodeGuruReviewerClient;
 import software.amazon.awssdk.services.codegurureviewer.model.AnalysisType;
 import software.amazon.awssdk.services.codegurureviewer.model.CodeArtifacts;
+import software.amazon.awssdk.services.codegurureviewer.model.CodeReview;
 import software.amazon.awssdk.services.codegurureviewer.model.CodeReviewType;
 import software.amazon.awssdk.services.codegurureviewer.model.CommitDiffSourceCodeType;
 import software.amazon.awssdk.services.codegurureviewer.model.CreateCodeReviewRequest;
@@ -21,6 +32,7 @@ import software.amazon.awssdk.services.codegurureviewer.model.DescribeCodeReview
 import software.amazon.awssdk.services.codegurureviewer.model.EventInfo;
 import software.amazon.awssdk.services.codegurureviewer.model.JobState;
 import software.amazon.awssdk.services.codegurureviewer.model.ListRecommendationsRequest;
+import software.amazon.awssdk.services.codegurureviewer.model.ListRecommendationsResponse;
 import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
 import software.amazon.awssdk.services.codegurureviewer.model.RepositoryAnalysis;
 import software.amazon.awssdk.services.codegurureviewer.model.RepositoryAssociation;
@@ -32,9 +44,14 @@ import software.amazon.awssdk.services.codegurureviewer.model.SourceCodeType;
 import software.amazon.awssdk.services.codegurureviewer.model.ValidationException;
 import software.amazon.awssdk.services.codegurureviewer.model.VendorName;
 
+import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
 import com.amazonaws.gurureviewercli.model.Configuration;
 import com.amazonaws.gurureviewercli.model.GitMetaData;
+import com.amazonaws.gurureviewercli.model.PollStrategy;
+import com.amazonaws.gurureviewercli.model.ReviewHistory;
+import com.amazonaws.gurureviewercli.model.ScanContext;
 import com.amazonaws.gurureviewercli.model.ScanMetaData;
+import com.amazonaws.gurureviewercli.util.JsonUtil;
 import com.amazonaws.gurureviewercli.util.Log;
 
 
@@ -45,9 +62,11 @@ public final class ScanAdapter {
 
     private static final String SCAN_PREFIX_NAME = "codeguru-reviewer-cli-";
 
-    private static final long WAIT_TIME_IN_SECONDS = 2L;
+    // number of review durations that are kept per repository.
+    private static final int REVIEW_HISTORY_SIZE = 20;
 
     public static ScanMetaData startScan(final Configuration config,
+                                         @Nullable final GitSession gitSession,
                                          final GitMetaData gitMetaData,
                                          final List<Path> sourceDirs,
                                          final List<Path> buildDirs) throws IOException {
@@ -58,7 +77,7 @@ public final class ScanAdapter {
 
         try {
             val tempDir = Files.createTempDirectory("artifact-packing-dir");
-            val metadata = ArtifactAdapter.zipAndUpload(config, tempDir, config.getRootDir(),
+            val metadata = ArtifactAdapter.zipAndUpload(config, gitSession, tempDir, config.getRootDir(),
                                                         sourceDirs, buildDirs, bucketName);
 
             val request = createRepoAnalysisRequest(gitMetaData, metadata.getSourceKey(),
@@ -82,45 +101,228 @@ public final class ScanAdapter {
         }
     }
 
+    /**
+     * Poll the code review until it is completed and download all of its recommendations.
+     *
+     * @param config       The configuration.
+     * @param scanMetaData The metadata of the started scan.
+     * @return The recommendations.
+     * @throws IOException If the download is interrupted.
+     */
     public static List<RecommendationSummary> fetchResults(final Configuration config,
-                                                           final ScanMetaData scanMetaData) {
-        val reviewARN = scanMetaData.getCodeReviewArn();
+                                                           final ScanMetaData scanMetaData) throws IOException {
+        waitForReview(config, scanMetaData);
+        val recommendations = new ArrayList<RecommendationSummary>();
+        streamResults(config, scanMetaData.getCodeReviewArn(), page -> {
+            recommendations.addAll(page);
+            return true;
+        });
+        return recommendations;
+    }
+
+    /**
+     * Poll the code review until it is completed.
+     *
+     * @param config       The configuration.
+     * @param scanMetaData The metadata of the started scan.
+     */
+    public static void waitForReview(final Configuration config, final ScanMetaData scanMetaData) {
+        val context = ScanContext.of(config, scanMetaData);
+        val guruFrontendService = context.getGuruFrontendService();
+        val reviewARN = context.getCodeReviewArn();
         val describeReviewRequest = DescribeCodeReviewRequest.builder().codeReviewArn(reviewARN).build();
-        DescribeCodeReviewResponse response = config.getGuruFrontendService().describeCodeReview(describeReviewRequest);
+        val poller = reviewPoller(context);
+        poller.awaitNextCall();
+        DescribeCodeReviewResponse response = guruFrontendService.describeCodeReview(describeReviewRequest);
         while (response != null) {
-            val state = response.codeReview().state();
-            if (JobState.COMPLETED.equals(state)) {
+            // a collected review may have been started long before this run.
+            poller.setOperationStart(response.codeReview().createdTimeStamp());
+            if (isCompleted(response.codeReview())) {
                 Log.println(":)");
-                return downloadResults(config.getGuruFrontendService(), reviewARN);
-            } else if (JobState.PENDING.equals(state)) {
-                Log.print(".");
-                try {
-                    Thread.sleep(TimeUnit.SECONDS.toMillis(WAIT_TIME_IN_SECONDS));
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            } else if (JobState.FAILED.equals(state)) {
-                val msg = String.format("CodeGuru scan failed for ARN %s: %s%nCheck the AWS Console for more detail",
-                                        reviewARN, response.codeReview().stateReason());
-                throw new RuntimeException(msg);
-            } else {
-                val msg = String.format("CodeGuru scan is in an unexpected state %s: %s%n"
-                                        + "Check the AWS Console for more detail",
-                                        state, response.codeReview().stateReason());
-                throw new RuntimeException(msg);
+                recordReviewDuration(context, response.codeReview(), poller);
+                return;
+            }
+            Log.print(".");
+            try {
+                poller.awaitNextCall();
+            } catch (GuruCliException e) {
+                // end the line of progress dots before the error is logged.
+                Log.println("");
+                throw e;
             }
-            response = config.getGuruFrontendService().describeCodeReview(describeReviewRequest);
+            response = guruFrontendService.describeCodeReview(describeReviewRequest);
         }
         throw new RuntimeException("Unable to find information for scan " + reviewARN);
     }
 
-    private static List<RecommendationSummary> downloadResults(final CodeGuruReviewerClient guruFrontendService,
-                                                               final String reviewARN) {
-        val recommendations = new ArrayList<RecommendationSummary>();
+    /**
+     * @param context The context of the scan.
+     * @return A poller for the code review of the scan, which backs off from the expected duration of the review.
+     */
+    static Poller reviewPoller(final ScanContext context) {
+        val strategy = context.getPollStrategy() != null
+                       ? context.getPollStrategy()
+                       : BackoffPollStrategy.forCodeReview(expectedReviewDuration(context));
+        return Poller.of("code review " + context.getCodeReviewArn(), strategy, context);
+    }
+
+    /**
+     * @param codeReview The code review as described by CodeGuru.
+     * @return True if the review is completed, false if it is still pending.
+     * @throws RuntimeException If the review failed or is in an unexpected state.
+     */
+    static boolean isCompleted(final CodeReview codeReview) {
+        val state = codeReview.state();
+        if (JobState.COMPLETED.equals(state)) {
+            return true;
+        } else if (JobState.PENDING.equals(state)) {
+            return false;
+        } else if (JobState.FAILED.equals(state)) {
+            val msg = String.format("CodeGuru scan failed for ARN %s: %s%nCheck the AWS Console for more detail",
+                                    codeReview.codeReviewArn(), codeReview.stateReason());
+            throw new RuntimeException(msg);
+        }
+        val msg = String.format("CodeGuru scan is in an unexpected state %s: %s%n"
+                                + "Check the AWS Console for more detail",
+                                state, codeReview.stateReason());
+        throw new RuntimeException(msg);
+    }
+
+    /**
+     * @return The lower quartile of the durations of the last reviews of the repository, so that a review that is
+     *     faster than usual is not noticed much later than it completed. Null if there is no history.
+     */
+    @Nullable
+    private static Long expectedReviewDuration(final ScanContext context) {
+        val history = loadReviewHistory(context);
+        if (history == null || history.getDurationsMillis().isEmpty()) {
+            return null;
+        }
+        val durations = new ArrayList<Long>(history.getDurationsMillis());
+        Collections.sort(durations);
+        return durations.get(durations.size() / 4);
+    }
+
+    static void recordReviewDuration(final ScanContext context,
+                                     final CodeReview codeReview,
+                                     final Poller poller) {
+        val historyFile = reviewHistoryFile(context);
+        if (historyFile == null) {
+            return;
+        }
+        // the timestamps of the service include the time before the first poll.
+        long durationMillis = poller.elapsedMillis();
+        if (codeReview.createdTimeStamp() != null && codeReview.lastUpdatedTimeStamp() != null) {
+            val serviceMillis = Duration.between(codeReview.createdTimeStamp(),
+                                                 codeReview.lastUpdatedTimeStamp()).toMillis();
+            if (serviceMillis > 0) {
+                durationMillis = serviceMillis;
+            }
+        }
+        ReviewHistory history = loadReviewHistory(context);
+        if (history == null) {
+            history = new ReviewHistory();
+        }
+        val durations = history.getDurationsMillis();
+        durations.add(durationMillis);
+        while (durations.size() > REVIEW_HISTORY_SIZE) {
+            durations.remove(0);
+        }
+        try {
+            Files.createDirectories(historyFile.getParent());
+            val tempFile = historyFile.resolveSibling(historyFile.getFileName() + ".tmp");
+            JsonUtil.storeReviewHistory(history, tempFile);
+            Files.move(tempFile, historyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.warn("Failed to record the duration of the review in %s: %s", historyFile, e.getMessage());
+        }
+        Log.info("Review took %d seconds after %d status calls", TimeUnit.MILLISECONDS.toSeconds(durationMillis),
+                 poller.getCalls());
+    }
+
+    @Nullable
+    private static ReviewHistory loadReviewHistory(final ScanContext context) {
+        val historyFile = reviewHistoryFile(context);
+        if (historyFile == null || !historyFile.toFile().isFile()) {
+            return null;
+        }
+        try {
+            return JsonUtil.loadReviewHistory(historyFile);
+        } catch (IOException e) {
+            Log.warn("Ignoring unreadable review history %s: %s", historyFile, e.getMessage());
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Path reviewHistoryFile(final ScanContext context) {
+        if (context.getReviewHistoryDir() == null || context.getRepoName() == null) {
+            return null;
+        }
+        return context.getReviewHistoryDir().resolve(context.getRepoName() + ".json");
+    }
+
+    /**
+     * Download the recommendations of a completed code review one page at a time. The next page is fetched while the
+     * consumer processes the current one, so that only two pages are held in memory.
+     *
+     * @param config    The configuration.
+     * @param reviewARN The ARN of the code review.
+     * @param consumer  Processes the recommendations of a page. Returns false to stop the download.
+     * @throws IOException If the consumer fails.
+     */
+    public static void streamResults(final Configuration config,
+                                     final String reviewARN,
+                                     final PageConsumer consumer) throws IOException {
+        streamResults(config.getGuruFrontendService(), reviewARN, consumer);
+    }
+
+    static void streamResults(final CodeGuruReviewerClient guruFrontendService,
+                              final String reviewARN,
+                              final PageConsumer consumer) throws IOException {
         val listRequest = ListRecommendationsRequest.builder().codeReviewArn(reviewARN).build();
-        guruFrontendService.listRecommendationsPaginator(listRequest)
-                           .forEach(resp -> recommendations.addAll(resp.recommendationSummaries()));
-        return recommendations;
+        val pages = guruFrontendService.listRecommendationsPaginator(listRequest).iterator();
+        val threadFactory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat("recommendations-%d").build();
+        val executor = Executors.newSingleThreadExecutor(threadFactory);
+        try {
+            // the iterator is only used by the single thread of the executor.
+            Future<List<RecommendationSummary>> prefetch = executor.submit(() -> nextPage(pages));
+            List<RecommendationSummary> page = prefetch.get();
+            while (page != null) {
+                prefetch = executor.submit(() -> nextPage(pages));
+                if (!consumer.accept(page)) {
+                    return;
+                }
+                page = prefetch.get();
+            }
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading recommendations of " + reviewARN);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Nullable
+    private static List<RecommendationSummary> nextPage(final Iterator<ListRecommendationsResponse> pages) {
+        return pages.hasNext() ? pages.next().recommendationSummaries() : null;
+    }
+
+    /**
+     * Processes the recommendations of a code review one page at a time.
+     */
+    @FunctionalInterface
+    public interface PageConsumer {
+
+        /**
+         * @param page The recommendations of one page.
+         * @return False if no further pages are needed.
+         * @throws IOException If processing the page fails.
+         */
+        boolean accept(List<RecommendationSummary> page) throws IOException;
     }
 
     private static CreateCodeReviewRequest createRepoAnalysisRequest(final GitMetaData gitMetaData,
@@ -0,0 +1,27 @@
+package com.amazonaws.gurureviewercli.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The last change of a line, as reported by git blame.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlameInfo {
+
+    private String commitId;
+
+    private String authorName;
+
+    private String authorEmail;
+
+    /**
+     * Author time of the commit in seconds since the epoch.
+     */
+    private long authorTime;
+}
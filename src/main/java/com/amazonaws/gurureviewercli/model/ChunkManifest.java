@@ -0,0 +1,49 @@
+package com.amazonaws.gurureviewercli.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The chunks of the last artifact that was uploaded incrementally, so that the next upload can copy chunks that did
+ * not change from that object in S3 instead of uploading them again.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkManifest {
+
+    private String bucketName;
+
+    private String key;
+
+    /**
+     * SHA-256 of the artifact, to check that the object in S3 is still the one the chunks describe.
+     */
+    private String sha256;
+
+    private long size;
+
+    @Builder.Default
+    private List<Chunk> chunks = new ArrayList<>();
+
+    /**
+     * A byte range of the artifact and the SHA-256 of its content.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Chunk {
+
+        private long offset;
+
+        private int length;
+
+        private String sha256;
+    }
+}
@@ -3,6 +3,8 @@ package com.amazonaws.gurureviewercli.model;
 import javax.annotation.Nullable;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import lombok.Builder;
 import lombok.Data;
@@ -10,12 +12,14 @@ import org.beryx.textio.TextIO;
 import software.amazon.awssdk.services.codegurureviewer.CodeGuruReviewerClient;
 import software.amazon.awssdk.services.s3.S3Client;
 
+import com.amazonaws.gurureviewercli.util.ArtifactCache;
+
 /**
  * Class to hold all shared configuration data. This object is mutable and information is added as it becomes
  * available.
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class Configuration {
 
     private boolean interactiveMode;
@@ -38,6 +42,51 @@ public class Configuration {
 
     private String bucketName;
 
+    private boolean streamUpload;
+
+    private boolean packFromGit;
+
+    private boolean fullGitDir;
+
+    private boolean packChangedFiles;
+
+    private boolean includeChangedDirectories;
+
+    private boolean includeIgnoredFiles;
+
+    private int zipThreads;
+
+    private int uploadPartSizeMb;
+
+    private int uploadThreads;
+
+    private boolean reproducibleZip;
+
+    private boolean contentAddressedKeys;
+
+    private boolean incrementalUpload;
+
+    private boolean resumableUpload;
+
+    private @Nullable
+    String artifactReferenceId;
+
+    private @Nullable
+    ArtifactCache artifactCache;
+
+    private @Nullable
+    Path uploadStateDir;
+
+    private int pollTimeoutMinutes;
+
+    private int maxPolls;
+
+    private @Nullable
+    PollStrategy pollStrategy;
+
+    private @Nullable
+    Path reviewHistoryDir;
+
     private @Nullable
     String beforeCommit;
 
@@ -46,4 +95,7 @@ public class Configuration {
 
     private @Nullable
     Collection<Path> versionedFiles;
+
+    private @Nullable
+    Supplier<Set<String>> changedPaths;
 }
@@ -15,7 +15,8 @@ public enum ErrorCodes {
     GIT_EMPTY_DIFF("Git Diff is empty"),
     AWS_INIT_ERROR("Failed to initialize AWS API"),
     BAD_BUCKET_NAME("CodeGuru Reviewer expects bucket names to start with codeguru-reviewer-"),
-    USER_ABORT("Abort");
+    USER_ABORT("Abort"),
+    POLL_TIMEOUT("Timed out waiting for CodeGuru Reviewer");
 
     @Getter
     final String errorMessage;
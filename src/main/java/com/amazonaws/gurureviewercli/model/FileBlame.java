@@ -0,0 +1,36 @@
+package com.amazonaws.gurureviewercli.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The blamed lines of a file at a commit, persisted so that the next run for the same commit does not have to blame
+ * them again. Since the commit is immutable, the entries never go stale.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileBlame {
+
+    private String commitId;
+
+    private String path;
+
+    /**
+     * The number of lines of the file at the commit, or 0 if the file is not in the commit. Requested lines past the
+     * end have no blame. Null if the file was not blamed yet, e.g. in caches of older versions.
+     */
+    private Integer lineCount;
+
+    /**
+     * The blamed lines by their 1-based line number. Only lines of findings are blamed.
+     */
+    @Builder.Default
+    private Map<Integer, BlameInfo> lines = new HashMap<>();
+}
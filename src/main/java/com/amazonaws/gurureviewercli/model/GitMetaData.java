@@ -3,6 +3,8 @@ package com.amazonaws.gurureviewercli.model;
 import javax.annotation.Nullable;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import lombok.Builder;
 import lombok.Data;
@@ -31,4 +33,6 @@ public class GitMetaData {
 
     private @Nullable Collection<Path> versionedFiles;
 
+    private @Nullable Supplier<Set<String>> changedPaths;
+
 }
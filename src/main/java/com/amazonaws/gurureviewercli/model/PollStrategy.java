@@ -0,0 +1,15 @@
+package com.amazonaws.gurureviewercli.model;
+
+/**
+ * Decides how long to wait between two calls that poll the state of a long-running operation, e.g. a code review
+ * or a repository association.
+ */
+public interface PollStrategy {
+
+    /**
+     * @param calls         The number of calls that were made so far. At least 1.
+     * @param elapsedMillis The time since the first call.
+     * @return The time to wait before the next call, in milliseconds.
+     */
+    long nextDelayMillis(int calls, long elapsedMillis);
+}
@@ -22,6 +22,8 @@ public class Recommendation {
     private String recommendationCategory;
     private RuleMetadata ruleMetadata;
     private String severity;
+    // the last change of the lines of the recommendation, if findings were enriched with git blame.
+    private BlameInfo blame;
 
     @Data
     public static final class RuleMetadata {
@@ -0,0 +1,26 @@
+package com.amazonaws.gurureviewercli.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The durations of the last code reviews of a repository, persisted so that the next run can predict when its review
+ * completes and poll less often until then.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewHistory {
+
+    /**
+     * The durations of the last reviews in milliseconds, oldest first.
+     */
+    @Builder.Default
+    private List<Long> durationsMillis = new ArrayList<>();
+}
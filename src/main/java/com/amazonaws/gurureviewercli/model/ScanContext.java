@@ -0,0 +1,48 @@
+package com.amazonaws.gurureviewercli.model;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+
+import lombok.Builder;
+import lombok.Value;
+import software.amazon.awssdk.services.codegurureviewer.CodeGuruReviewerClient;
+
+/**
+ * Immutable snapshot of the information that is needed to wait for a started scan and to download its results.
+ * Unlike {@link Configuration}, a context can be handed to threads that work on several scans at the same time.
+ */
+@Value
+@Builder
+public class ScanContext {
+
+    private final CodeGuruReviewerClient guruFrontendService;
+
+    private final String codeReviewArn;
+
+    private final @Nullable String repoName;
+
+    private final int pollTimeoutMinutes;
+
+    private final int maxPolls;
+
+    private final @Nullable PollStrategy pollStrategy;
+
+    private final @Nullable Path reviewHistoryDir;
+
+    /**
+     * @param config       The configuration the scan was started with.
+     * @param scanMetaData The metadata of the started scan.
+     * @return The context of the scan, which does not change when the configuration does.
+     */
+    public static ScanContext of(final Configuration config, final ScanMetaData scanMetaData) {
+        return ScanContext.builder()
+                          .guruFrontendService(config.getGuruFrontendService())
+                          .codeReviewArn(scanMetaData.getCodeReviewArn())
+                          .repoName(config.getRepoName())
+                          .pollTimeoutMinutes(config.getPollTimeoutMinutes())
+                          .maxPolls(config.getMaxPolls())
+                          .pollStrategy(config.getPollStrategy())
+                          .reviewHistoryDir(config.getReviewHistoryDir())
+                          .build();
+    }
+}
@@ -32,4 +32,32 @@ public class ScanMetaData {
     private String sourceKey;
 
     private String buildKey;
+
+    /**
+     * SHA of the analyzed commit. Results that are collected later are blamed against it, even if HEAD moved. Null if
+     * the repository is not a git repository.
+     */
+    private String commitId;
+
+    /**
+     * SHA-256 of the source zip. Reproducible zips of the same files have the same hash.
+     */
+    private String sourceSha256;
+
+    /**
+     * SHA-256 of the build zip. Reproducible zips of the same files have the same hash.
+     */
+    private String buildSha256;
+
+    /**
+     * Identifies this scan's references to content-addressed artifacts, which are shared with other scans. Null if
+     * the artifacts have random keys and belong to this scan alone.
+     */
+    private String artifactReferenceId;
+
+    /**
+     * True if the artifacts are not deleted from S3 after the scan, because the artifact cache or the next incremental
+     * upload owns them.
+     */
+    private boolean keepArtifacts;
 }
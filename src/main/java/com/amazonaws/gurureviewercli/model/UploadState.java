@@ -0,0 +1,53 @@
+package com.amazonaws.gurureviewercli.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a multipart upload of an artifact, persisted so that a run that was interrupted can be resumed by the
+ * next run for the same artifact.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadState {
+
+    private String bucketName;
+
+    private String key;
+
+    private String uploadId;
+
+    /**
+     * SHA-256 of the artifact. The upload is only resumed for an artifact with the same content.
+     */
+    private String sha256;
+
+    private long size;
+
+    private int partSize;
+
+    @Builder.Default
+    private List<Part> completedParts = new ArrayList<>();
+
+    /**
+     * A part that was uploaded successfully.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Part {
+
+        private int partNumber;
+
+        private String etag;
+
+        private String checksumCrc32c;
+    }
+}
@@ -0,0 +1,423 @@
+package com.amazonaws.gurureviewercli.util;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteSource;
+import com.google.common.io.MoreFiles;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * A local cache of packed artifacts, keyed by a hash of the content that went into them. If the files under a
+ * source or build directory did not change since an earlier run, the zip from that run is reused instead of packing
+ * it again, and so is the S3 object it was uploaded to, as long as it still exists.
+ *
+ * The cache is bounded by size and evicts the least recently used zips first. Several CLI processes can share one
+ * cache directory: changes to the cache are made under a file lock, and new zips are moved into place atomically.
+ */
+@Log4j2
+public final class ArtifactCache {
+
+    // change this if the layout of the zip files changes, so that zips from older versions are not reused.
+    private static final String FORMAT_VERSION = "1";
+
+    private static final String ZIP_SUFFIX = ".zip";
+    private static final String LOCATIONS_SUFFIX = ".s3";
+    private static final String CHECKSUMS_SUFFIX = ".sum";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String LOCK_FILE = ".lock";
+
+    // another process may be uploading a zip it just looked up, so recently used zips are not evicted.
+    private static final long IN_USE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    // leftovers from processes that died while they were packing.
+    private static final long STALE_TEMP_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // file locks are held per process, so threads of the same process have to be serialized separately.
+    private static final Object PROCESS_LOCK = new Object();
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory Directory where the zips are stored. It is created if it does not exist.
+     * @param maxBytes  Upper bound for the total size of all zips in the cache.
+     * @throws IOException If the directory cannot be created.
+     */
+    public ArtifactCache(final Path directory, final long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory).toRealPath();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Compute the cache key for a list of entries.
+     *
+     * @param kind          The kind of artifact, e.g. source or build. Different kinds never share a key.
+     * @param entries       The entries that will be packed.
+     * @param repositoryDir Root of the git repository the files belong to, or null.
+     * @return A key that only depends on the names and content of the entries.
+     * @throws IOException If a file cannot be read.
+     * @see #hashContent
+     */
+    public String computeKey(final String kind,
+                             final List<ZipUtils.PackEntry> entries,
+                             @Nullable final Path repositoryDir) throws IOException {
+        return hashContent(kind, entries, repositoryDir);
+    }
+
+    /**
+     * Hash the names and content of a list of entries. Files that are tracked by git and unchanged since they were
+     * staged are identified by the blob id from the git index, so they do not have to be read. All other files are
+     * hashed.
+     *
+     * @param kind          The kind of artifact, e.g. source or build. Different kinds never share a hash.
+     * @param entries       The entries that will be packed.
+     * @param repositoryDir Root of the git repository the files belong to, or null.
+     * @return A SHA-256 in hex that only depends on the names and content of the entries.
+     * @throws IOException If a file cannot be read.
+     */
+    public static String hashContent(final String kind,
+                                     final List<ZipUtils.PackEntry> entries,
+                                     @Nullable final Path repositoryDir) throws IOException {
+        val index = GitIndex.read(repositoryDir);
+        val hasher = Hashing.sha256().newHasher();
+        hasher.putString(FORMAT_VERSION, StandardCharsets.UTF_8).putByte((byte) 0);
+        hasher.putString(kind, StandardCharsets.UTF_8).putByte((byte) 0);
+        for (val entry : entries) {
+            hasher.putString(entry.getName(), StandardCharsets.UTF_8).putByte((byte) 0);
+            val contentId = entry.getSource() != null ? entry.getSource().contentId() : null;
+            val blobId = contentId == null && index != null ? index.blobId(entry.getFile()) : null;
+            if (contentId != null) {
+                hasher.putString(contentId, StandardCharsets.UTF_8);
+            } else if (blobId != null) {
+                hasher.putString("git:" + blobId, StandardCharsets.UTF_8);
+            } else {
+                val digest = hashEntry(entry);
+                hasher.putString("sha256:" + digest, StandardCharsets.UTF_8);
+            }
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Look up the zip for a key and mark it as recently used.
+     *
+     * @param key A key from {@link #computeKey}.
+     * @return The cached zip, if there is one.
+     * @throws IOException If the cache cannot be locked.
+     */
+    public Optional<Path> lookup(final String key) throws IOException {
+        return withLock(() -> {
+            val zipFile = zipFile(key);
+            try {
+                Files.setLastModifiedTime(zipFile, FileTime.fromMillis(System.currentTimeMillis()));
+                return Optional.of(zipFile);
+            } catch (NoSuchFileException e) {
+                return Optional.empty();
+            }
+        });
+    }
+
+    /**
+     * @param key A key from {@link #computeKey}.
+     * @return A new file in the cache directory that a zip can be written to before it is passed to
+     *     {@link #store}. Writing it in the cache directory makes sure that it can be moved into place atomically.
+     */
+    public Path newTempFile(final String key) {
+        return directory.resolve(key + "." + UUID.randomUUID() + TEMP_SUFFIX);
+    }
+
+    /**
+     * Move a zip into the cache and evict the least recently used zips until the cache fits into its size bound.
+     *
+     * @param key     A key from {@link #computeKey}.
+     * @param tempZip A file from {@link #newTempFile}.
+     * @return The cached zip and the S3 objects of all evicted zips, which should be deleted by the caller.
+     * @throws IOException If the zip cannot be moved into the cache.
+     */
+    public StoreResult store(final String key, final Path tempZip) throws IOException {
+        return store(key, tempZip, null);
+    }
+
+    /**
+     * Move a zip into the cache together with its checksums, so that they do not have to be computed again when the
+     * zip is reused.
+     *
+     * @param key       A key from {@link #computeKey}.
+     * @param tempZip   A file from {@link #newTempFile}.
+     * @param checksums The checksums from packing the zip, or null.
+     * @return The cached zip and the S3 objects of all evicted zips, which should be deleted by the caller.
+     * @throws IOException If the zip cannot be moved into the cache.
+     */
+    public StoreResult store(final String key,
+                             final Path tempZip,
+                             @Nullable final PackResult checksums) throws IOException {
+        return withLock(() -> {
+            val zipFile = zipFile(key);
+            Files.move(tempZip, zipFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (checksums != null) {
+                val properties = new Properties();
+                properties.setProperty("size", Long.toString(checksums.getSize()));
+                properties.setProperty("sha256", checksums.getSha256());
+                properties.setProperty("crc32c", Integer.toString(checksums.getCrc32c()));
+                try (OutputStream out = Files.newOutputStream(checksumsFile(key))) {
+                    properties.store(out, null);
+                }
+            } else {
+                Files.deleteIfExists(checksumsFile(key));
+            }
+            return new StoreResult(zipFile, evict(zipFile));
+        });
+    }
+
+    /**
+     * @param key A key from {@link #computeKey}.
+     * @return The checksums that were stored with the zip for this key, if any.
+     * @throws IOException If the cache cannot be read.
+     */
+    public Optional<PackResult> findChecksums(final String key) throws IOException {
+        return withLock(() -> {
+            val properties = new Properties();
+            try (InputStream in = Files.newInputStream(checksumsFile(key))) {
+                properties.load(in);
+            } catch (NoSuchFileException e) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(new PackResult(Long.parseLong(properties.getProperty("size")),
+                                                  properties.getProperty("sha256"),
+                                                  Integer.parseInt(properties.getProperty("crc32c"))));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring corrupt checksums for {} in the artifact cache", key);
+                return Optional.empty();
+            }
+        });
+    }
+
+    /**
+     * @param key        A key from {@link #computeKey}.
+     * @param bucketName The bucket the zip was uploaded to.
+     * @return The S3 key under which the zip was uploaded to this bucket before, if any.
+     * @throws IOException If the cache cannot be read.
+     */
+    public Optional<String> findS3Key(final String key, final String bucketName) throws IOException {
+        return withLock(() -> Optional.ofNullable(readLocations(key).getProperty(bucketName)));
+    }
+
+    /**
+     * Remember where the zip for a key was uploaded to.
+     *
+     * @param key        A key from {@link #computeKey}.
+     * @param bucketName The bucket the zip was uploaded to.
+     * @param s3Key      The key of the uploaded object.
+     * @throws IOException If the cache cannot be written.
+     */
+    public void recordS3Key(final String key, final String bucketName, final String s3Key) throws IOException {
+        withLock(() -> {
+            val locations = readLocations(key);
+            locations.setProperty(bucketName, s3Key);
+            try (OutputStream out = Files.newOutputStream(locationsFile(key))) {
+                locations.store(out, null);
+            }
+            return null;
+        });
+    }
+
+    private List<S3Location> evict(final Path keep) throws IOException {
+        val now = System.currentTimeMillis();
+        val zips = new ArrayList<Path>();
+        long totalBytes = 0;
+        try (val files = Files.list(directory)) {
+            for (val file : (Iterable<Path>) files::iterator) {
+                val name = file.getFileName().toString();
+                if (name.endsWith(ZIP_SUFFIX)) {
+                    zips.add(file);
+                    totalBytes += Files.size(file);
+                } else if (name.endsWith(TEMP_SUFFIX)
+                           && now - Files.getLastModifiedTime(file).toMillis() > STALE_TEMP_MILLIS) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        val evicted = new ArrayList<S3Location>();
+        if (totalBytes <= maxBytes) {
+            return evicted;
+        }
+        int evictedZips = 0;
+        zips.sort(Comparator.comparingLong(ArtifactCache::lastModifiedMillis));
+        for (val zip : zips) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            if (zip.equals(keep) || now - lastModifiedMillis(zip) < IN_USE_MILLIS) {
+                continue;
+            }
+            val name = zip.getFileName().toString();
+            val key = name.substring(0, name.length() - ZIP_SUFFIX.length());
+            val size = Files.size(zip);
+            val locations = readLocations(key);
+            for (val bucketName : locations.stringPropertyNames()) {
+                evicted.add(new S3Location(bucketName, locations.getProperty(bucketName)));
+            }
+            Files.deleteIfExists(locationsFile(key));
+            Files.deleteIfExists(checksumsFile(key));
+            Files.deleteIfExists(zip);
+            totalBytes -= size;
+            evictedZips++;
+        }
+        log.info("Evicted {} zip files from the artifact cache in {}", evictedZips, directory);
+        return evicted;
+    }
+
+    private Properties readLocations(final String key) throws IOException {
+        val locations = new Properties();
+        try (InputStream in = Files.newInputStream(locationsFile(key))) {
+            locations.load(in);
+        } catch (NoSuchFileException e) {
+            // nothing was uploaded yet.
+        }
+        return locations;
+    }
+
+    private <T> T withLock(final LockedAction<T> action) throws IOException {
+        synchronized (PROCESS_LOCK) {
+            try (val channel = FileChannel.open(directory.resolve(LOCK_FILE),
+                                                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 val lock = channel.lock()) {
+                return action.run();
+            }
+        }
+    }
+
+    private Path zipFile(final String key) {
+        return directory.resolve(key + ZIP_SUFFIX);
+    }
+
+    private Path locationsFile(final String key) {
+        return directory.resolve(key + LOCATIONS_SUFFIX);
+    }
+
+    private Path checksumsFile(final String key) {
+        return directory.resolve(key + CHECKSUMS_SUFFIX);
+    }
+
+    private static String hashEntry(final ZipUtils.PackEntry entry) throws IOException {
+        if (entry.getSource() == null) {
+            return MoreFiles.asByteSource(entry.getFile()).hash(Hashing.sha256()).toString();
+        }
+        return new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return entry.open();
+            }
+        }.hash(Hashing.sha256()).toString();
+    }
+
+    private static long lastModifiedMillis(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * An object in S3.
+     */
+    @Value
+    public static class S3Location {
+        private final String bucketName;
+        private final String key;
+    }
+
+    /**
+     * The result of {@link #store}.
+     */
+    @Value
+    public static class StoreResult {
+        private final Path zipFile;
+        private final List<S3Location> evicted;
+    }
+
+    /**
+     * Blob ids of the files in the git index, for files that did not change since they were staged.
+     */
+    private static final class GitIndex {
+        private final Path workTree;
+        private final DirCache dirCache;
+        private final long indexModifiedMillis;
+
+        private GitIndex(final Path workTree, final DirCache dirCache, final long indexModifiedMillis) {
+            this.workTree = workTree;
+            this.dirCache = dirCache;
+            this.indexModifiedMillis = indexModifiedMillis;
+        }
+
+        @Nullable
+        static GitIndex read(@Nullable final Path repositoryDir) throws IOException {
+            if (repositoryDir == null) {
+                return null;
+            }
+            val indexFile = repositoryDir.resolve(".git").resolve("index");
+            if (!indexFile.toFile().isFile()) {
+                return null;
+            }
+            val modified = Files.getLastModifiedTime(indexFile).toMillis();
+            try {
+                return new GitIndex(repositoryDir.toRealPath(), DirCache.read(indexFile.toFile(), FS.DETECTED),
+                                    modified);
+            } catch (Exception e) {
+                log.warn("Cannot read git index {}, hashing all files instead: {}", indexFile, e.getMessage());
+                return null;
+            }
+        }
+
+        @Nullable
+        String blobId(final Path file) throws IOException {
+            val absolute = file.toAbsolutePath().normalize();
+            if (!absolute.startsWith(workTree)) {
+                return null;
+            }
+            val path = workTree.relativize(absolute).toString().replace('\\', '/');
+            val entry = dirCache.getEntry(path);
+            if (entry == null || entry.isSmudged()) {
+                return null;
+            }
+            val modified = Files.getLastModifiedTime(absolute).toMillis();
+            // a file that was modified in the same instant as the index could have changed after it was staged.
+            if (entry.getLength() != Files.size(absolute)
+                || entry.getLastModifiedInstant().toEpochMilli() != modified
+                || modified >= indexModifiedMillis) {
+                return null;
+            }
+            return entry.getObjectId().name();
+        }
+    }
+}
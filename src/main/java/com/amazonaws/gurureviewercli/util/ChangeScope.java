@@ -0,0 +1,105 @@
+package com.amazonaws.gurureviewercli.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import lombok.val;
+
+/**
+ * The files of a commit range that are packed when only the changes are analyzed: the files that changed, and
+ * optionally the other files in the directories of the changed files, e.g. the classes of the same Java package, so
+ * that the analysis can resolve the types that the changed files use. Files are looked up by their path relative to
+ * the root of the repository, so that the whole source tree does not have to be walked.
+ */
+public final class ChangeScope {
+
+    // name of the CodeGuru configuration file, which is always packed.
+    private static final String CODEGURU_CONFIG_FILE = "aws-codeguru-reviewer.yml";
+
+    private final Path workTree;
+    private final Set<String> changedPaths;
+    private final Set<String> changedDirectories = new HashSet<>();
+
+    /**
+     * @param workTree           The root of the repository.
+     * @param changedPaths       The paths that changed in the commit range, relative to the root of the repository.
+     * @param includeDirectories Also include the other files in the directories of the changed files.
+     */
+    public ChangeScope(final Path workTree, final Set<String> changedPaths, final boolean includeDirectories) {
+        this.workTree = workTree.toAbsolutePath().normalize();
+        this.changedPaths = changedPaths;
+        if (includeDirectories) {
+            for (val path : changedPaths) {
+                changedDirectories.add(parent(path));
+            }
+        }
+    }
+
+    /**
+     * @param path A path relative to the root of the repository, like the name of a zip entry.
+     * @return True if the file is packed.
+     */
+    public boolean includes(final String path) {
+        return changedPaths.contains(path)
+               || changedDirectories.contains(parent(path))
+               || CODEGURU_CONFIG_FILE.equals(path);
+    }
+
+    /**
+     * List the files in the work tree that are in this scope. Files that were deleted in the commit range are
+     * skipped. Only the changed files are stat'ed, and only the directories of the changed files are listed.
+     *
+     * @param sourceDirs The source directories. Files outside of them are skipped.
+     * @return The files in the scope.
+     * @throws IOException If a directory cannot be listed.
+     */
+    public List<Path> listFiles(final Collection<Path> sourceDirs) throws IOException {
+        val roots = new ArrayList<Path>(sourceDirs.size());
+        for (val sourceDir : sourceDirs) {
+            val absolute = sourceDir.toAbsolutePath().normalize();
+            roots.add(Files.exists(absolute) ? absolute.toRealPath() : absolute);
+        }
+        val files = new LinkedHashSet<Path>();
+        for (val path : changedPaths) {
+            files.add(workTree.resolve(path));
+        }
+        for (val directory : changedDirectories) {
+            val dir = workTree.resolve(directory);
+            if (dir.toFile().isDirectory()) {
+                try (val children = Files.list(dir)) {
+                    children.forEach(files::add);
+                }
+            }
+        }
+        val result = new ArrayList<Path>(files.size() + 1);
+        for (val file : files) {
+            if (roots.stream().anyMatch(file::startsWith) && Files.isRegularFile(file)) {
+                result.add(file);
+            }
+        }
+        val configFile = workTree.resolve(CODEGURU_CONFIG_FILE);
+        if (!files.contains(configFile) && Files.isRegularFile(configFile)) {
+            result.add(configFile);
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of changed paths.
+     */
+    public int getChangedPathCount() {
+        return changedPaths.size();
+    }
+
+    private static String parent(final String path) {
+        val slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+}
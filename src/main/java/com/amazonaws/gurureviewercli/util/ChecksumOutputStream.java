@@ -0,0 +1,51 @@
+package com.amazonaws.gurureviewercli.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Computes the size, SHA-256 and CRC32C of everything that is written through it. Closing this stream does not close
+ * the underlying stream.
+ */
+final class ChecksumOutputStream extends FilterOutputStream {
+
+    private final Hasher sha256 = Hashing.sha256().newHasher();
+    private final Hasher crc32c = Hashing.crc32c().newHasher();
+    private long size;
+
+    ChecksumOutputStream(final OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        sha256.putByte((byte) b);
+        crc32c.putByte((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        sha256.putBytes(b, off, len);
+        crc32c.putBytes(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * @return The checksums of all bytes written so far. Can only be called once.
+     */
+    PackResult result() {
+        return new PackResult(size, sha256.hash().toString(), crc32c.hash().asInt());
+    }
+}
@@ -1,19 +1,24 @@
 package com.amazonaws.gurureviewercli.util;
 
+import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.Collections;
+import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import lombok.val;
 import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
 import software.amazon.awssdk.services.codegurureviewer.model.Severity;
 
+import com.amazonaws.gurureviewercli.model.BlameInfo;
 import com.amazonaws.gurureviewercli.model.ScanMetaData;
 import com.amazonaws.gurureviewercli.model.bitbucket.CodeInsightsAnnotation;
 import com.amazonaws.gurureviewercli.model.bitbucket.CodeInsightsReport;
@@ -24,6 +29,7 @@ import com.amazonaws.gurureviewercli.model.bitbucket.CodeInsightsReport;
 public final class CodeInsightExport {
     private static final String REPORT_FILE_NAME = "report.json";
     private static final String ANNOTATIONS_FILE_NAME = "annotations.json";
+    private static final String REPORT_TITLE = "CodeGuru Reviewer report";
 
     private static final JsonMapper JSON_MAPPER =
         JsonMapper.builder()
@@ -37,33 +43,120 @@ public final class CodeInsightExport {
     public static void report(final Collection<RecommendationSummary> recommendations,
                               final ScanMetaData scanMetaData,
                               final Path outputDir) throws IOException {
-        val reportTitle = "CodeGuru Reviewer report";
-        val url = String.format("https://console.aws.amazon.com/codeguru/reviewer?region=%s#/codereviews/details/%s",
-                                scanMetaData.getRegion(), scanMetaData.getCodeReviewArn());
-        val report = CodeInsightsReport.builder()
-                                       .title(reportTitle)
-                                       .reporter("CodeGuru Reviewer CLI")
-                                       .details(String.format("CodeGuru Reviewer reported %d recommendations",
-                                                              recommendations.size()))
-                                       .result(recommendations.isEmpty() ? "PASSED" : "FAILED")
-                                       .link(url)
-                                       .data(new ArrayList<>())
-                                       .build();
-
-        val annotations = recommendations.stream().map(r -> convert(r, reportTitle, url))
-                                         .collect(Collectors.toList());
-
-        JSON_MAPPER.writeValue(outputDir.resolve(REPORT_FILE_NAME).toFile(), report);
-        JSON_MAPPER.writeValue(outputDir.resolve(ANNOTATIONS_FILE_NAME).toFile(), annotations);
+        report(recommendations, Collections.emptyMap(), scanMetaData, outputDir);
+    }
+
+    /**
+     * Export the report and annotations. Annotations have no fields for the author of a line, so the last change of
+     * the lines of a recommendation is added to the details of its annotation.
+     *
+     * @param recommendations The recommendations.
+     * @param blame           The last change of each recommendation, by recommendation id.
+     * @param scanMetaData    The metadata of the scan.
+     * @param outputDir       The directory to write the report and annotations to.
+     * @throws IOException If writing fails.
+     */
+    public static void report(final Collection<RecommendationSummary> recommendations,
+                              final Map<String, BlameInfo> blame,
+                              final ScanMetaData scanMetaData,
+                              final Path outputDir) throws IOException {
+        try (ReportWriter writer = openWriter(scanMetaData, outputDir)) {
+            writer.write(recommendations, blame);
+        }
+    }
+
+    /**
+     * Open a writer that exports the annotations one page of recommendations at a time. The report, which needs the
+     * number of recommendations, is written when the writer is closed.
+     *
+     * @param scanMetaData The metadata of the scan.
+     * @param outputDir    The directory to write the report and annotations to.
+     * @return The writer.
+     * @throws IOException If the annotations file cannot be opened.
+     */
+    public static ReportWriter openWriter(final ScanMetaData scanMetaData, final Path outputDir) throws IOException {
+        return new ReportWriter(scanMetaData, outputDir);
+    }
+
+    /**
+     * Writes the annotations as the recommendations arrive, and the report when it is closed.
+     */
+    public static final class ReportWriter implements Closeable {
+
+        private final Path outputDir;
+
+        private final String url;
+
+        private final SequenceWriter annotationsWriter;
+
+        private int count = 0;
+
+        private String partialReason;
+
+        private ReportWriter(final ScanMetaData scanMetaData, final Path outputDir) throws IOException {
+            this.outputDir = outputDir;
+            this.url = String.format("https://console.aws.amazon.com/codeguru/reviewer"
+                                     + "?region=%s#/codereviews/details/%s",
+                                     scanMetaData.getRegion(), scanMetaData.getCodeReviewArn());
+            this.annotationsWriter =
+                JSON_MAPPER.writer().writeValuesAsArray(outputDir.resolve(ANNOTATIONS_FILE_NAME).toFile());
+        }
+
+        /**
+         * @param recommendations The recommendations of one page.
+         * @param blame           The last change of each recommendation, by recommendation id.
+         * @throws IOException If writing fails.
+         */
+        public void write(final Collection<RecommendationSummary> recommendations,
+                          final Map<String, BlameInfo> blame) throws IOException {
+            for (val recommendation : recommendations) {
+                annotationsWriter.write(convert(recommendation, blame.get(recommendation.recommendationId()),
+                                                REPORT_TITLE, url));
+                count++;
+            }
+        }
+
+        /**
+         * Mark the report as partial when it is closed.
+         *
+         * @param reason Why the report is partial.
+         */
+        public void markPartial(final String reason) {
+            this.partialReason = reason;
+        }
+
+        @Override
+        public void close() throws IOException {
+            annotationsWriter.close();
+            String details = String.format("CodeGuru Reviewer reported %d recommendations", count);
+            if (partialReason != null) {
+                details = String.format("%s. The report is partial: %s", details, partialReason);
+            }
+            val report = CodeInsightsReport.builder()
+                                           .title(REPORT_TITLE)
+                                           .reporter("CodeGuru Reviewer CLI")
+                                           .details(details)
+                                           .result(count == 0 ? "PASSED" : "FAILED")
+                                           .link(url)
+                                           .data(new ArrayList<>())
+                                           .build();
+            JSON_MAPPER.writeValue(outputDir.resolve(REPORT_FILE_NAME).toFile(), report);
+        }
     }
 
     private static CodeInsightsAnnotation convert(final RecommendationSummary recommendation,
+                                                  @Nullable final BlameInfo blameInfo,
                                                   final String reportTitle,
                                                   final String url) {
         String description = recommendation.recommendationCategoryAsString();
         if (recommendation.ruleMetadata() != null) {
             description = recommendation.ruleMetadata().shortDescription();
         }
+        String details = recommendation.description();
+        if (blameInfo != null) {
+            details = String.format("%s%n%nLast changed by %s <%s> in commit %s.", details,
+                                    blameInfo.getAuthorName(), blameInfo.getAuthorEmail(), blameInfo.getCommitId());
+        }
 
         return CodeInsightsAnnotation.builder()
                                      .title(reportTitle)
@@ -71,7 +164,7 @@ public final class CodeInsightExport {
                                      .path(recommendation.filePath())
                                      .line(recommendation.startLine())
                                      .summary(description)
-                                     .details(recommendation.description())
+                                     .details(details)
                                      .link(url)
                                      .annotationType("Vulnerability".toUpperCase())
                                      .severity(convertSeverity(recommendation.severity()))
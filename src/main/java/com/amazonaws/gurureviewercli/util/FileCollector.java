@@ -0,0 +1,150 @@
+package com.amazonaws.gurureviewercli.util;
+
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Collects the files under a set of directories. Excluded directories are pruned from the walk with
+ * {@link FileVisitResult#SKIP_SUBTREE}, so none of the files below them are visited. Excludes are normalized once
+ * up front and looked up by directory, rather than compared against every file.
+ */
+final class FileCollector extends SimpleFileVisitor<Path> {
+
+    private final Set<Path> excludes = new HashSet<>();
+    private final List<Path> files = new ArrayList<>();
+    private final Predicate<Path> directoryFilter;
+    private final Predicate<Path> fileFilter;
+    private int prunedDirectories;
+
+    /**
+     * @param excludeDirs Directories whose content should not be collected. May be null.
+     * @throws IOException If an exclude exists but cannot be resolved.
+     */
+    FileCollector(final Collection<Path> excludeDirs) throws IOException {
+        this(excludeDirs, dir -> true, file -> true);
+    }
+
+    /**
+     * @param excludeDirs     Directories whose content should not be collected. May be null.
+     * @param directoryFilter Directories for which this is false are skipped, like excluded directories, but they
+     *                        are not counted as excluded.
+     * @param fileFilter      Files for which this is false are not collected.
+     * @throws IOException If an exclude exists but cannot be resolved.
+     */
+    FileCollector(final Collection<Path> excludeDirs,
+                  final Predicate<Path> directoryFilter,
+                  final Predicate<Path> fileFilter) throws IOException {
+        this.directoryFilter = directoryFilter;
+        this.fileFilter = fileFilter;
+        if (excludeDirs != null) {
+            for (val exclude : excludeDirs) {
+                val absolute = exclude.toAbsolutePath().normalize();
+                excludes.add(absolute);
+                if (Files.exists(absolute)) {
+                    // files below a source root are resolved to their real path, so the exclude has to be too.
+                    excludes.add(absolute.toRealPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect all files under the given root, skipping excluded directories.
+     *
+     * @param root A directory, or a single file.
+     * @return The files that were found under this root. Directories are not included.
+     * @throws IOException If reading the file system fails.
+     */
+    List<Path> collect(final Path root) throws IOException {
+        val start = files.size();
+        Files.walkFileTree(root, this);
+        return new ArrayList<>(files.subList(start, files.size()));
+    }
+
+    /**
+     * @param file An absolute, normalized path.
+     * @return True if the file is inside one of the excluded directories.
+     */
+    boolean isExcluded(final Path file) {
+        if (excludes.isEmpty()) {
+            return false;
+        }
+        for (Path parent = file; parent != null; parent = parent.getParent()) {
+            if (excludes.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of directories that were skipped because they are excluded.
+     */
+    int getPrunedDirectories() {
+        return prunedDirectories;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+        if (isExcluded(dir)) {
+            prunedDirectories++;
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+        return directoryFilter.test(dir) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        // links are not followed, but a link to a regular file is still packed like the file itself.
+        val isDirectory = attrs.isSymbolicLink() ? Files.isDirectory(file) : attrs.isDirectory();
+        if (!isDirectory && fileFilter.test(file)) {
+            files.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Resolve the roots to their real path and drop every root that is inside another root, so that no file is
+     * collected twice.
+     *
+     * @param roots The directories to walk.
+     * @return The distinct, non-overlapping roots in their original order.
+     * @throws IOException If a root does not exist.
+     */
+    static List<Path> dedupeRoots(final Collection<Path> roots) throws IOException {
+        val realRoots = new ArrayList<Path>(roots.size());
+        for (val root : roots) {
+            val realRoot = root.toRealPath();
+            if (!realRoots.contains(realRoot)) {
+                realRoots.add(realRoot);
+            }
+        }
+        // check the shortest paths first, they are the only candidates for a parent.
+        val byDepth = new ArrayList<Path>(realRoots);
+        byDepth.sort(Comparator.comparingInt(Path::getNameCount));
+        val nested = new HashSet<Path>();
+        for (int i = 0; i < byDepth.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                if (!nested.contains(byDepth.get(j)) && byDepth.get(i).startsWith(byDepth.get(j))) {
+                    nested.add(byDepth.get(i));
+                    break;
+                }
+            }
+        }
+        realRoots.removeAll(nested);
+        return realRoots;
+    }
+}
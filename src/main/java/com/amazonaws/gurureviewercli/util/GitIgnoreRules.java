@@ -0,0 +1,162 @@
+package com.amazonaws.gurureviewercli.util;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+import org.eclipse.jgit.errors.ConfigInvalidException;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.SystemReader;
+
+/**
+ * The ignore rules of a repository, like git evaluates them: the .gitignore files of a directory and its parents,
+ * then .git/info/exclude, then the global excludes file of the user. The .gitignore file of a directory is read the
+ * first time a path in it is checked, so a walk that prunes ignored directories never reads the .gitignore files in
+ * them.
+ *
+ * Instances are not thread-safe.
+ */
+@Log4j2
+public final class GitIgnoreRules {
+
+    private static final String GITIGNORE_FILE = ".gitignore";
+
+    private final Path root;
+    // .git/info/exclude and the global excludes file, in the order in which they are checked.
+    private final List<IgnoreNode> repositoryNodes;
+    // the rules of the .gitignore file of each directory that was checked, or null if it has none.
+    private final Map<Path, IgnoreNode> directoryNodes = new HashMap<>();
+    private int ignoredCount;
+
+    private GitIgnoreRules(final Path root, final List<IgnoreNode> repositoryNodes) {
+        this.root = root;
+        this.repositoryNodes = repositoryNodes;
+    }
+
+    /**
+     * @param repositoryDir The root of the repository. It does not have to be a git repository, the .gitignore files
+     *                      and the global excludes are used either way.
+     * @return The ignore rules of the repository.
+     * @throws IOException If the root cannot be resolved.
+     */
+    public static GitIgnoreRules load(final Path repositoryDir) throws IOException {
+        val root = repositoryDir.toRealPath();
+        val repositoryNodes = new ArrayList<IgnoreNode>();
+        val infoExclude = parse(root.resolve(".git").resolve("info").resolve("exclude"));
+        if (infoExclude != null) {
+            repositoryNodes.add(infoExclude);
+        }
+        val globalExcludes = parse(globalExcludesFile());
+        if (globalExcludes != null) {
+            repositoryNodes.add(globalExcludes);
+        }
+        return new GitIgnoreRules(root, repositoryNodes);
+    }
+
+    /**
+     * @param path        An absolute, normalized path below the root of the repository.
+     * @param isDirectory If the path is a directory.
+     * @return True if git would ignore the path. Paths outside of the repository are never ignored.
+     */
+    public boolean isIgnored(final Path path, final boolean isDirectory) {
+        if (!path.startsWith(root) || path.equals(root)) {
+            return false;
+        }
+        // the closest .gitignore file decides, so a rule in a subdirectory can negate a rule of its parent.
+        for (Path dir = path.getParent(); dir != null && dir.startsWith(root); dir = dir.getParent()) {
+            val node = directoryNode(dir);
+            if (node != null) {
+                val ignored = node.checkIgnored(unixPath(dir.relativize(path)), isDirectory);
+                if (ignored != null) {
+                    return count(ignored);
+                }
+            }
+        }
+        val relativePath = unixPath(root.relativize(path));
+        for (val node : repositoryNodes) {
+            val ignored = node.checkIgnored(relativePath, isDirectory);
+            if (ignored != null) {
+                return count(ignored);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of paths that were ignored. The files in ignored directories are not counted.
+     */
+    public int getIgnoredCount() {
+        return ignoredCount;
+    }
+
+    private boolean count(final boolean ignored) {
+        if (ignored) {
+            ignoredCount++;
+        }
+        return ignored;
+    }
+
+    @Nullable
+    private IgnoreNode directoryNode(final Path dir) {
+        if (!directoryNodes.containsKey(dir)) {
+            directoryNodes.put(dir, parse(dir.resolve(GITIGNORE_FILE)));
+        }
+        return directoryNodes.get(dir);
+    }
+
+    @Nullable
+    private static IgnoreNode parse(@Nullable final Path ignoreFile) {
+        if (ignoreFile == null || !ignoreFile.toFile().isFile()) {
+            return null;
+        }
+        val node = new IgnoreNode();
+        try (val in = Files.newInputStream(ignoreFile)) {
+            node.parse(in);
+        } catch (IOException e) {
+            log.warn("Cannot read ignore rules from {}: {}", ignoreFile, e.getMessage());
+            return null;
+        }
+        return node.getRules().isEmpty() ? null : node;
+    }
+
+    /**
+     * @return The core.excludesFile of the user's git configuration, or the default $XDG_CONFIG_HOME/git/ignore.
+     */
+    @Nullable
+    private static Path globalExcludesFile() {
+        val home = FS.DETECTED.userHome();
+        if (home == null) {
+            return null;
+        }
+        try {
+            val userConfig = SystemReader.getInstance().openUserConfig(null, FS.DETECTED);
+            userConfig.load();
+            val excludesFile = userConfig.getString(ConfigConstants.CONFIG_CORE_SECTION, null,
+                                                    ConfigConstants.CONFIG_KEY_EXCLUDESFILE);
+            if (excludesFile != null) {
+                return excludesFile.startsWith("~/") ? home.toPath().resolve(excludesFile.substring(2))
+                                                     : Paths.get(excludesFile);
+            }
+        } catch (IOException | ConfigInvalidException e) {
+            log.warn("Cannot read the git configuration of the user: {}", e.getMessage());
+        }
+        val xdgConfigHome = System.getenv("XDG_CONFIG_HOME");
+        val configHome = xdgConfigHome != null && !xdgConfigHome.isEmpty() ? Paths.get(xdgConfigHome)
+                                                                           : home.toPath().resolve(".config");
+        return configHome.resolve("git").resolve("ignore");
+    }
+
+    private static String unixPath(final Path path) {
+        return path.toString().replace('\\', '/');
+    }
+}
@@ -1,23 +1,42 @@
 package com.amazonaws.gurureviewercli.util;
 
+import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
+import com.contrastsecurity.sarif.ReportingDescriptor;
 import com.contrastsecurity.sarif.SarifSchema210;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.NonNull;
+import lombok.val;
 import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
 
+import com.amazonaws.gurureviewercli.model.BlameInfo;
+import com.amazonaws.gurureviewercli.model.ChunkManifest;
+import com.amazonaws.gurureviewercli.model.FileBlame;
 import com.amazonaws.gurureviewercli.model.Recommendation;
+import com.amazonaws.gurureviewercli.model.ReviewHistory;
+import com.amazonaws.gurureviewercli.model.ScanMetaData;
+import com.amazonaws.gurureviewercli.model.UploadState;
 
 /**
  * Util class to load scan metadata
@@ -43,11 +62,215 @@ public final class JsonUtil {
         OBJECT_MAPPER.writeValue(targetFile.toFile(), recommendations);
     }
 
+    /**
+     * Store recommendations with the last change of their lines. Recommendations without blame are stored as is.
+     *
+     * @param recommendations The recommendations.
+     * @param blame           The last change of each recommendation, by recommendation id.
+     * @param targetFile      The file to write.
+     * @throws IOException If writing fails.
+     */
+    public static void storeRecommendations(@NonNull final List<RecommendationSummary> recommendations,
+                                            @NonNull final Map<String, BlameInfo> blame,
+                                            @NonNull final Path targetFile) throws IOException {
+        try (RecommendationsWriter writer = openRecommendationsWriter(targetFile)) {
+            writer.write(recommendations, blame);
+        }
+    }
+
+    /**
+     * Open a writer that stores recommendations like {@link #storeRecommendations(List, Map, Path)}, but one page at
+     * a time. The Json array is completed when the writer is closed.
+     *
+     * @param targetFile The file to write.
+     * @return The writer.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static RecommendationsWriter openRecommendationsWriter(@NonNull final Path targetFile) throws IOException {
+        return new RecommendationsWriter(OBJECT_MAPPER.writer().writeValuesAsArray(targetFile.toFile()));
+    }
+
+    /**
+     * Open a writer that stores a SARIF report one page of recommendations at a time. The results are written as
+     * they arrive, and the rules of the tool are written after them when the writer is closed.
+     *
+     * @param targetFile The file to write.
+     * @return The writer.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static SarifWriter openSarifWriter(@NonNull final Path targetFile) throws IOException {
+        return new SarifWriter(OBJECT_MAPPER.getFactory().createGenerator(targetFile.toFile(), JsonEncoding.UTF8));
+    }
+
+    public static ScanMetaData loadScanMetaData(@NonNull final Path jsonFile) throws IOException {
+        return OBJECT_MAPPER.readValue(jsonFile.toFile(), ScanMetaData.class);
+    }
+
+    public static void storeScanMetaData(@NonNull final ScanMetaData scanMetaData, @NonNull final Path targetFile)
+        throws IOException {
+        OBJECT_MAPPER.writeValue(targetFile.toFile(), scanMetaData);
+    }
+
+    public static UploadState loadUploadState(@NonNull final Path jsonFile) throws IOException {
+        return OBJECT_MAPPER.readValue(jsonFile.toFile(), UploadState.class);
+    }
+
+    public static void storeUploadState(@NonNull final UploadState uploadState, @NonNull final Path targetFile)
+        throws IOException {
+        OBJECT_MAPPER.writeValue(targetFile.toFile(), uploadState);
+    }
+
+    public static ChunkManifest loadChunkManifest(@NonNull final Path jsonFile) throws IOException {
+        return OBJECT_MAPPER.readValue(jsonFile.toFile(), ChunkManifest.class);
+    }
+
+    public static void storeChunkManifest(@NonNull final ChunkManifest manifest, @NonNull final Path targetFile)
+        throws IOException {
+        OBJECT_MAPPER.writeValue(targetFile.toFile(), manifest);
+    }
+
+    public static ReviewHistory loadReviewHistory(@NonNull final Path jsonFile) throws IOException {
+        return OBJECT_MAPPER.readValue(jsonFile.toFile(), ReviewHistory.class);
+    }
+
+    public static void storeReviewHistory(@NonNull final ReviewHistory history, @NonNull final Path targetFile)
+        throws IOException {
+        OBJECT_MAPPER.writeValue(targetFile.toFile(), history);
+    }
+
+    public static FileBlame loadFileBlame(@NonNull final Path jsonFile) throws IOException {
+        return OBJECT_MAPPER.readValue(jsonFile.toFile(), FileBlame.class);
+    }
+
+    public static void storeFileBlame(@NonNull final FileBlame fileBlame, @NonNull final Path targetFile)
+        throws IOException {
+        OBJECT_MAPPER.writeValue(targetFile.toFile(), fileBlame);
+    }
+
     public static void writeSarif(@NonNull final SarifSchema210 sarif, @NonNull final Path targetFile)
         throws IOException {
         OBJECT_MAPPER.writeValue(targetFile.toFile(), sarif);
     }
 
+    /**
+     * Writes recommendations and their blame into a Json array.
+     */
+    public static final class RecommendationsWriter implements Closeable {
+
+        private final SequenceWriter writer;
+
+        private RecommendationsWriter(final SequenceWriter writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * @param recommendations The recommendations of one page.
+         * @param blame           The last change of each recommendation, by recommendation id.
+         * @throws IOException If writing fails.
+         */
+        public void write(@NonNull final List<RecommendationSummary> recommendations,
+                          @NonNull final Map<String, BlameInfo> blame) throws IOException {
+            for (val recommendation : recommendations) {
+                final ObjectNode node = OBJECT_MAPPER.valueToTree(recommendation);
+                val blameInfo = blame.get(recommendation.recommendationId());
+                if (blameInfo != null) {
+                    node.set("blame", OBJECT_MAPPER.valueToTree(blameInfo));
+                }
+                writer.write(node);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes a SARIF report with a single run. The fields of the report and the run are taken from the objects that
+     * {@link SarifConverter} creates, so that the file has the same content as one written by
+     * {@link #writeSarif(SarifSchema210, Path)}, only in a different order.
+     */
+    public static final class SarifWriter implements Closeable {
+
+        private static final String RUNS = "runs";
+
+        private static final String RESULTS = "results";
+
+        private final JsonGenerator generator;
+
+        private final Map<String, ReportingDescriptor> rules = new HashMap<>();
+
+        private String partialReason;
+
+        private SarifWriter(final JsonGenerator generator) throws IOException {
+            this.generator = generator;
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartObject();
+            writeFieldsExcept(reportWithoutResults(Collections.emptyList(), null), RUNS);
+            generator.writeArrayFieldStart(RUNS);
+            generator.writeStartObject();
+            generator.writeArrayFieldStart(RESULTS);
+        }
+
+        /**
+         * @param recommendations The recommendations of one page.
+         * @param blame           The last change of each recommendation, by recommendation id.
+         * @throws IOException If writing fails.
+         */
+        public void write(@NonNull final List<RecommendationSummary> recommendations,
+                          @NonNull final Map<String, BlameInfo> blame) throws IOException {
+            SarifConverter.createSarifRuleDescriptions(recommendations).forEach(rules::putIfAbsent);
+            for (val recommendation : recommendations) {
+                val result = SarifConverter.convertToSarif(recommendation,
+                                                           blame.get(recommendation.recommendationId()));
+                OBJECT_MAPPER.writeValue(generator, result);
+            }
+        }
+
+        /**
+         * Mark the report as partial when it is closed.
+         *
+         * @param reason Why the report is partial.
+         */
+        public void markPartial(@NonNull final String reason) {
+            this.partialReason = reason;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                generator.writeEndArray();
+                writeFieldsExcept(reportWithoutResults(rules.values(), partialReason).get(RUNS).get(0), RESULTS);
+                generator.writeEndObject();
+                generator.writeEndArray();
+                generator.writeEndObject();
+            } finally {
+                generator.close();
+            }
+        }
+
+        private static JsonNode reportWithoutResults(final Collection<ReportingDescriptor> reportRules,
+                                                     @Nullable final String reason) {
+            val report = SarifConverter.createSarifReport(reportRules, Collections.emptyList());
+            if (reason != null) {
+                SarifConverter.markPartial(report, reason);
+            }
+            return OBJECT_MAPPER.valueToTree(report);
+        }
+
+        private void writeFieldsExcept(final JsonNode node, final String excluded) throws IOException {
+            val fields = node.fields();
+            while (fields.hasNext()) {
+                val field = fields.next();
+                if (!excluded.equals(field.getKey())) {
+                    generator.writeFieldName(field.getKey());
+                    OBJECT_MAPPER.writeTree(generator, field.getValue());
+                }
+            }
+        }
+    }
+
     private JsonUtil() {
         // do not initialize utility
     }
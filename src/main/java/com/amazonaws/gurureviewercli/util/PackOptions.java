@@ -0,0 +1,28 @@
+package com.amazonaws.gurureviewercli.util;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Options that control how {@link ZipUtils} packs an archive.
+ */
+@Data
+@Builder
+public class PackOptions {
+
+    public static final PackOptions DEFAULT = PackOptions.builder().build();
+
+    /**
+     * Number of threads that compress entries. Entries are always deflated by the workers of
+     * {@link ParallelZipPacker} and written in order by a {@link ZipArchiveWriter}; one thread means one worker.
+     */
+    @Builder.Default
+    private int threads = 1;
+
+    /**
+     * Pack the same files into byte-identical archives. Entries are sorted by name, every entry gets the same
+     * timestamp and no permissions, and the compression level is fixed. The output does not depend on the number of
+     * threads.
+     */
+    private boolean reproducible;
+}
@@ -0,0 +1,52 @@
+package com.amazonaws.gurureviewercli.util;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import com.google.common.io.BaseEncoding;
+import lombok.Value;
+
+/**
+ * Size and checksums of an archive packed by {@link ZipUtils}, computed in the same pass that wrote it, so that the
+ * archive does not have to be read again to upload or cache it.
+ */
+@Value
+public class PackResult {
+
+    /**
+     * Size of the archive in bytes.
+     */
+    private final long size;
+
+    /**
+     * SHA-256 of the archive in hex.
+     */
+    private final String sha256;
+
+    /**
+     * CRC32C of the archive.
+     */
+    private final int crc32c;
+
+    /**
+     * @return The SHA-256 in base64, as S3 expects it in checksum headers.
+     */
+    public String sha256Base64() {
+        return Base64.getEncoder().encodeToString(BaseEncoding.base16().lowerCase().decode(sha256));
+    }
+
+    /**
+     * @return The CRC32C in base64 of its big-endian bytes, as S3 expects it in checksum headers.
+     */
+    public String crc32cBase64() {
+        return crc32cBase64(crc32c);
+    }
+
+    /**
+     * @param crc32c A CRC32C value.
+     * @return The value in base64 of its big-endian bytes, as S3 expects it in checksum headers.
+     */
+    public static String crc32cBase64(final int crc32c) {
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(Integer.BYTES).putInt(crc32c).array());
+    }
+}
@@ -0,0 +1,308 @@
+package com.amazonaws.gurureviewercli.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Packs files into a zip archive using several threads. Each worker deflates whole entries using its own
+ * {@link Deflater} and scatter buffer, and a single writer merges the compressed entries into the archive in the
+ * order in which they were submitted. The output is therefore independent of the number of threads and of the
+ * order in which the workers finish.
+ *
+ * Memory stays bounded no matter how large the files are: only a few entries are compressed ahead of the writer,
+ * and the compressed data of files above {@link #SPILL_THRESHOLD} is written to a temp file instead of memory. A file
+ * that cannot be read is skipped with an error, also if reading fails halfway, because nothing of an entry is
+ * written to the archive before it is compressed completely. Failures to write a temp file or the archive fail the
+ * packing, so that an incomplete archive is never uploaded.
+ */
+@Log4j2
+final class ParallelZipPacker {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // number of entries that may be compressed ahead of the writer, per thread.
+    private static final int ENTRIES_AHEAD_PER_THREAD = 2;
+
+    // files larger than this are compressed into temp files instead of memory.
+    static final long SPILL_THRESHOLD = 2 * 1024 * 1024;
+
+    // how long to wait for the workers to stop after packing failed, before their temp files are deleted.
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    // timestamp for all entries of a reproducible archive. It is the earliest time a zip file can store.
+    private static final LocalDateTime REPRODUCIBLE_TIME = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+    // spelled out instead of Deflater.DEFAULT_COMPRESSION, so reproducible archives do not depend on what the
+    // default is.
+    private static final int REPRODUCIBLE_LEVEL = 6;
+
+    private static final ThreadLocal<Scatter> SCATTER = ThreadLocal.withInitial(Scatter::new);
+
+    /**
+     * Deflate the entries on a pool with the given number of threads and write them into one archive.
+     *
+     * @param entries The entries to pack, in the order in which they will appear in the archive.
+     * @param out     Destination stream. It is not closed.
+     * @param options The number of worker threads, and if the archive has to be reproducible.
+     * @throws IOException If writing the archive fails.
+     */
+    static void pack(final List<ZipUtils.PackEntry> entries,
+                     final OutputStream out,
+                     final PackOptions options) throws IOException {
+        val threads = Math.max(1, options.getThreads());
+        val level = options.isReproducible() ? REPRODUCIBLE_LEVEL : Deflater.DEFAULT_COMPRESSION;
+        val lastModified = options.isReproducible() ? REPRODUCIBLE_TIME : LocalDateTime.now();
+        val writer = new ZipArchiveWriter(out, lastModified);
+        // temp files of entries that are compressed but not written yet.
+        val spillFiles = ConcurrentHashMap.<Path>newKeySet();
+        val executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setDaemon(true)
+                                                                                       .setNameFormat("zip-%d")
+                                                                                       .build());
+        try {
+            val maxInFlight = threads * ENTRIES_AHEAD_PER_THREAD;
+            val inFlight = new ArrayDeque<Future<DeflatedEntry>>(maxInFlight);
+            val iterator = entries.iterator();
+            while (iterator.hasNext() || !inFlight.isEmpty()) {
+                while (iterator.hasNext() && inFlight.size() < maxInFlight) {
+                    val entry = iterator.next();
+                    inFlight.add(executor.submit(() -> deflate(entry, level, spillFiles)));
+                }
+                val deflated = await(inFlight.poll());
+                if (deflated == null) {
+                    continue;
+                }
+                if (deflated.spillFile == null) {
+                    writer.writeEntry(deflated.entry.getName(), ZipEntry.DEFLATED, deflated.crc, deflated.size,
+                                      deflated.data, deflated.data.length);
+                } else {
+                    try (val in = Files.newInputStream(deflated.spillFile)) {
+                        writer.writeEntry(deflated.entry.getName(), ZipEntry.DEFLATED, deflated.crc, deflated.size,
+                                          in, deflated.compressedSize);
+                    } finally {
+                        deleteSpillFile(deflated.spillFile, spillFiles);
+                    }
+                }
+            }
+            writer.finish();
+        } finally {
+            executor.shutdownNow();
+            if (!spillFiles.isEmpty()) {
+                awaitTermination(executor);
+                for (val spillFile : spillFiles) {
+                    deleteSpillFile(spillFile, spillFiles);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The compressed entry, or null if the file cannot be read and is skipped.
+     * @throws IOException If writing a temp file fails, or if packing was aborted.
+     */
+    private static DeflatedEntry deflate(final ZipUtils.PackEntry entry,
+                                         final int level,
+                                         final Set<Path> spillFiles) throws IOException {
+        val scatter = SCATTER.get();
+        scatter.reset();
+        scatter.deflater.setLevel(level);
+        final long size;
+        final InputStream in;
+        try {
+            size = entry.size();
+            in = entry.open();
+        } catch (IOException | RuntimeException e) {
+            return skip(entry, e);
+        }
+        Path spillFile = null;
+        try (val source = new SourceInputStream(in)) {
+            if (size <= SPILL_THRESHOLD) {
+                scatter.deflate(source, scatter.compressed);
+                val data = scatter.compressed.toByteArray();
+                return new DeflatedEntry(entry, scatter.crc.getValue(), scatter.deflater.getBytesRead(), data,
+                                         null, data.length);
+            }
+            spillFile = Files.createTempFile("codeguru-zip-entry", ".deflated");
+            spillFiles.add(spillFile);
+            try (val target = Files.newOutputStream(spillFile)) {
+                scatter.deflate(source, target);
+            }
+            return new DeflatedEntry(entry, scatter.crc.getValue(), scatter.deflater.getBytesRead(), null,
+                                     spillFile, scatter.deflater.getBytesWritten());
+        } catch (UnreadableSourceException e) {
+            if (spillFile != null) {
+                deleteSpillFile(spillFile, spillFiles);
+            }
+            return skip(entry, e.getCause());
+        } catch (IOException | RuntimeException e) {
+            // the temp file cannot be written, so the archive would be incomplete.
+            if (spillFile != null) {
+                deleteSpillFile(spillFile, spillFiles);
+            }
+            throw e;
+        }
+    }
+
+    private static DeflatedEntry skip(final ZipUtils.PackEntry entry, final Throwable error) {
+        if (!(error instanceof InterruptedIOException)) {
+            log.error("Skipping file {} because of error: {}", entry.getFile(), error.getMessage());
+        }
+        return null;
+    }
+
+    private static void deleteSpillFile(final Path spillFile, final Set<Path> spillFiles) {
+        spillFiles.remove(spillFile);
+        try {
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            log.warn("Failed to delete temp file {}: {}", spillFile, e.getMessage());
+        }
+    }
+
+    private static void awaitTermination(final ExecutorService executor) {
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DeflatedEntry await(final Future<DeflatedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while packing zip file.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress zip entry.", e.getCause());
+        }
+    }
+
+    /**
+     * Per-thread state that is reused for every entry a worker compresses.
+     */
+    private static final class Scatter {
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private final byte[] output = new byte[BUFFER_SIZE];
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(BUFFER_SIZE);
+
+        void reset() {
+            deflater.reset();
+            crc.reset();
+            compressed.reset();
+        }
+
+        /**
+         * Compress the content of an entry. Stops with an {@link InterruptedIOException} if packing was aborted.
+         */
+        void deflate(final InputStream in, final OutputStream target) throws IOException {
+            int read;
+            while ((read = in.read(input)) > 0) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Interrupted while packing zip file.");
+                }
+                crc.update(input, 0, read);
+                deflater.setInput(input, 0, read);
+                while (!deflater.needsInput()) {
+                    target.write(output, 0, deflater.deflate(output));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                target.write(output, 0, deflater.deflate(output));
+            }
+        }
+    }
+
+    /**
+     * Content of an entry that tells failures to read it apart from failures to write the compressed data.
+     */
+    private static final class SourceInputStream extends FilterInputStream {
+
+        SourceInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException | RuntimeException e) {
+                throw new UnreadableSourceException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } catch (IOException | RuntimeException e) {
+                throw new UnreadableSourceException(e);
+            }
+        }
+    }
+
+    /**
+     * Reading the content of an entry failed, so the entry is skipped.
+     */
+    private static final class UnreadableSourceException extends IOException {
+
+        UnreadableSourceException(final Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * The compressed content of a single entry, either in memory or, for large entries, in a temp file.
+     */
+    private static final class DeflatedEntry {
+        private final ZipUtils.PackEntry entry;
+        private final long crc;
+        private final long size;
+        private final byte[] data;
+        private final Path spillFile;
+        private final long compressedSize;
+
+        DeflatedEntry(final ZipUtils.PackEntry entry,
+                      final long crc,
+                      final long size,
+                      final byte[] data,
+                      final Path spillFile,
+                      final long compressedSize) {
+            this.entry = entry;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+            this.spillFile = spillFile;
+            this.compressedSize = compressedSize;
+        }
+    }
+
+    private ParallelZipPacker() {
+        // do not instantiate
+    }
+}
@@ -1,8 +1,11 @@
 package com.amazonaws.gurureviewercli.util;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -10,9 +13,11 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import com.contrastsecurity.sarif.ArtifactLocation;
+import com.contrastsecurity.sarif.Invocation;
 import com.contrastsecurity.sarif.Location;
 import com.contrastsecurity.sarif.Message;
 import com.contrastsecurity.sarif.MultiformatMessageString;
+import com.contrastsecurity.sarif.Notification;
 import com.contrastsecurity.sarif.PhysicalLocation;
 import com.contrastsecurity.sarif.PropertyBag;
 import com.contrastsecurity.sarif.Region;
@@ -26,6 +31,8 @@ import com.contrastsecurity.sarif.ToolComponent;
 import lombok.val;
 import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
 
+import com.amazonaws.gurureviewercli.model.BlameInfo;
+
 /**
  * Utility class to convert CodeGuru Recommendations to SARIF
  */
@@ -45,15 +52,41 @@ public final class SarifConverter {
      */
     public static SarifSchema210 createSarifReport(final List<RecommendationSummary> recommendations)
         throws IOException {
-        val docUrl = "https://docs.aws.amazon.com/codeguru/latest/reviewer-ug/how-codeguru-reviewer-works.html";
+        return createSarifReport(recommendations, Collections.emptyMap());
+    }
 
+    /**
+     * Convert CodeGuru Reviewer recommendations into SARIF format. The last change of the lines of a recommendation
+     * is added to the properties of its result.
+     *
+     * @param recommendations CodeGuru Reviewer recommendations.
+     * @param blame           The last change of each recommendation, by recommendation id.
+     * @return Sarif report object.
+     * @throws IOException If conversion fails.
+     */
+    public static SarifSchema210 createSarifReport(final List<RecommendationSummary> recommendations,
+                                                   final Map<String, BlameInfo> blame)
+        throws IOException {
         val rulesMap = createSarifRuleDescriptions(recommendations);
+        val results = recommendations.stream().map(r -> convertToSarif(r, blame.get(r.recommendationId())))
+                                     .collect(Collectors.toList());
+        return createSarifReport(rulesMap.values(), results);
+    }
+
+    /**
+     * Create a SARIF report with a single run from rules and results that are already converted.
+     *
+     * @param rules   The rules of the tool.
+     * @param results The results of the run.
+     * @return Sarif report object.
+     */
+    public static SarifSchema210 createSarifReport(final Collection<ReportingDescriptor> rules,
+                                                   final List<Result> results) {
+        val docUrl = "https://docs.aws.amazon.com/codeguru/latest/reviewer-ug/how-codeguru-reviewer-works.html";
+
         val driver = new ToolComponent().withName("CodeGuru Reviewer Scanner")
                                         .withInformationUri(URI.create(docUrl))
-                                        .withRules(new HashSet<>(rulesMap.values()));
-
-        val results = recommendations.stream().map(SarifConverter::convertToSarif)
-                                     .collect(Collectors.toList());
+                                        .withRules(new HashSet<>(rules));
 
         val run = new Run().withTool(new Tool().withDriver(driver)).withResults(results);
 
@@ -64,7 +97,32 @@ public final class SarifConverter {
 
     }
 
-    private static Map<String, ReportingDescriptor> createSarifRuleDescriptions(
+    /**
+     * Mark the runs of a report as partial, e.g., because not all recommendations were downloaded. The reason is
+     * added as a notification of the invocation, and the run gets the property "partial".
+     *
+     * @param report The report.
+     * @param reason Why the report is partial.
+     */
+    public static void markPartial(final SarifSchema210 report, final String reason) {
+        for (val run : report.getRuns()) {
+            val notification = new Notification().withLevel(Notification.Level.WARNING)
+                                                 .withMessage(new Message().withText(reason));
+            run.setInvocations(Arrays.asList(new Invocation().withExecutionSuccessful(true)
+                                                             .withToolExecutionNotifications(
+                                                                 Arrays.asList(notification))));
+            val properties = run.getProperties() != null ? run.getProperties() : new PropertyBag();
+            properties.setAdditionalProperty("partial", true);
+            run.setProperties(properties);
+        }
+    }
+
+    /**
+     * @param recommendations CodeGuru Reviewer recommendations.
+     * @return The rule of each recommendation, by rule id. The severity of the first recommendation of a rule is its
+     *     default level.
+     */
+    public static Map<String, ReportingDescriptor> createSarifRuleDescriptions(
         final List<RecommendationSummary> recommendations) {
         val rulesMap = new HashMap<String, ReportingDescriptor>();
         for (val recommendation : recommendations) {
@@ -89,12 +147,27 @@ public final class SarifConverter {
         return rulesMap;
     }
 
-    private static Result convertToSarif(final RecommendationSummary recommendation) {
+    /**
+     * @param recommendation A CodeGuru Reviewer recommendation.
+     * @param blameInfo      The last change of the lines of the recommendation, if known.
+     * @return The SARIF result of the recommendation.
+     */
+    public static Result convertToSarif(final RecommendationSummary recommendation,
+                                        @Nullable final BlameInfo blameInfo) {
         List<Location> locations = Arrays.asList(getSarifLocation(recommendation));
-        return new Result().withRuleId(recommendation.ruleMetadata().ruleId())
-                           .withLevel(Result.Level.fromValue(getSarifSeverity(recommendation)))
-                           .withMessage(new Message().withMarkdown(recommendation.description()))
-                           .withLocations(locations);
+        val result = new Result().withRuleId(recommendation.ruleMetadata().ruleId())
+                                 .withLevel(Result.Level.fromValue(getSarifSeverity(recommendation)))
+                                 .withMessage(new Message().withMarkdown(recommendation.description()))
+                                 .withLocations(locations);
+        if (blameInfo != null) {
+            val properties = new PropertyBag();
+            properties.setAdditionalProperty("commitId", blameInfo.getCommitId());
+            properties.setAdditionalProperty("authorName", blameInfo.getAuthorName());
+            properties.setAdditionalProperty("authorEmail", blameInfo.getAuthorEmail());
+            properties.setAdditionalProperty("authorTime", blameInfo.getAuthorTime());
+            result.setProperties(properties);
+        }
+        return result;
     }
 
     private static Location getSarifLocation(final RecommendationSummary recommendation) {
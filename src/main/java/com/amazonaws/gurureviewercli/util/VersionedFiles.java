@@ -0,0 +1,135 @@
+package com.amazonaws.gurureviewercli.util;
+
+import javax.annotation.Nullable;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Iterators;
+import lombok.extern.log4j.Log4j2;
+import lombok.val;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * The files under version control in a repository. Files are looked up by their path relative to the work tree, so
+ * checking if a file is versioned does not touch the file system. The paths are kept sorted, so that a directory
+ * walk can skip directories without versioned files.
+ *
+ * If the set is read from the git index, the index is only read when the set is first used.
+ */
+@Log4j2
+public final class VersionedFiles extends AbstractSet<Path> {
+
+    private final Path workTree;
+    private final Supplier<String[]> paths;
+
+    private VersionedFiles(final Path workTree, final Supplier<String[]> paths) {
+        this.workTree = workTree.toAbsolutePath().normalize();
+        this.paths = Suppliers.memoize(paths::get);
+    }
+
+    /**
+     * @param workTree The root of the repository.
+     * @param gitDir   The git directory of the repository.
+     * @return The files in the git index. Submodules are not included. If the index cannot be read, the set is empty.
+     */
+    public static VersionedFiles readIndex(final Path workTree, final Path gitDir) {
+        val indexFile = gitDir.resolve("index");
+        return new VersionedFiles(workTree, () -> {
+            if (!indexFile.toFile().isFile()) {
+                return new String[0];
+            }
+            try {
+                val dirCache = DirCache.read(indexFile.toFile(), FS.DETECTED);
+                val paths = new TreeSet<String>();
+                for (int i = 0; i < dirCache.getEntryCount(); i++) {
+                    val entry = dirCache.getEntry(i);
+                    if (entry.getFileMode() != FileMode.GITLINK) {
+                        paths.add(entry.getPathString());
+                    }
+                }
+                return paths.toArray(new String[0]);
+            } catch (Exception e) {
+                log.warn("Cannot read git index {}: {}", indexFile, e.getMessage());
+                return new String[0];
+            }
+        });
+    }
+
+    /**
+     * @param workTree The root of the repository.
+     * @param files    Files in the work tree. Files outside of it are ignored.
+     * @return The given files. If they already are {@link VersionedFiles} of the same work tree, they are returned.
+     */
+    public static VersionedFiles of(final Path workTree, final Collection<Path> files) {
+        if (files instanceof VersionedFiles
+            && ((VersionedFiles) files).workTree.equals(workTree.toAbsolutePath().normalize())) {
+            return (VersionedFiles) files;
+        }
+        val root = workTree.toAbsolutePath().normalize();
+        val paths = new TreeSet<String>();
+        for (val file : files) {
+            val path = relativePath(root, file);
+            if (path != null && !path.isEmpty()) {
+                paths.add(path);
+            }
+        }
+        val sorted = paths.toArray(new String[0]);
+        return new VersionedFiles(workTree, () -> sorted);
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof Path)) {
+            return false;
+        }
+        val path = relativePath(workTree, (Path) o);
+        return path != null && Arrays.binarySearch(paths.get(), path) >= 0;
+    }
+
+    /**
+     * @param dir A directory.
+     * @return True if there are versioned files anywhere below the directory.
+     */
+    public boolean containsFilesIn(final Path dir) {
+        val path = relativePath(workTree, dir);
+        if (path == null) {
+            return false;
+        }
+        if (path.isEmpty()) {
+            return !isEmpty();
+        }
+        // all paths below the directory follow its prefix in the sorted array.
+        val prefix = path + "/";
+        val sorted = paths.get();
+        val index = Arrays.binarySearch(sorted, prefix);
+        val insertionPoint = index >= 0 ? index : -index - 1;
+        return insertionPoint < sorted.length && sorted[insertionPoint].startsWith(prefix);
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        return Iterators.transform(Arrays.asList(paths.get()).iterator(), workTree::resolve);
+    }
+
+    @Override
+    public int size() {
+        return paths.get().length;
+    }
+
+    @Nullable
+    private static String relativePath(final Path workTree, final Path file) {
+        val absolute = file.toAbsolutePath().normalize();
+        if (!absolute.startsWith(workTree)) {
+            return null;
+        }
+        return workTree.relativize(absolute).toString().replace('\\', '/');
+    }
+}
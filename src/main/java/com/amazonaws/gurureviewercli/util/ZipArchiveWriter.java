@@ -0,0 +1,286 @@
+package com.amazonaws.gurureviewercli.util;
+
+import lombok.val;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/**
+ * Minimal writer for the zip file format that accepts entries which are already compressed. This is what allows
+ * {@link ParallelZipPacker} to deflate entries on several threads and merge them into one archive afterwards, which
+ * {@link java.util.zip.ZipOutputStream} cannot do. The compressed data of large entries can be copied from a stream
+ * with constant memory. Zip64 records are written when the archive needs them.
+ */
+final class ZipArchiveWriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIR_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIR_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private static final int VERSION_DEFAULT = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final int dosTime;
+    private final List<CentralRecord> centralDirectory = new ArrayList<>();
+    private long offset;
+
+    // only allocated if entries are copied from streams.
+    private byte[] buffer;
+
+    /**
+     * @param out           The stream the archive is written to. It is not closed by this writer.
+     * @param lastModified  The modification time that is recorded for every entry.
+     */
+    ZipArchiveWriter(final OutputStream out, final LocalDateTime lastModified) {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        this.dosTime = toDosTime(lastModified);
+    }
+
+    /**
+     * Write an entry whose data is already compressed with the given method.
+     *
+     * @param name             Name of the entry.
+     * @param method           {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}.
+     * @param crc              CRC-32 of the uncompressed data.
+     * @param size             Size of the uncompressed data.
+     * @param compressedData   Buffer that holds the compressed data.
+     * @param compressedLength Number of valid bytes in compressedData.
+     * @throws IOException If writing to the underlying stream fails.
+     */
+    void writeEntry(final String name,
+                    final int method,
+                    final long crc,
+                    final long size,
+                    final byte[] compressedData,
+                    final int compressedLength) throws IOException {
+        val nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        val record = new CentralRecord(nameBytes, FLAG_UTF8, method, crc, size, compressedLength, offset);
+        writeLocalHeader(record, record.needsZip64Sizes());
+        writeBytes(compressedData, compressedLength);
+        centralDirectory.add(record);
+    }
+
+    /**
+     * Write an entry whose data is already compressed, copying the data from a stream. Only a fixed-size buffer is
+     * used, no matter how large the entry is.
+     *
+     * @param name             Name of the entry.
+     * @param method           {@link ZipEntry#DEFLATED} or {@link ZipEntry#STORED}.
+     * @param crc              CRC-32 of the uncompressed data.
+     * @param size             Size of the uncompressed data.
+     * @param compressedData   The compressed data. It is read until the end but not closed.
+     * @param compressedLength Number of bytes in compressedData.
+     * @throws IOException If reading the data or writing to the underlying stream fails, or if the stream does not
+     *     have compressedLength bytes.
+     */
+    void writeEntry(final String name,
+                    final int method,
+                    final long crc,
+                    final long size,
+                    final InputStream compressedData,
+                    final long compressedLength) throws IOException {
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        val nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        val record = new CentralRecord(nameBytes, FLAG_UTF8, method, crc, size, compressedLength, offset);
+        writeLocalHeader(record, record.needsZip64Sizes());
+        long copied = 0;
+        int read;
+        while ((read = compressedData.read(buffer)) > 0) {
+            writeBytes(buffer, read);
+            copied += read;
+        }
+        if (copied != compressedLength) {
+            throw new IOException(String.format("Expected %d bytes of compressed data for %s, but got %d",
+                                                compressedLength, name, copied));
+        }
+        centralDirectory.add(record);
+    }
+
+    private void writeLocalHeader(final CentralRecord record, final boolean zip64) throws IOException {
+        writeInt(LOCAL_HEADER_SIGNATURE);
+        writeShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+        writeShort(record.flags);
+        writeShort(record.method);
+        writeInt(dosTime);
+        writeInt(record.crc);
+        writeInt(zip64 ? ZIP64_MAGIC : record.compressedSize);
+        writeInt(zip64 ? ZIP64_MAGIC : record.size);
+        writeShort(record.name.length);
+        writeShort(zip64 ? 20 : 0);
+        writeBytes(record.name, record.name.length);
+        if (zip64) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(16);
+            writeLong(record.size);
+            writeLong(record.compressedSize);
+        }
+    }
+
+    /**
+     * Write the central directory and flush the underlying stream.
+     *
+     * @throws IOException If writing to the underlying stream fails.
+     */
+    void finish() throws IOException {
+        val centralDirectoryOffset = offset;
+        for (val record : centralDirectory) {
+            writeCentralRecord(record);
+        }
+        val centralDirectorySize = offset - centralDirectoryOffset;
+        val entries = centralDirectory.size();
+        val zip64 = entries >= ZIP64_MAGIC_COUNT
+                    || centralDirectoryOffset >= ZIP64_MAGIC
+                    || centralDirectorySize >= ZIP64_MAGIC;
+        if (zip64) {
+            val zip64EndOffset = offset;
+            writeInt(ZIP64_END_OF_CENTRAL_DIR_SIGNATURE);
+            writeLong(44);
+            writeShort(VERSION_ZIP64);
+            writeShort(VERSION_ZIP64);
+            writeInt(0);
+            writeInt(0);
+            writeLong(entries);
+            writeLong(entries);
+            writeLong(centralDirectorySize);
+            writeLong(centralDirectoryOffset);
+
+            writeInt(ZIP64_LOCATOR_SIGNATURE);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+        writeInt(END_OF_CENTRAL_DIR_SIGNATURE);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(entries, ZIP64_MAGIC_COUNT));
+        writeShort(Math.min(entries, ZIP64_MAGIC_COUNT));
+        writeInt(Math.min(centralDirectorySize, ZIP64_MAGIC));
+        writeInt(Math.min(centralDirectoryOffset, ZIP64_MAGIC));
+        writeShort(0);
+        out.flush();
+    }
+
+    private void writeCentralRecord(final CentralRecord record) throws IOException {
+        val zip64Sizes = record.needsZip64Sizes();
+        val zip64Offset = record.localHeaderOffset >= ZIP64_MAGIC;
+        val extraLength = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+        val version = extraLength > 0 ? VERSION_ZIP64 : VERSION_DEFAULT;
+
+        writeInt(CENTRAL_HEADER_SIGNATURE);
+        writeShort(version);
+        writeShort(version);
+        writeShort(record.flags);
+        writeShort(record.method);
+        writeInt(dosTime);
+        writeInt(record.crc);
+        writeInt(zip64Sizes ? ZIP64_MAGIC : record.compressedSize);
+        writeInt(zip64Sizes ? ZIP64_MAGIC : record.size);
+        writeShort(record.name.length);
+        writeShort(extraLength > 0 ? extraLength + 4 : 0);
+        writeShort(0); // comment length
+        writeShort(0); // disk number
+        writeShort(0); // internal attributes
+        writeInt(0); // external attributes
+        writeInt(zip64Offset ? ZIP64_MAGIC : record.localHeaderOffset);
+        writeBytes(record.name, record.name.length);
+        if (extraLength > 0) {
+            writeShort(ZIP64_EXTRA_ID);
+            writeShort(extraLength);
+            if (zip64Sizes) {
+                writeLong(record.size);
+                writeLong(record.compressedSize);
+            }
+            if (zip64Offset) {
+                writeLong(record.localHeaderOffset);
+            }
+        }
+    }
+
+    private void writeShort(final int v) throws IOException {
+        out.write(v & 0xff);
+        out.write((v >>> 8) & 0xff);
+        offset += 2;
+    }
+
+    private void writeInt(final long v) throws IOException {
+        out.write((int) (v & 0xff));
+        out.write((int) ((v >>> 8) & 0xff));
+        out.write((int) ((v >>> 16) & 0xff));
+        out.write((int) ((v >>> 24) & 0xff));
+        offset += 4;
+    }
+
+    private void writeLong(final long v) throws IOException {
+        writeInt(v & ZIP64_MAGIC);
+        writeInt(v >>> 32);
+    }
+
+    private void writeBytes(final byte[] b, final int length) throws IOException {
+        out.write(b, 0, length);
+        offset += length;
+    }
+
+    private static int toDosTime(final LocalDateTime time) {
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25
+               | time.getMonthValue() << 21
+               | time.getDayOfMonth() << 16
+               | time.getHour() << 11
+               | time.getMinute() << 5
+               | time.getSecond() >> 1;
+    }
+
+    /**
+     * Information about an entry that is needed again when the central directory is written.
+     */
+    private static final class CentralRecord {
+        private final byte[] name;
+        private final int flags;
+        private final int method;
+        private final long crc;
+        private final long size;
+        private final long compressedSize;
+        private final long localHeaderOffset;
+
+        CentralRecord(final byte[] name,
+                      final int flags,
+                      final int method,
+                      final long crc,
+                      final long size,
+                      final long compressedSize,
+                      final long localHeaderOffset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        boolean needsZip64Sizes() {
+            return size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+        }
+    }
+}
@@ -1,19 +1,24 @@
 package com.amazonaws.gurureviewercli.util;
 
+import com.google.common.io.ByteStreams;
+import lombok.AllArgsConstructor;
+import lombok.Value;
 import lombok.extern.log4j.Log4j2;
 import lombok.val;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * Util class for ZipFile.
@@ -36,27 +41,51 @@ public final class ZipUtils {
                             final List<Path> excludeDirs,
                             final String zipFilePath) throws IOException {
         Path p = Files.createFile(Paths.get(zipFilePath).normalize().toAbsolutePath());
-        try (ZipOutputStream zs = new ZipOutputStream(Files.newOutputStream(p))) {
-            for (val sourceDirPath : sourceDirPaths) {
-                Path pp = sourceDirPath.toRealPath();
-                try (val walk = Files.walk(pp)) {
-                    walk.filter(path -> !Files.isDirectory(path))
-                            .filter(path -> isIncluded(path, excludeDirs))
-                            .forEach(path -> {
-                                val relativePath = pp.relativize(path.normalize().toAbsolutePath());
-                                // in case we run on Windows
-                                ZipEntry zipEntry = new ZipEntry(getUnixStylePathName(relativePath));
-                                try {
-                                    zs.putNextEntry(zipEntry);
-                                    zs.write(Files.readAllBytes(path));
-                                    zs.closeEntry();
-                                } catch (Exception e) {
-                                    log.error("Skipping file {} because of error: {}", path, e.getMessage());
-                                }
-                            });
-                }
+        try (val out = Files.newOutputStream(p)) {
+            pack(sourceDirPaths, excludeDirs, out, PackOptions.DEFAULT);
+        }
+    }
+
+    /**
+     * Zip source directories into a stream. Each entry is relative to the source directory it was found in.
+     * The stream is not closed so that the caller can decide if the upload should be completed or aborted.
+     *
+     * @param sourceDirPaths source dir paths
+     * @param excludeDirs    directories that should not be added to the zip
+     * @param out            destination stream
+     * @param options        options for packing
+     * @return The size and checksums of the zip, computed while it was written.
+     * @throws IOException io exception
+     */
+    public static PackResult pack(final List<Path> sourceDirPaths,
+                                  final List<Path> excludeDirs,
+                                  final OutputStream out,
+                                  final PackOptions options) throws IOException {
+        return pack(listEntries(sourceDirPaths, excludeDirs), out, options);
+    }
+
+    /**
+     * List the entries for a zip of the source directories. Each entry is relative to the source directory it was
+     * found in.
+     *
+     * @param sourceDirPaths source dir paths
+     * @param excludeDirs    directories that should not be added to the zip
+     * @return The entries in the order in which they are packed.
+     * @throws IOException io exception
+     */
+    public static List<PackEntry> listEntries(final List<Path> sourceDirPaths,
+                                              final List<Path> excludeDirs) throws IOException {
+        val entries = new ArrayList<PackEntry>();
+        val collector = new FileCollector(excludeDirs);
+        for (val pp : FileCollector.dedupeRoots(sourceDirPaths)) {
+            for (val path : collector.collect(pp)) {
+                val relativePath = pp.relativize(path.normalize().toAbsolutePath());
+                // in case we run on Windows
+                entries.add(new PackEntry(getUnixStylePathName(relativePath), path));
             }
         }
+        logExcluded(collector.getPrunedDirectories(), "directories");
+        return entries;
     }
 
     /**
@@ -77,12 +106,64 @@ public final class ZipUtils {
                             final List<Path> excludeDirs,
                             final Path relativeRoot,
                             final String zipFilePath) throws IOException {
-        val files = getFilesInDirectories(sourceDirPaths);
-        val codeGuruConfigFile = relativeRoot.resolve("aws-codeguru-reviewer.yml");
-        if (codeGuruConfigFile != null && codeGuruConfigFile.toFile().isFile()) {
-            files.add(codeGuruConfigFile);
+        Path zipFile = Files.createFile(Paths.get(zipFilePath));
+        try (val out = Files.newOutputStream(zipFile)) {
+            pack(sourceDirPaths, excludeDirs, relativeRoot, out, PackOptions.DEFAULT);
         }
-        packFiles(files, excludeDirs, relativeRoot, Paths.get(zipFilePath));
+    }
+
+    /**
+     * Zip source directories into a stream. All entries are relative to relativeRoot.
+     * The stream is not closed so that the caller can decide if the upload should be completed or aborted.
+     *
+     * @param sourceDirPaths source dir paths
+     * @param excludeDirs    directories that should not be added to the zip
+     * @param relativeRoot   The a shared parent of the sourceDirPaths that should be used for all entries.
+     * @param out            destination stream
+     * @param options        options for packing
+     * @return The size and checksums of the zip, computed while it was written.
+     * @throws IOException io exception
+     */
+    public static PackResult pack(final List<Path> sourceDirPaths,
+                                  final List<Path> excludeDirs,
+                                  final Path relativeRoot,
+                                  final OutputStream out,
+                                  final PackOptions options) throws IOException {
+        return pack(listEntries(sourceDirPaths, excludeDirs, relativeRoot), out, options);
+    }
+
+    /**
+     * List the entries for a zip of the source directories. All entries are relative to relativeRoot.
+     *
+     * @param sourceDirPaths source dir paths
+     * @param excludeDirs    directories that should not be added to the zip
+     * @param relativeRoot   The a shared parent of the sourceDirPaths that should be used for all entries.
+     * @return The entries in the order in which they are packed.
+     * @throws IOException io exception
+     */
+    public static List<PackEntry> listEntries(final List<Path> sourceDirPaths,
+                                              final List<Path> excludeDirs,
+                                              final Path relativeRoot) throws IOException {
+        return listEntries(sourceDirPaths, excludeDirs, relativeRoot, null);
+    }
+
+    /**
+     * List the entries for a zip of the source directories, without the files that git ignores. Ignored directories
+     * are pruned from the walk. A source directory that is ignored itself is still packed, since it was asked for.
+     *
+     * @param sourceDirPaths source dir paths
+     * @param excludeDirs    directories that should not be added to the zip
+     * @param relativeRoot   The a shared parent of the sourceDirPaths that should be used for all entries.
+     * @param ignoreRules    The ignore rules of the repository, or null to pack ignored files too.
+     * @return The entries in the order in which they are packed.
+     * @throws IOException io exception
+     */
+    public static List<PackEntry> listEntries(final List<Path> sourceDirPaths,
+                                              final List<Path> excludeDirs,
+                                              final Path relativeRoot,
+                                              @Nullable final GitIgnoreRules ignoreRules) throws IOException {
+        val files = collectFiles(sourceDirPaths, excludeDirs, relativeRoot, ignoreRules);
+        return listFileEntries(files, Collections.emptyList(), relativeRoot);
     }
 
     /**
@@ -97,32 +178,106 @@ public final class ZipUtils {
                                  final List<Path> excludeDirs,
                                  final Path relativeRoot,
                                  final Path zipFilePath) throws IOException {
+        Path zipFile = Files.createFile(zipFilePath);
+        try (val out = Files.newOutputStream(zipFile)) {
+            packFiles(files, excludeDirs, relativeRoot, out, PackOptions.DEFAULT);
+        }
+    }
+
+    /**
+     * Zip files into a stream. All entries are relative to relativeRoot.
+     * The stream is not closed so that the caller can decide if the upload should be completed or aborted.
+     *
+     * @param files        source file paths
+     * @param excludeDirs  directories that should not be added to the zip
+     * @param relativeRoot The shared parent of the sourceDirPaths that should be used for all entries.
+     * @param out          destination stream
+     * @param options      options for packing
+     * @return The size and checksums of the zip, computed while it was written.
+     * @throws IOException io exception
+     */
+    public static PackResult packFiles(final Collection<Path> files,
+                                       final List<Path> excludeDirs,
+                                       final Path relativeRoot,
+                                       final OutputStream out,
+                                       final PackOptions options) throws IOException {
+        return pack(listFileEntries(files, excludeDirs, relativeRoot), out, options);
+    }
+
+    /**
+     * List the entries for a zip of the given files. All entries are relative to relativeRoot.
+     *
+     * @param files        source file paths
+     * @param excludeDirs  directories that should not be added to the zip
+     * @param relativeRoot The shared parent of the sourceDirPaths that should be used for all entries.
+     * @return The entries in the order in which they are packed.
+     * @throws IOException io exception
+     */
+    public static List<PackEntry> listFileEntries(final Collection<Path> files,
+                                                  final List<Path> excludeDirs,
+                                                  final Path relativeRoot) throws IOException {
         val normalizedRoot = relativeRoot.toRealPath();
+        val collector = new FileCollector(excludeDirs);
         val normalizedFiles = files.stream()
                 .map(Path::toAbsolutePath)
                 .map(Path::normalize)
-                .filter(p -> isIncluded(p, excludeDirs))
                 .collect(Collectors.toList());
+        val totalFiles = normalizedFiles.size();
+        normalizedFiles.removeIf(collector::isExcluded);
+        logExcluded(totalFiles - normalizedFiles.size(), "files");
         normalizedFiles.forEach(file -> {
             if (!file.startsWith(normalizedRoot)) {
                 val msg = String.format("%s is not a parent directory of %s", normalizedRoot, file);
                 throw new RuntimeException(msg);
             }
         });
-        Path zipFile = Files.createFile(zipFilePath);
-        try (ZipOutputStream zs = new ZipOutputStream(Files.newOutputStream(zipFile))) {
-            for (val file : normalizedFiles) {
-                val relPath = normalizedRoot.relativize(file);
-                // replace Windows file separators
-                ZipEntry zipEntry = new ZipEntry(getUnixStylePathName(relPath));
-                try {
-                    zs.putNextEntry(zipEntry);
-                    zs.write(Files.readAllBytes(file));
-                    zs.closeEntry();
-                } catch (Exception e) {
-                    log.error("Skipping file {} because of error: {}", file, e.getMessage());
-                }
-            }
+        val entries = new ArrayList<PackEntry>(normalizedFiles.size());
+        for (val file : normalizedFiles) {
+            val relPath = normalizedRoot.relativize(file);
+            // replace Windows file separators
+            entries.add(new PackEntry(getUnixStylePathName(relPath), file));
+        }
+        return entries;
+    }
+
+    /**
+     * Zip the given entries into a stream.
+     * The stream is not closed so that the caller can decide if the upload should be completed or aborted.
+     *
+     * @param entries The entries to pack, in the order in which they appear in the zip.
+     * @param out     destination stream
+     * @param options options for packing
+     * @return The size and checksums of the zip, computed while it was written.
+     * @throws IOException io exception
+     */
+    public static PackResult pack(final List<PackEntry> entries,
+                                  final OutputStream out,
+                                  final PackOptions options) throws IOException {
+        val checksumOut = new ChecksumOutputStream(out);
+        if (options.isReproducible()) {
+            // the walk order depends on the file system, so sort the entries.
+            val sorted = new ArrayList<PackEntry>(entries);
+            sorted.sort(Comparator.comparing(PackEntry::getName));
+            ParallelZipPacker.pack(sorted, checksumOut, options);
+        } else {
+            // also with a single thread, so that reading a file overlaps with writing the previous one, and a file
+            // that fails halfway is skipped like any other file that cannot be read.
+            ParallelZipPacker.pack(entries, checksumOut, options);
+        }
+        return checksumOut.result();
+    }
+
+    /**
+     * Compute the size and checksums of an existing zip, for zips that were not packed in this run.
+     *
+     * @param zipFile The zip.
+     * @return The same values that {@link #pack(List, OutputStream, PackOptions)} returned when it wrote the zip.
+     * @throws IOException If the zip cannot be read.
+     */
+    public static PackResult checksum(final Path zipFile) throws IOException {
+        try (val out = new ChecksumOutputStream(ByteStreams.nullOutputStream())) {
+            Files.copy(zipFile, out);
+            return out.result();
         }
     }
 
@@ -135,9 +290,33 @@ public final class ZipUtils {
      */
     public static List<Path> getFilesInDirectories(Collection<Path> directories) throws IOException {
         val files = new ArrayList<Path>();
-        for (val directory : directories) {
-            Path pp = directory.toRealPath();
-            files.addAll(getFilesInDirectory(pp));
+        val collector = new FileCollector(Collections.emptyList());
+        for (val directory : FileCollector.dedupeRoots(directories)) {
+            if (directory.toFile().isDirectory()) {
+                files.addAll(collector.collect(directory));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Get the versioned files under the directories recursively. Directories without versioned files are not
+     * walked, and files are checked against the versioned files by their path, without touching the file system.
+     *
+     * @param directories    Root directories.
+     * @param versionedFiles The files under version control.
+     * @return The versioned files that exist under the root directories.
+     * @throws IOException If reading the file system fails.
+     */
+    public static List<Path> getVersionedFilesInDirectories(final Collection<Path> directories,
+                                                            final VersionedFiles versionedFiles) throws IOException {
+        val files = new ArrayList<Path>();
+        val collector = new FileCollector(Collections.emptyList(), versionedFiles::containsFilesIn,
+                                          versionedFiles::contains);
+        for (val directory : FileCollector.dedupeRoots(directories)) {
+            if (directory.toFile().isDirectory()) {
+                files.addAll(collector.collect(directory));
+            }
         }
         return files;
     }
@@ -153,23 +332,115 @@ public final class ZipUtils {
         if (directory == null || !directory.toFile().isDirectory()) {
             return Collections.emptyList();
         }
-        try (val walk = Files.walk(directory.toRealPath())) {
-            return walk.filter(path -> !Files.isDirectory(path)).collect(Collectors.toList());
+        return new FileCollector(Collections.emptyList()).collect(directory.toRealPath());
+    }
+
+    private static List<Path> collectFiles(final List<Path> sourceDirPaths,
+                                           final List<Path> excludeDirs,
+                                           final Path relativeRoot,
+                                           @Nullable final GitIgnoreRules ignoreRules) throws IOException {
+        val files = new ArrayList<Path>();
+        val roots = FileCollector.dedupeRoots(sourceDirPaths);
+        val ignoredRoots = new ArrayList<Path>();
+        final FileCollector collector;
+        if (ignoreRules == null) {
+            collector = new FileCollector(excludeDirs);
+        } else {
+            for (val sourceDir : roots) {
+                if (ignoreRules.isIgnored(sourceDir, true)) {
+                    ignoredRoots.add(sourceDir);
+                }
+            }
+            collector = new FileCollector(excludeDirs,
+                                          dir -> isInAny(dir, ignoredRoots) || !ignoreRules.isIgnored(dir, true),
+                                          file -> isInAny(file, ignoredRoots) || !ignoreRules.isIgnored(file, false));
+        }
+        for (val sourceDir : roots) {
+            if (sourceDir.toFile().isDirectory()) {
+                files.addAll(collector.collect(sourceDir));
+            }
+        }
+        logExcluded(collector.getPrunedDirectories(), "directories");
+        // the source directories that are ignored themselves are packed anyway.
+        val ignoredCount = ignoreRules != null ? ignoreRules.getIgnoredCount() - ignoredRoots.size() : 0;
+        if (ignoredCount > 0) {
+            log.info("Skipped {} files and directories that are ignored by git.", ignoredCount);
+        }
+        val codeGuruConfigFile = relativeRoot.resolve("aws-codeguru-reviewer.yml");
+        if (codeGuruConfigFile != null && codeGuruConfigFile.toFile().isFile()) {
+            files.add(codeGuruConfigFile);
+        }
+        return files;
+    }
+
+    private static boolean isInAny(final Path path, final List<Path> roots) {
+        for (val root : roots) {
+            if (path.startsWith(root)) {
+                return true;
+            }
         }
+        return false;
     }
 
     private static String getUnixStylePathName(final Path path) {
         return path.normalize().toString().replace('\\', '/');
     }
 
-    private static boolean isIncluded(final Path p, final Collection<Path> excludes) {
-        if (excludes != null) {
-            if (excludes.stream().anyMatch(ex -> p.startsWith(ex.toAbsolutePath().normalize()))) {
-                log.warn("File excluded from source zip because it is part of the build zip already: {}", p);
-                return false;
-            }
+    private static void logExcluded(final int count, final String what) {
+        if (count > 0) {
+            log.info("Excluded {} {} from source zip because they are part of the build zip already.", count, what);
+        }
+    }
+
+    /**
+     * A file and the name under which it is stored in the archive. The content is read from the file, unless the
+     * entry has a source, e.g. a blob in the git object database.
+     */
+    @Value
+    @AllArgsConstructor
+    public static class PackEntry {
+        private final String name;
+        private final Path file;
+        private final @Nullable EntrySource source;
+
+        public PackEntry(final String name, final Path file) {
+            this(name, file, null);
+        }
+
+        /**
+         * @return A stream of the content of the entry. The caller has to close it.
+         * @throws IOException If the content cannot be read.
+         */
+        public InputStream open() throws IOException {
+            return source != null ? source.open() : Files.newInputStream(file);
+        }
+
+        /**
+         * @return The size of the uncompressed content of the entry.
+         * @throws IOException If the content cannot be read.
+         */
+        public long size() throws IOException {
+            return source != null ? source.size() : Files.size(file);
+        }
+    }
+
+    /**
+     * Content of an entry that is not read from its file.
+     */
+    public interface EntrySource {
+
+        InputStream open() throws IOException;
+
+        long size() throws IOException;
+
+        /**
+         * @return An id that only depends on the content, e.g. "git:" and the blob id, so that the content does not
+         *     have to be read to hash it. Null if there is none.
+         */
+        @Nullable
+        default String contentId() {
+            return null;
         }
-        return true;
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.amazonaws.gurureviewercli.adapter;
 
 import com.amazonaws.gurureviewercli.model.Configuration;
+import com.amazonaws.gurureviewercli.util.ArtifactCache;
 import lombok.val;
 import org.beryx.textio.TextIO;
 import org.beryx.textio.mock.MockTextTerminal;
@@ -8,25 +9,40 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.stubbing.Answer;
+import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipFile;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class ArtifactAdapterTest {
@@ -199,6 +215,128 @@ class ArtifactAdapterTest {
                         bucketName);
         Assertions.assertNotNull(metaData.getBuildKey());
         Assertions.assertNotNull(metaData.getSourceKey());
+        Assertions.assertNotNull(metaData.getBuildSha256());
+        Assertions.assertNotNull(metaData.getSourceSha256());
+    }
+
+    @Test
+    public void test_zipAndUpload_reusesCachedArtifact() throws Exception {
+        val repoDir = Paths.get("./test-data/fake-repo");
+        val bucketName = "some-bucket";
+        val config = Configuration.builder()
+                .s3Client(s3client)
+                .interactiveMode(false)
+                .artifactCache(new ArtifactCache(Files.createTempDirectory("test_artifactCache"), 1024 * 1024))
+                .build();
+
+        val first = ArtifactAdapter.zipAndUpload(config, Files.createTempDirectory("test_reusesCachedArtifact"),
+                                                 repoDir, Arrays.asList(repoDir), Collections.emptyList(),
+                                                 bucketName);
+        // the second run finds the object from the first run in S3 and does not upload it again.
+        when(s3client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().build());
+        val second = ArtifactAdapter.zipAndUpload(config, Files.createTempDirectory("test_reusesCachedArtifact"),
+                                                  repoDir, Arrays.asList(repoDir), Collections.emptyList(),
+                                                  bucketName);
+        Assertions.assertEquals(first.getSourceKey(), second.getSourceKey());
+        verify(s3client, times(1)).putObject(any(PutObjectRequest.class), any(Path.class));
+    }
+
+    @Test
+    public void test_zipAndUpload_failedBuildUploadDeletesSource() throws Exception {
+        val tempDir = Files.createTempDirectory("test_zipAndUpload_failedBuildUpload");
+        val bucketName = "some-bucket";
+        val repoDir = Paths.get("./test-data/fake-repo");
+        val buildArtifacts = repoDir.resolve("build-dir/lib");
+        val config = Configuration.builder()
+                .s3Client(s3client)
+                .interactiveMode(false)
+                .build();
+
+        Answer<Object> answer = invocationOnMock -> {
+            PutObjectRequest request = invocationOnMock.getArgument(0);
+            if (request.key().startsWith("analysis-bin-")) {
+                throw S3Exception.builder().statusCode(403).message("Access Denied").build();
+            }
+            return null;
+        };
+        doAnswer(answer).when(s3client).putObject(any(PutObjectRequest.class), any(Path.class));
+
+        Assertions.assertThrows(S3Exception.class, () ->
+                ArtifactAdapter.zipAndUpload(config, tempDir, repoDir, Arrays.asList(repoDir),
+                                             Arrays.asList(buildArtifacts), bucketName));
+        // the source artifact was uploaded by the other pipeline and has to be deleted again.
+        val captor = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3client).deleteObject(captor.capture());
+        Assertions.assertTrue(captor.getValue().key().startsWith("analysis-src-"));
+    }
+
+    @Test
+    public void test_zipAndUpload_contentAddressedKeySkipsExistingObject() throws Exception {
+        val repoDir = Paths.get("./test-data/fake-repo");
+        val bucketName = "some-bucket";
+        val config = Configuration.builder()
+                .s3Client(s3client)
+                .interactiveMode(false)
+                .contentAddressedKeys(true)
+                .build();
+        stubListObjects();
+        when(s3client.headObject(any(HeadObjectRequest.class)))
+            .thenReturn(HeadObjectResponse.builder().metadata(Collections.singletonMap("sha256", "abc")).build());
+
+        val metaData = ArtifactAdapter.zipAndUpload(config, Files.createTempDirectory("test_contentAddressedKey"),
+                                                    repoDir, Arrays.asList(repoDir), Collections.emptyList(),
+                                                    bucketName);
+        Assertions.assertTrue(metaData.getSourceKey().matches("analysis-src-[0-9a-f]{64}\\.zip"));
+        Assertions.assertEquals("abc", metaData.getSourceSha256());
+        Assertions.assertNotNull(metaData.getArtifactReferenceId());
+        // only the reference marker is written, the zip is not uploaded again.
+        val captor = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3client).putObject(captor.capture(), any(RequestBody.class));
+        Assertions.assertEquals(S3ObjectReferences.PREFIX + metaData.getSourceKey() + "/"
+                                + metaData.getArtifactReferenceId(), captor.getValue().key());
+        verify(s3client, never()).putObject(any(PutObjectRequest.class), any(Path.class));
+    }
+
+    @Test
+    public void test_zipAndUpload_contentAddressedKeyReplacesObjectWithoutChecksum() throws Exception {
+        val repoDir = Paths.get("./test-data/fake-repo");
+        val bucketName = "some-bucket";
+        val config = Configuration.builder()
+                .s3Client(s3client)
+                .interactiveMode(false)
+                .contentAddressedKeys(true)
+                .build();
+        stubListObjects();
+        when(s3client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().build());
+
+        val metaData = ArtifactAdapter.zipAndUpload(config, Files.createTempDirectory("test_contentAddressedKey"),
+                                                    repoDir, Arrays.asList(repoDir), Collections.emptyList(),
+                                                    bucketName);
+        Assertions.assertTrue(metaData.getSourceKey().matches("analysis-src-[0-9a-f]{64}\\.zip"));
+        Assertions.assertNotNull(metaData.getSourceSha256());
+        verify(s3client).putObject(any(PutObjectRequest.class), any(Path.class));
+    }
+
+    @Test
+    public void test_zipAndUpload_contentAddressedKeyUploadsCopyWhileDeleted() throws Exception {
+        val repoDir = Paths.get("./test-data/fake-repo");
+        val bucketName = "some-bucket";
+        val config = Configuration.builder()
+                .s3Client(s3client)
+                .interactiveMode(false)
+                .contentAddressedKeys(true)
+                .build();
+        // another scan announced that it deletes the shared object.
+        stubListObjects(S3Object.builder().key("analysis-deletions/other-scan").lastModified(Instant.now()).build());
+
+        val metaData = ArtifactAdapter.zipAndUpload(config, Files.createTempDirectory("test_contentAddressedKey"),
+                                                    repoDir, Arrays.asList(repoDir), Collections.emptyList(),
+                                                    bucketName);
+        // the existing object is not reused, this scan uploads its own copy.
+        Assertions.assertTrue(metaData.getSourceKey().matches("analysis-src-[0-9a-f]{64}-.+\\.zip"));
+        Assertions.assertTrue(metaData.getSourceKey().endsWith(metaData.getArtifactReferenceId() + ".zip"));
+        verify(s3client, never()).headObject(any(HeadObjectRequest.class));
+        verify(s3client).putObject(any(PutObjectRequest.class), any(Path.class));
     }
 
     @Test
@@ -272,8 +410,8 @@ class ArtifactAdapterTest {
                 .interactiveMode(false)
                 .build();
 
-        // maps archive name to the list of its files.
-        val archiveFileMap = new HashMap<String, List<String>>();
+        // maps archive name to the list of its files. Source and build archives are uploaded concurrently.
+        val archiveFileMap = new ConcurrentHashMap<String, List<String>>();
         Answer<Object> answer = invocationOnMock -> {
             Path filePath = invocationOnMock.getArgument(1);
             Assertions.assertTrue(filePath.toFile().isFile());
@@ -291,4 +429,11 @@ class ArtifactAdapterTest {
 
         return archiveFileMap;
     }
-}
\ No newline at end of file
+
+    private void stubListObjects(final S3Object... objects) {
+        when(s3client.listObjectsV2Paginator(any(ListObjectsV2Request.class)))
+            .thenAnswer(invocation -> new ListObjectsV2Iterable(s3client, invocation.getArgument(0)));
+        when(s3client.listObjectsV2(any(ListObjectsV2Request.class)))
+            .thenReturn(ListObjectsV2Response.builder().contents(Arrays.asList(objects)).build());
+    }
+}
@@ -0,0 +1,144 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
+
+import com.amazonaws.gurureviewercli.model.BlameInfo;
+import com.amazonaws.gurureviewercli.model.FileBlame;
+import com.amazonaws.gurureviewercli.model.ScanMetaData;
+import com.amazonaws.gurureviewercli.util.JsonUtil;
+
+class BlameAdapterTest {
+
+    private static final String FIRST_COMMIT = "cdb0fcad7400610b1d1797a326a89414525160fe";
+    private static final String SECOND_COMMIT = "8ece465b7ecf8337bf767c9602d21bb92f2fad8a";
+
+    private static final long CACHE_SIZE = 1024 * 1024;
+
+    @Test
+    void test_blame_latestChangeOfRange() throws Exception {
+        // the first line of test.txt changed in the second commit, the empty second line is from the first.
+        val recommendations = Arrays.asList(recommendation("both-lines", "test.txt", 1, 2),
+                                            recommendation("second-line", "test.txt", 2, 2),
+                                            recommendation("not-versioned", "not-versioned.txt", 1, 1));
+        val cacheDir = Files.createTempDirectory("blame-cache");
+        try (val session = GitSession.open(Paths.get("test-data/two-commits/git"));
+             val blamer = BlameAdapter.open(session, Paths.get("test-data/two-commits"), null, 2, cacheDir,
+                                            CACHE_SIZE)) {
+            val blame = blamer.blame(recommendations);
+            Assertions.assertEquals(2, blame.size());
+            Assertions.assertEquals(SECOND_COMMIT, blame.get("both-lines").getCommitId());
+            Assertions.assertEquals(FIRST_COMMIT, blame.get("second-line").getCommitId());
+            Assertions.assertEquals("Martin Schaef", blame.get("second-line").getAuthorName());
+            Assertions.assertEquals(1639514623L, blame.get("second-line").getAuthorTime());
+        }
+        // the blamed lines are cached by commit and path, and a file that is not in the commit has no lines.
+        val cached = new HashMap<String, FileBlame>();
+        try (val cacheFiles = Files.list(cacheDir.resolve(SECOND_COMMIT))) {
+            for (val cacheFile : (Iterable<Path>) cacheFiles::iterator) {
+                val fileBlame = JsonUtil.loadFileBlame(cacheFile);
+                cached.put(fileBlame.getPath(), fileBlame);
+            }
+        }
+        Assertions.assertEquals(2, cached.get("test.txt").getLines().size());
+        Assertions.assertEquals(0, cached.get("not-versioned.txt").getLineCount().intValue());
+    }
+
+    @Test
+    void test_blame_linesPastEndAreKnownAbsent() throws Exception {
+        val cacheDir = Files.createTempDirectory("blame-cache");
+        try (val session = GitSession.open(Paths.get("test-data/two-commits/git"));
+             val blamer = BlameAdapter.open(session, Paths.get("test-data/two-commits"), null, 1, cacheDir,
+                                            CACHE_SIZE)) {
+            // the pages of a review are blamed with the same adapter.
+            val first = blamer.blame(Collections.singletonList(recommendation("first", "test.txt", 1, 1)));
+            val second = blamer.blame(Collections.singletonList(recommendation("past-end", "test.txt", 2, 1000)));
+            Assertions.assertEquals(SECOND_COMMIT, first.get("first").getCommitId());
+            Assertions.assertEquals(FIRST_COMMIT, second.get("past-end").getCommitId());
+        }
+        // the cache knows the length of the file, so the lines past its end are not blamed again.
+        try (val cached = Files.list(cacheDir.resolve(SECOND_COMMIT))) {
+            val fileBlame = JsonUtil.loadFileBlame(cached.findFirst().get());
+            Assertions.assertEquals(2, fileBlame.getLineCount().intValue());
+            Assertions.assertEquals(2, fileBlame.getLines().size());
+        }
+    }
+
+    @Test
+    void test_blame_evictsCacheWhenClosed() throws Exception {
+        val cacheDir = Files.createTempDirectory("blame-cache");
+        val staleDir = Files.createDirectories(cacheDir.resolve(FIRST_COMMIT));
+        val stale = Files.write(staleDir.resolve("stale.json"), new byte[1024]);
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(0));
+        try (val session = GitSession.open(Paths.get("test-data/two-commits/git"));
+             val blamer = BlameAdapter.open(session, Paths.get("test-data/two-commits"), null, 1, cacheDir, 1024)) {
+            blamer.blame(Collections.singletonList(recommendation("first", "test.txt", 1, 1)));
+        }
+        // the least recently used file is evicted first.
+        Assertions.assertFalse(Files.exists(staleDir));
+        Assertions.assertTrue(Files.isDirectory(cacheDir.resolve(SECOND_COMMIT)));
+    }
+
+    @Test
+    void test_blame_beforeCommit() throws Exception {
+        val recommendations = Collections.singletonList(recommendation("first-line", "test.txt", 1, 1));
+        try (val session = GitSession.open(Paths.get("test-data/two-commits/git"));
+             val blamer = BlameAdapter.open(session, Paths.get("test-data/two-commits"), FIRST_COMMIT, 1, null,
+                                            CACHE_SIZE)) {
+            val blame = blamer.blame(recommendations);
+            Assertions.assertEquals(FIRST_COMMIT, blame.get("first-line").getCommitId());
+        }
+    }
+
+    @Test
+    void test_saveResults_withBlame() throws Exception {
+        val recommendations =
+            JsonUtil.loadRecommendations(Paths.get("test-data/recommendations/recommendations.json"));
+        val blameInfo = BlameInfo.builder()
+                                 .commitId(SECOND_COMMIT)
+                                 .authorName("Martin Schaef")
+                                 .authorEmail("schaef@amazon.com")
+                                 .authorTime(1639514670L)
+                                 .build();
+        val blame = Collections.singletonMap(recommendations.get(0).recommendationId(), blameInfo);
+        val scanMetaData = ScanMetaData.builder()
+                                       .repositoryRoot(Paths.get("./").toRealPath())
+                                       .associationArn("123")
+                                       .codeReviewArn("456")
+                                       .sourceDirectories(Collections.emptyList())
+                                       .build();
+        val outDir = Files.createTempDirectory("test-output");
+        ResultsAdapter.saveResults(outDir, recommendations, blame, scanMetaData);
+        // the blame is read back with the recommendations.
+        val json = new String(Files.readAllBytes(outDir.resolve("recommendations.json")), StandardCharsets.UTF_8);
+        Assertions.assertTrue(json.contains(SECOND_COMMIT));
+        Assertions.assertEquals(recommendations.size(),
+                                JsonUtil.loadRecommendations(outDir.resolve("recommendations.json")).size());
+        val sarif = new String(Files.readAllBytes(outDir.resolve("recommendations.sarif.json")),
+                               StandardCharsets.UTF_8);
+        Assertions.assertTrue(sarif.contains("schaef@amazon.com"));
+    }
+
+    private static RecommendationSummary recommendation(final String id,
+                                                        final String filePath,
+                                                        final int startLine,
+                                                        final int endLine) {
+        return RecommendationSummary.builder()
+                                    .recommendationId(id)
+                                    .filePath(filePath)
+                                    .startLine(startLine)
+                                    .endLine(endLine)
+                                    .build();
+    }
+}
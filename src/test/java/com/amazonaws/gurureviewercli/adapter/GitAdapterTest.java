@@ -2,6 +2,7 @@ package com.amazonaws.gurureviewercli.adapter;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 
 import lombok.val;
 import org.beryx.textio.TextIO;
@@ -12,6 +13,7 @@ import org.junit.jupiter.api.Test;
 import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
 import com.amazonaws.gurureviewercli.model.Configuration;
 import com.amazonaws.gurureviewercli.model.ErrorCodes;
+import com.amazonaws.gurureviewercli.model.GitMetaData;
 
 class GitAdapterTest {
 
@@ -21,14 +23,14 @@ class GitAdapterTest {
     public void test_getGitMetaData_notARepo() {
         val repo = RESOURCE_ROOT.resolve("fresh-repo-without-remote");
         GuruCliException ret = Assertions.assertThrows(GuruCliException.class, () ->
-            GitAdapter.tryGetMetaData(configWithoutCommits(repo), repo.resolve("notgit")));
+            metaData(configWithoutCommits(repo), repo.resolve("notgit")));
         Assertions.assertEquals(ErrorCodes.GIT_INVALID_DIR, ret.getErrorCode());
     }
 
     @Test
     public void test_getGitMetaData_noRemote() throws Exception {
         val repo = RESOURCE_ROOT.resolve("fresh-repo-no-remote");
-        val metadata = GitAdapter.tryGetMetaData(configWithoutCommits(repo), repo.resolve("git"));
+        val metadata = metaData(configWithoutCommits(repo), repo.resolve("git"));
         Assertions.assertNull(metadata.getRemoteUrl());
         Assertions.assertNotNull(metadata.getCurrentBranch());
         Assertions.assertEquals(repo, metadata.getRepoRoot());
@@ -44,7 +46,7 @@ class GitAdapterTest {
                                   .textIO(new TextIO(mockTerminal))
                                   .interactiveMode(true)
                                   .build();
-        val gitMetaData = GitAdapter.tryGetMetaData(config, repo.resolve("git"));
+        val gitMetaData = metaData(config, repo.resolve("git"));
         Assertions.assertNotNull(gitMetaData);
         Assertions.assertNull(gitMetaData.getBeforeCommit());
         Assertions.assertNull(gitMetaData.getAfterCommit());
@@ -63,7 +65,7 @@ class GitAdapterTest {
                                 .interactiveMode(true)
                                 .build();
         GuruCliException ret = Assertions.assertThrows(GuruCliException.class, () ->
-            GitAdapter.tryGetMetaData(config, repo.resolve("git")));
+            metaData(config, repo.resolve("git")));
         Assertions.assertEquals(ErrorCodes.USER_ABORT, ret.getErrorCode());
 
     }
@@ -74,13 +76,29 @@ class GitAdapterTest {
         val config = configWithoutCommits(repo);
         config.setBeforeCommit("cdb0fcad7400610b1d1797a326a89414525160fe");
         config.setAfterCommit("8ece465b7ecf8337bf767c9602d21bb92f2fad8a");
-        val gitMetaData = GitAdapter.tryGetMetaData(config, repo.resolve("git"));
-        Assertions.assertNotNull(gitMetaData);
-        Assertions.assertNotNull(gitMetaData.getBeforeCommit());
-        Assertions.assertNotNull(gitMetaData.getAfterCommit());
-        Assertions.assertEquals(1, gitMetaData.getVersionedFiles().size());
-        Assertions.assertEquals("master", gitMetaData.getCurrentBranch());
-        Assertions.assertEquals("git@amazon.com:username/new_repo", gitMetaData.getRemoteUrl());
+        // the changed paths are read from the session, so it has to stay open.
+        try (val session = GitAdapter.openGitDir(repo.resolve("git"))) {
+            val gitMetaData = GitAdapter.tryGetMetaData(config, session);
+            Assertions.assertNotNull(gitMetaData);
+            Assertions.assertNotNull(gitMetaData.getBeforeCommit());
+            Assertions.assertNotNull(gitMetaData.getAfterCommit());
+            Assertions.assertEquals(1, gitMetaData.getVersionedFiles().size());
+            Assertions.assertEquals(Collections.singleton("test.txt"), gitMetaData.getChangedPaths().get());
+            Assertions.assertEquals("master", gitMetaData.getCurrentBranch());
+            Assertions.assertEquals("git@amazon.com:username/new_repo", gitMetaData.getRemoteUrl());
+        }
+    }
+
+    @Test
+    public void test_getGitMetaData_twoCommits_emptyDiff() {
+        val repo = RESOURCE_ROOT.resolve("two-commits");
+        val config = configWithoutCommits(repo);
+        config.setBeforeCommit("HEAD");
+        config.setAfterCommit("8ece465b7ecf8337bf767c9602d21bb92f2fad8a");
+
+        GuruCliException ret = Assertions.assertThrows(GuruCliException.class, () ->
+            metaData(config, repo.resolve("git")));
+        Assertions.assertEquals(ErrorCodes.GIT_EMPTY_DIFF, ret.getErrorCode());
     }
 
     @Test
@@ -89,7 +107,7 @@ class GitAdapterTest {
         val config = configWithoutCommits(repo);
         config.setBeforeCommit("HEAD^");
         config.setAfterCommit("HEAD");
-        val gitMetaData = GitAdapter.tryGetMetaData(config, repo.resolve("git"));
+        val gitMetaData = metaData(config, repo.resolve("git"));
         Assertions.assertNotNull(gitMetaData);
         Assertions.assertNotNull(gitMetaData.getBeforeCommit());
         Assertions.assertNotNull(gitMetaData.getAfterCommit());
@@ -105,10 +123,16 @@ class GitAdapterTest {
         config.setAfterCommit("8ece465b7ecf8337bf767c9602d21bb92f2fad8a");
 
         Exception ret = Assertions.assertThrows(Exception.class, () ->
-            GitAdapter.tryGetMetaData(config, repo.resolve("git")));
+            metaData(config, repo.resolve("git")));
         Assertions.assertTrue(ret.getMessage().contains("Not a valid commit id "));
     }
 
+    private static GitMetaData metaData(final Configuration config, final Path gitDir) {
+        try (val session = GitAdapter.openGitDir(gitDir)) {
+            return GitAdapter.tryGetMetaData(config, session);
+        }
+    }
+
     private Configuration configWithoutCommits(final Path workingDir) {
         return Configuration.builder()
                             .textIO(new TextIO(new MockTextTerminal()))
@@ -0,0 +1,47 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.nio.file.Paths;
+
+import lombok.val;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.storage.file.WindowCacheConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GitSessionTest {
+
+    @Test
+    public void test_windowCacheConfig_smallRepository() {
+        val defaults = new WindowCacheConfig();
+        val config = GitSession.windowCacheConfig(1024 * 1024, 1, true);
+        Assertions.assertTrue(config.isPackedGitMMAP());
+        Assertions.assertEquals(defaults.getPackedGitWindowSize(), config.getPackedGitWindowSize());
+        Assertions.assertEquals(defaults.getPackedGitLimit(), config.getPackedGitLimit());
+        Assertions.assertEquals(defaults.getPackedGitOpenFiles(), config.getPackedGitOpenFiles());
+    }
+
+    @Test
+    public void test_windowCacheConfig_largeRepository() {
+        val packBytes = 2L * 1024 * 1024 * 1024;
+        val config = GitSession.windowCacheConfig(packBytes, 300, true);
+        Assertions.assertEquals(64 * 1024, config.getPackedGitWindowSize());
+        Assertions.assertEquals(1024L * 1024 * 1024, config.getPackedGitLimit());
+        Assertions.assertEquals(316, config.getPackedGitOpenFiles());
+
+        val heapConfig = GitSession.windowCacheConfig(packBytes, 300, false);
+        Assertions.assertFalse(heapConfig.isPackedGitMMAP());
+        Assertions.assertTrue(heapConfig.getPackedGitLimit() <= Math.max(new WindowCacheConfig().getPackedGitLimit(),
+                                                                         Runtime.getRuntime().maxMemory() / 4));
+    }
+
+    @Test
+    public void test_open_sharesRevWalk() throws Exception {
+        try (val session = GitSession.open(Paths.get("test-data/two-commits/git"))) {
+            val head = session.getRepository().resolve(Constants.HEAD);
+            val commit = session.getRevWalk().parseCommit(head);
+            Assertions.assertEquals("8ece465b7ecf8337bf767c9602d21bb92f2fad8a", commit.name());
+            // the same commit object is returned, so it is only parsed once.
+            Assertions.assertSame(commit, session.getRevWalk().parseCommit(head));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipInputStream;
+
+import com.google.common.io.ByteStreams;
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
+import com.amazonaws.gurureviewercli.model.ErrorCodes;
+import com.amazonaws.gurureviewercli.util.PackOptions;
+import com.amazonaws.gurureviewercli.util.ZipUtils;
+
+class GitTreeSourceTest {
+
+    private static final Path RESOURCE_ROOT = Paths.get("test-data");
+
+    @Test
+    public void test_listEntries_packsFilesThatAreNotCheckedOut() throws Exception {
+        // test.txt is only in the git objects, and not-versioned.txt is only in the working tree.
+        val repo = RESOURCE_ROOT.resolve("two-commits");
+        try (val tree = GitTreeSource.open(repo.resolve("git"))) {
+            val entries = tree.listEntries("HEAD", Collections.singletonList(repo), Collections.emptyList());
+            Assertions.assertEquals(1, entries.size());
+            Assertions.assertEquals("test.txt", entries.get(0).getName());
+            Assertions.assertEquals("git:7f112b196b963ff72675febdbb97da5204f9497e",
+                                    entries.get(0).getSource().contentId());
+
+            val zip = new ByteArrayOutputStream();
+            ZipUtils.pack(entries, zip, PackOptions.DEFAULT);
+            try (val in = new ZipInputStream(new ByteArrayInputStream(zip.toByteArray()))) {
+                Assertions.assertEquals("test.txt", in.getNextEntry().getName());
+                Assertions.assertEquals("hello git\n\n",
+                                        new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void test_listEntries_readsEarlierCommit() throws Exception {
+        val repo = RESOURCE_ROOT.resolve("two-commits");
+        try (val tree = GitTreeSource.open(repo.resolve("git"))) {
+            val entries = tree.listEntries("cdb0fcad7400610b1d1797a326a89414525160fe",
+                                           Collections.singletonList(repo), Collections.emptyList());
+            Assertions.assertEquals(1, entries.size());
+            try (val in = entries.get(0).open()) {
+                Assertions.assertEquals("hello world\n\n",
+                                        new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+            }
+            Assertions.assertEquals(13, entries.get(0).size());
+        }
+    }
+
+    @Test
+    public void test_listEntries_ignoresExcludeDirsOutsideRepository() throws Exception {
+        val repo = RESOURCE_ROOT.resolve("two-commits");
+        val outside = Arrays.asList(Files.createTempDirectory("build"), repo.resolve("../fake-repo/build-dir"));
+        try (val tree = GitTreeSource.open(repo.resolve("git"))) {
+            val entries = tree.listEntries("HEAD", Collections.singletonList(repo), outside);
+            Assertions.assertEquals(1, entries.size());
+            Assertions.assertEquals("test.txt", entries.get(0).getName());
+        }
+    }
+
+    @Test
+    public void test_listEntries_invalidCommit() throws Exception {
+        val repo = RESOURCE_ROOT.resolve("two-commits");
+        try (val tree = GitTreeSource.open(repo.resolve("git"))) {
+            val e = Assertions.assertThrows(GuruCliException.class, () ->
+                tree.listEntries("no-such-commit", Collections.singletonList(repo), Collections.emptyList()));
+            Assertions.assertEquals(ErrorCodes.GIT_INVALID_COMMITS, e.getErrorCode());
+        }
+    }
+}
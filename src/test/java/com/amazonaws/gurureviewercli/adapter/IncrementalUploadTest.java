@@ -0,0 +1,128 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CopyPartResult;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartCopyResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.gurureviewercli.model.ChunkManifest;
+import com.amazonaws.gurureviewercli.util.JsonUtil;
+import com.amazonaws.gurureviewercli.util.ZipUtils;
+
+@ExtendWith(MockitoExtension.class)
+class IncrementalUploadTest {
+
+    private static final int PART_SIZE = MultipartUpload.DEFAULT_PART_SIZE;
+
+    @Mock
+    private S3Client s3client;
+
+    @Test
+    public void test_uploadFile_copiesUnchangedChunks() throws Exception {
+        val workDir = Files.createTempDirectory("incremental-upload");
+        val manifestFile = workDir.resolve("state").resolve("analysis-src-manifest.json");
+        val data = new byte[5 * PART_SIZE];
+        new Random(7).nextBytes(data);
+        val first = Files.write(workDir.resolve("first.zip"), data);
+        // insert a few bytes in the middle, which moves all chunks after them.
+        val changedData = new byte[data.length + 100];
+        val insertAt = data.length / 3;
+        System.arraycopy(data, 0, changedData, 0, insertAt);
+        System.arraycopy(data, insertAt, changedData, insertAt + 100, data.length - insertAt);
+        val second = Files.write(workDir.resolve("second.zip"), changedData);
+
+        when(s3client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId("some-upload").build());
+        when(s3client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+            .thenReturn(UploadPartResponse.builder().eTag("uploaded").build());
+        val firstChecksums = ZipUtils.checksum(first);
+        IncrementalUpload.uploadFile(s3client, "some-bucket", "first-key", "123", first, PART_SIZE, 2,
+                                     Collections.singletonMap("sha256", firstChecksums.getSha256()),
+                                     firstChecksums, manifestFile, true);
+        val manifest = JsonUtil.loadChunkManifest(manifestFile);
+        Assertions.assertEquals("first-key", manifest.getKey());
+        Assertions.assertEquals(data.length,
+                                manifest.getChunks().stream().mapToLong(ChunkManifest.Chunk::getLength).sum());
+
+        when(s3client.headObject(any(HeadObjectRequest.class)))
+            .thenReturn(HeadObjectResponse.builder()
+                                          .metadata(Collections.singletonMap("sha256", firstChecksums.getSha256()))
+                                          .build());
+        when(s3client.uploadPartCopy(any(UploadPartCopyRequest.class)))
+            .thenReturn(UploadPartCopyResponse.builder()
+                                              .copyPartResult(CopyPartResult.builder().eTag("copied").build())
+                                              .build());
+        val secondChecksums = ZipUtils.checksum(second);
+        IncrementalUpload.uploadFile(s3client, "some-bucket", "second-key", "123", second, PART_SIZE, 2,
+                                     Collections.singletonMap("sha256", secondChecksums.getSha256()),
+                                     secondChecksums, manifestFile, true);
+
+        // only the chunk with the inserted bytes is uploaded again.
+        val chunks = JsonUtil.loadChunkManifest(manifestFile).getChunks();
+        val copyCaptor = ArgumentCaptor.forClass(UploadPartCopyRequest.class);
+        verify(s3client, times(chunks.size() - 1)).uploadPartCopy(copyCaptor.capture());
+        for (val copy : copyCaptor.getAllValues()) {
+            Assertions.assertEquals("some-bucket/first-key", copy.copySource());
+            Assertions.assertEquals("second-key", copy.key());
+        }
+        val completeCaptor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3client, times(2)).completeMultipartUpload(completeCaptor.capture());
+        Assertions.assertEquals(chunks.size(), completeCaptor.getValue().multipartUpload().parts().size());
+        val deleteCaptor = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3client).deleteObject(deleteCaptor.capture());
+        Assertions.assertEquals("first-key", deleteCaptor.getValue().key());
+    }
+
+    @Test
+    public void test_uploadFile_uploadsAllChunksIfBaseChanged() throws Exception {
+        val workDir = Files.createTempDirectory("incremental-upload");
+        val manifestFile = workDir.resolve("analysis-src-manifest.json");
+        val data = new byte[2 * PART_SIZE];
+        new Random(7).nextBytes(data);
+        val file = Files.write(workDir.resolve("artifact.zip"), data);
+        val checksums = ZipUtils.checksum(file);
+        JsonUtil.storeChunkManifest(ChunkManifest.builder()
+                                                 .bucketName("some-bucket")
+                                                 .key("earlier-key")
+                                                 .sha256("0000")
+                                                 .chunks(ContentChunker.forPartSize(PART_SIZE).chunk(file))
+                                                 .build(), manifestFile);
+        when(s3client.headObject(any(HeadObjectRequest.class)))
+            .thenReturn(HeadObjectResponse.builder().metadata(Collections.singletonMap("sha256", "1111")).build());
+        when(s3client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId("some-upload").build());
+        when(s3client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+            .thenReturn(UploadPartResponse.builder().eTag("uploaded").build());
+
+        IncrementalUpload.uploadFile(s3client, "some-bucket", "new-key", "123", file, PART_SIZE, 2,
+                                     Collections.emptyMap(), checksums, manifestFile, true);
+        verify(s3client, never()).uploadPartCopy(any(UploadPartCopyRequest.class));
+        verify(s3client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        Assertions.assertEquals("new-key", JsonUtil.loadChunkManifest(manifestFile).getKey());
+    }
+}
@@ -0,0 +1,55 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import lombok.val;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MinimalGitRepositoryTest {
+
+    private static final Path GIT_DIR = Paths.get("test-data").resolve("two-commits").resolve("git");
+
+    private static final String BEFORE_COMMIT = "cdb0fcad7400610b1d1797a326a89414525160fe";
+
+    private static final String AFTER_COMMIT = "8ece465b7ecf8337bf767c9602d21bb92f2fad8a";
+
+    @Test
+    public void test_write_commitRange() throws Exception {
+        val targetDir = Files.createTempDirectory("minimal-git").resolve(".git");
+        MinimalGitRepository.write(GIT_DIR, BEFORE_COMMIT, AFTER_COMMIT, targetDir);
+
+        try (val repository = new FileRepositoryBuilder().setGitDir(targetDir.toFile()).setMustExist(true).build();
+             val revWalk = new RevWalk(repository)) {
+            Assertions.assertEquals(AFTER_COMMIT, repository.resolve(Constants.HEAD).name());
+            val after = revWalk.parseCommit(repository.resolve(AFTER_COMMIT));
+            Assertions.assertEquals(BEFORE_COMMIT, after.getParent(0).name());
+            revWalk.parseCommit(after.getParent(0));
+            Assertions.assertTrue(repository.getObjectDatabase().has(after.getTree()));
+        }
+        try (val pack = Files.list(targetDir.resolve("objects").resolve("pack"))) {
+            Assertions.assertEquals(2, pack.count(), "Expected one pack file and its index.");
+        }
+        // the first commit of the test repository has no parent, so the history is complete.
+        Assertions.assertFalse(Files.exists(targetDir.resolve("shallow")));
+    }
+
+    @Test
+    public void test_write_emptyTreeBeforeCommit() throws Exception {
+        val targetDir = Files.createTempDirectory("minimal-git").resolve(".git");
+        MinimalGitRepository.write(GIT_DIR, "4b825dc642cb6eb9a060e54bf8d69288fbee4904", AFTER_COMMIT, targetDir);
+
+        try (val repository = new FileRepositoryBuilder().setGitDir(targetDir.toFile()).setMustExist(true).build()) {
+            Assertions.assertEquals(AFTER_COMMIT, repository.resolve(Constants.HEAD).name());
+            Assertions.assertFalse(repository.getObjectDatabase().has(repository.resolve(BEFORE_COMMIT)));
+        }
+        Assertions.assertEquals(AFTER_COMMIT + "\n",
+                                new String(Files.readAllBytes(targetDir.resolve("shallow")), StandardCharsets.UTF_8));
+    }
+}
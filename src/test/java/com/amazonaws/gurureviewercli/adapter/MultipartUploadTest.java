@@ -0,0 +1,102 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.io.ByteStreams;
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MultipartUploadTest {
+
+    private static final int PART_SIZE = 1024;
+    private static final int CONCURRENCY = 4;
+
+    @Mock
+    private S3Client s3client;
+
+    @Test
+    public void test_uploadFile_smallFileUsesPutObject() throws Exception {
+        val file = Files.write(Files.createTempFile("small", ".zip"), new byte[PART_SIZE]);
+        MultipartUpload.uploadFile(s3client, "some-bucket", "some-key", "123", file, PART_SIZE, CONCURRENCY);
+        verify(s3client).putObject(any(PutObjectRequest.class), any(Path.class));
+        verify(s3client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void test_uploadFile_parallelParts() throws Exception {
+        when(s3client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-id").build());
+        val uploaded = new ConcurrentSkipListMap<Integer, byte[]>();
+        Answer<Object> answer = invocationOnMock -> {
+            UploadPartRequest request = invocationOnMock.getArgument(0);
+            RequestBody body = invocationOnMock.getArgument(1);
+            Assertions.assertEquals("upload-id", request.uploadId());
+            try (val in = body.contentStreamProvider().newStream()) {
+                uploaded.put(request.partNumber(), ByteStreams.toByteArray(in));
+            }
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        };
+        doAnswer(answer).when(s3client).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+
+        val data = new byte[PART_SIZE * 10 + PART_SIZE / 3];
+        new Random(42).nextBytes(data);
+        val file = Files.write(Files.createTempFile("large", ".zip"), data);
+        MultipartUpload.uploadFile(s3client, "some-bucket", "some-key", "123", file, PART_SIZE, CONCURRENCY);
+
+        val captor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3client).completeMultipartUpload(captor.capture());
+        val parts = captor.getValue().multipartUpload().parts();
+        Assertions.assertEquals(11, parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            Assertions.assertEquals(i + 1, parts.get(i).partNumber());
+            Assertions.assertEquals("etag-" + (i + 1), parts.get(i).eTag());
+        }
+        val concatenated = new ByteArrayOutputStream();
+        for (val part : uploaded.values()) {
+            concatenated.write(part);
+        }
+        Assertions.assertArrayEquals(data, concatenated.toByteArray());
+    }
+
+    @Test
+    public void test_uploadFile_abortsAfterRetries() throws Exception {
+        when(s3client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-id").build());
+        when(s3client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+            .thenThrow(S3Exception.builder().statusCode(500).message("boom").build());
+
+        val file = Files.write(Files.createTempFile("large", ".zip"), new byte[PART_SIZE + 1]);
+        Assertions.assertThrows(Exception.class, () -> MultipartUpload.uploadFile(s3client, "some-bucket", "some-key",
+                                                                                  "123", file, PART_SIZE, 1));
+        verify(s3client, atLeast(3)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        verify(s3client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+}
@@ -0,0 +1,84 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
+import com.amazonaws.gurureviewercli.model.ErrorCodes;
+import com.amazonaws.gurureviewercli.model.PollStrategy;
+
+class PollerTest {
+
+    @Test
+    public void test_backoff_withoutHistory() {
+        val strategy = new BackoffPollStrategy(2000, 60000, null, () -> 0.5);
+        Assertions.assertEquals(2000, strategy.nextDelayMillis(1, 0));
+        Assertions.assertEquals(2000, strategy.nextDelayMillis(3, 4000));
+        // half of the elapsed time, so the delays grow by half with every call.
+        Assertions.assertEquals(3000, strategy.nextDelayMillis(4, 6000));
+        Assertions.assertEquals(60000, strategy.nextDelayMillis(20, 600000));
+    }
+
+    @Test
+    public void test_backoff_withHistory() {
+        val strategy = new BackoffPollStrategy(2000, 60000, 600000L, () -> 0.5);
+        // half of the remaining expected time, even if that is longer than the maximum delay.
+        Assertions.assertEquals(300000, strategy.nextDelayMillis(1, 0));
+        Assertions.assertEquals(2000, strategy.nextDelayMillis(5, 599000));
+        // backs off from the expected duration on.
+        Assertions.assertEquals(2000, strategy.nextDelayMillis(6, 601000));
+        Assertions.assertEquals(10000, strategy.nextDelayMillis(9, 620000));
+    }
+
+    @Test
+    public void test_backoff_jitter() {
+        val low = new BackoffPollStrategy(10000, 10000, null, () -> 0.0);
+        val high = new BackoffPollStrategy(10000, 10000, null, () -> 1.0);
+        Assertions.assertEquals(8000, low.nextDelayMillis(1, 0));
+        Assertions.assertEquals(12000, high.nextDelayMillis(1, 0));
+    }
+
+    @Test
+    public void test_poller_maxCalls() {
+        val poller = new Poller("test", (calls, elapsed) -> 1, 0, 3);
+        for (int i = 0; i < 3; i++) {
+            poller.awaitNextCall();
+        }
+        Assertions.assertEquals(3, poller.getCalls());
+        val e = Assertions.assertThrows(GuruCliException.class, poller::awaitNextCall);
+        Assertions.assertEquals(ErrorCodes.POLL_TIMEOUT, e.getErrorCode());
+    }
+
+    @Test
+    public void test_poller_deadline() {
+        // the delay is cut at the deadline, and the call at the deadline is still made.
+        val poller = new Poller("test", (calls, elapsed) -> 60000, 100, 0);
+        poller.awaitNextCall();
+        poller.awaitNextCall();
+        Assertions.assertTrue(poller.elapsedMillis() >= 100 && poller.elapsedMillis() < 60000);
+        val e = Assertions.assertThrows(GuruCliException.class, poller::awaitNextCall);
+        Assertions.assertEquals(ErrorCodes.POLL_TIMEOUT, e.getErrorCode());
+    }
+
+    @Test
+    public void test_poller_operationStart() {
+        val elapsed = new AtomicLong();
+        val poller = new Poller("test", (calls, elapsedMillis) -> {
+            elapsed.set(elapsedMillis);
+            return 0;
+        }, 60000, 0);
+        // the operation was started ten minutes before polling.
+        poller.setOperationStart(Instant.now().minus(Duration.ofMinutes(10)));
+        poller.setOperationStart(Instant.now());
+        poller.awaitNextCall();
+        poller.awaitNextCall();
+        Assertions.assertTrue(elapsed.get() >= Duration.ofMinutes(10).toMillis());
+        // the timeout counts from when polling started, so the poller did not give up after the first call.
+        Assertions.assertTrue(poller.elapsedMillis() < 60000);
+    }
+}
@@ -1,10 +1,15 @@
 package com.amazonaws.gurureviewercli.adapter;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.stream.Stream;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.val;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import com.amazonaws.gurureviewercli.model.ScanMetaData;
@@ -25,4 +30,69 @@ class ResultsAdapterTest {
         val outDir = Files.createTempDirectory("test-output");
         ResultsAdapter.saveResults(outDir, recommendations, scanMetaData);
     }
-}
\ No newline at end of file
+
+    @Test
+    void test_openWriter_pagesMatchSaveResults() throws Exception {
+        val recommendations =
+            JsonUtil.loadRecommendations(Paths.get("test-data/recommendations/recommendations.json"));
+        val scanMetaData = ScanMetaData.builder()
+                                       .repositoryRoot(Paths.get("./").toRealPath())
+                                       .associationArn("123")
+                                       .codeReviewArn("456")
+                                       .sourceDirectories(Collections.emptyList())
+                                       .build();
+        val batchDir = Files.createTempDirectory("test-output");
+        ResultsAdapter.saveResults(batchDir, recommendations, scanMetaData);
+
+        // the pages arrive in a different order than the report is sorted in.
+        val streamDir = Files.createTempDirectory("test-output");
+        try (ResultsAdapter.ResultsWriter writer = ResultsAdapter.openWriter(streamDir, scanMetaData)) {
+            writer.write(recommendations.subList(2, recommendations.size()), Collections.emptyMap());
+            writer.write(recommendations.subList(0, 2), Collections.emptyMap());
+            Assertions.assertEquals(recommendations.size(), writer.getCount());
+        }
+
+        val html = "codeguru-report.html";
+        Assertions.assertEquals(new String(Files.readAllBytes(batchDir.resolve(html)), StandardCharsets.UTF_8),
+                                new String(Files.readAllBytes(streamDir.resolve(html)), StandardCharsets.UTF_8));
+        Assertions.assertEquals(recommendations.size(),
+                                JsonUtil.loadRecommendations(streamDir.resolve("recommendations.json")).size());
+        val mapper = new ObjectMapper();
+        val batchSarif = mapper.readTree(batchDir.resolve("recommendations.sarif.json").toFile()).get("runs").get(0);
+        val streamSarif = mapper.readTree(streamDir.resolve("recommendations.sarif.json").toFile()).get("runs").get(0);
+        Assertions.assertEquals(batchSarif.get("results").size(), streamSarif.get("results").size());
+        Assertions.assertEquals(batchSarif.get("tool").get("driver").get("rules").size(),
+                                streamSarif.get("tool").get("driver").get("rules").size());
+        // only the report itself is left in the output directory.
+        try (Stream<Path> files = Files.list(streamDir)) {
+            Assertions.assertEquals(3, files.count());
+        }
+    }
+
+    @Test
+    void test_openWriter_markPartial() throws Exception {
+        val recommendations =
+            JsonUtil.loadRecommendations(Paths.get("test-data/recommendations/recommendations.json"));
+        val scanMetaData = ScanMetaData.builder()
+                                       .repositoryRoot(Paths.get("./").toRealPath())
+                                       .associationArn("123")
+                                       .codeReviewArn("456")
+                                       .sourceDirectories(Collections.emptyList())
+                                       .build();
+        val outDir = Files.createTempDirectory("test-output");
+        try (ResultsAdapter.ResultsWriter writer = ResultsAdapter.openWriter(outDir, scanMetaData)) {
+            writer.write(recommendations.subList(0, 1), Collections.emptyMap());
+            writer.markPartial("stopped early");
+        }
+
+        val html = new String(Files.readAllBytes(outDir.resolve("codeguru-report.html")), StandardCharsets.UTF_8);
+        Assertions.assertTrue(html.contains("stopped early"));
+        val run = new ObjectMapper().readTree(outDir.resolve("recommendations.sarif.json").toFile())
+                                    .get("runs").get(0);
+        Assertions.assertEquals(1, run.get("results").size());
+        Assertions.assertTrue(run.get("properties").get("partial").asBoolean());
+        Assertions.assertEquals("stopped early", run.get("invocations").get(0).get("toolExecutionNotifications")
+                                                    .get(0).get("message").get("text").asText());
+        Assertions.assertEquals(1, JsonUtil.loadRecommendations(outDir.resolve("recommendations.json")).size());
+    }
+}
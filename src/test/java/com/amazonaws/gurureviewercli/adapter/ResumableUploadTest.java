@@ -0,0 +1,140 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.ListPartsResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.gurureviewercli.model.UploadState;
+import com.amazonaws.gurureviewercli.util.JsonUtil;
+import com.amazonaws.gurureviewercli.util.ZipUtils;
+
+@ExtendWith(MockitoExtension.class)
+class ResumableUploadTest {
+
+    private static final int PART_SIZE = 1024;
+
+    @Mock
+    private S3Client s3client;
+
+    @Test
+    public void test_uploadFile_resumesEarlierUpload() throws Exception {
+        val workDir = Files.createTempDirectory("resumable-upload");
+        val file = writeFile(workDir, 2 * PART_SIZE + 10);
+        val checksums = ZipUtils.checksum(file);
+        val stateFile = workDir.resolve("state").resolve("upload.json");
+        Files.createDirectories(stateFile.getParent());
+        val earlier = UploadState.builder()
+                                 .bucketName("some-bucket")
+                                 .key("earlier-key")
+                                 .uploadId("earlier-upload")
+                                 .sha256(checksums.getSha256())
+                                 .size(checksums.getSize())
+                                 .partSize(PART_SIZE)
+                                 .build();
+        earlier.getCompletedParts().add(new UploadState.Part(1, "etag-1", "crc-1"));
+        JsonUtil.storeUploadState(earlier, stateFile);
+
+        when(s3client.listParts(any(ListPartsRequest.class))).thenReturn(ListPartsResponse.builder().build());
+        when(s3client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+            .thenAnswer(invocation -> {
+                UploadPartRequest request = invocation.getArgument(0);
+                Assertions.assertEquals("earlier-upload", request.uploadId());
+                return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+            });
+
+        val key = ResumableUpload.uploadFile(s3client, "some-bucket", "new-key", false, "123", file, PART_SIZE, 2,
+                                             Collections.emptyMap(), checksums, stateFile);
+        Assertions.assertEquals("earlier-key", key);
+        verify(s3client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        val captor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3client).completeMultipartUpload(captor.capture());
+        val parts = captor.getValue().multipartUpload().parts();
+        Assertions.assertEquals(3, parts.size());
+        Assertions.assertEquals("etag-1", parts.get(0).eTag());
+        Assertions.assertEquals("crc-1", parts.get(0).checksumCRC32C());
+        Assertions.assertFalse(Files.exists(stateFile));
+    }
+
+    @Test
+    public void test_uploadFile_keepsUploadOfChangedArtifact() throws Exception {
+        val workDir = Files.createTempDirectory("resumable-upload");
+        val file = writeFile(workDir, 2 * PART_SIZE + 10);
+        val stateFile = workDir.resolve("upload.json");
+        JsonUtil.storeUploadState(UploadState.builder()
+                                             .bucketName("some-bucket")
+                                             .key("earlier-key")
+                                             .uploadId("earlier-upload")
+                                             .sha256("0000")
+                                             .size(2 * PART_SIZE + 10)
+                                             .partSize(PART_SIZE)
+                                             .build(), stateFile);
+        stubNewUpload();
+
+        val key = ResumableUpload.uploadFile(s3client, "some-bucket", "new-key", false, "123", file, PART_SIZE, 2,
+                                             Collections.emptyMap(), ZipUtils.checksum(file), stateFile);
+        Assertions.assertEquals("new-key", key);
+        // the earlier upload may belong to a run that is still in progress.
+        verify(s3client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        Assertions.assertFalse(Files.exists(stateFile));
+    }
+
+    @Test
+    public void test_uploadFile_fixedKeyDoesNotResumeUploadToOtherKey() throws Exception {
+        val workDir = Files.createTempDirectory("resumable-upload");
+        val file = writeFile(workDir, 2 * PART_SIZE + 10);
+        val checksums = ZipUtils.checksum(file);
+        val stateFile = workDir.resolve("upload.json");
+        JsonUtil.storeUploadState(UploadState.builder()
+                                             .bucketName("some-bucket")
+                                             .key("earlier-key")
+                                             .uploadId("earlier-upload")
+                                             .sha256(checksums.getSha256())
+                                             .size(checksums.getSize())
+                                             .partSize(PART_SIZE)
+                                             .build(), stateFile);
+        stubNewUpload();
+
+        val key = ResumableUpload.uploadFile(s3client, "some-bucket", "new-key", true, "123", file, PART_SIZE, 2,
+                                             Collections.emptyMap(), checksums, stateFile);
+        Assertions.assertEquals("new-key", key);
+        verify(s3client).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        verify(s3client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    private void stubNewUpload() {
+        when(s3client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId("new-upload").build());
+        when(s3client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+            .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+    }
+
+    private static Path writeFile(final Path dir, final int size) throws Exception {
+        val data = new byte[size];
+        new Random(7).nextBytes(data);
+        return Files.write(dir.resolve("artifact.zip"), data);
+    }
+}
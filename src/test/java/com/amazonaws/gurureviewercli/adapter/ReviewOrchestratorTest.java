@@ -0,0 +1,128 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.services.codegurureviewer.CodeGuruReviewerClient;
+import software.amazon.awssdk.services.codegurureviewer.model.CodeReview;
+import software.amazon.awssdk.services.codegurureviewer.model.DescribeCodeReviewRequest;
+import software.amazon.awssdk.services.codegurureviewer.model.DescribeCodeReviewResponse;
+import software.amazon.awssdk.services.codegurureviewer.model.JobState;
+import software.amazon.awssdk.services.codegurureviewer.model.ListRecommendationsRequest;
+import software.amazon.awssdk.services.codegurureviewer.model.ListRecommendationsResponse;
+import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.gurureviewercli.exceptions.GuruCliException;
+import com.amazonaws.gurureviewercli.model.Configuration;
+import com.amazonaws.gurureviewercli.model.ErrorCodes;
+import com.amazonaws.gurureviewercli.model.ScanContext;
+
+@ExtendWith(MockitoExtension.class)
+class ReviewOrchestratorTest {
+
+    @Mock
+    private CodeGuruReviewerClient guruFrontendService;
+
+    @Test
+    public void test_awaitResults_severalReviews() throws Exception {
+        // each review is pending for as many polls as the number in its ARN.
+        val polls = new ConcurrentHashMap<String, AtomicInteger>();
+        when(guruFrontendService.describeCodeReview(any(DescribeCodeReviewRequest.class))).thenAnswer(invocation -> {
+            final DescribeCodeReviewRequest request = invocation.getArgument(0);
+            val arn = request.codeReviewArn();
+            val count = polls.computeIfAbsent(arn, k -> new AtomicInteger()).incrementAndGet();
+            val state = count > Integer.parseInt(arn) ? JobState.COMPLETED : JobState.PENDING;
+            return describeResponse(arn, state);
+        });
+        when(guruFrontendService.listRecommendationsPaginator(any(ListRecommendationsRequest.class)))
+            .thenCallRealMethod();
+        when(guruFrontendService.listRecommendations(any(ListRecommendationsRequest.class))).thenAnswer(invocation -> {
+            final ListRecommendationsRequest request = invocation.getArgument(0);
+            val recommendation = RecommendationSummary.builder()
+                                                      .recommendationId(request.codeReviewArn())
+                                                      .build();
+            return ListRecommendationsResponse.builder().recommendationSummaries(recommendation).build();
+        });
+
+        try (ReviewOrchestrator orchestrator = new ReviewOrchestrator(2)) {
+            val first = orchestrator.awaitResults(context("3", 0));
+            val second = orchestrator.awaitResults(context("1", 0));
+            Assertions.assertEquals("3", first.get(10, TimeUnit.SECONDS).get(0).recommendationId());
+            Assertions.assertEquals("1", second.get(10, TimeUnit.SECONDS).get(0).recommendationId());
+            Assertions.assertEquals(4, polls.get("3").get());
+            Assertions.assertEquals(2, polls.get("1").get());
+        }
+    }
+
+    @Test
+    public void test_awaitResults_failedReview() throws Exception {
+        when(guruFrontendService.describeCodeReview(any(DescribeCodeReviewRequest.class)))
+            .thenReturn(describeResponse("1", JobState.FAILED));
+
+        try (ReviewOrchestrator orchestrator = new ReviewOrchestrator(1)) {
+            val future = orchestrator.awaitResults(context("1", 0));
+            val e = Assertions.assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(e.getCause().getMessage().contains("CodeGuru scan failed"));
+        }
+    }
+
+    @Test
+    public void test_awaitResults_maxPolls() throws Exception {
+        when(guruFrontendService.describeCodeReview(any(DescribeCodeReviewRequest.class)))
+            .thenReturn(describeResponse("1", JobState.PENDING));
+
+        try (ReviewOrchestrator orchestrator = new ReviewOrchestrator(1)) {
+            val future = orchestrator.awaitResults(context("1", 2));
+            val e = Assertions.assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(ErrorCodes.POLL_TIMEOUT, ((GuruCliException) e.getCause()).getErrorCode());
+        }
+    }
+
+    @Test
+    public void test_scanConfiguration_copiedPerScan() {
+        val config = Configuration.builder()
+                                  .rootDir(Paths.get("repo"))
+                                  .contentAddressedKeys(true)
+                                  .uploadStateDir(Paths.get("upload-state"))
+                                  .build();
+        val sources = Collections.singletonList(Paths.get("repo/src"));
+        val first = ReviewOrchestrator.scanConfiguration(config, sources, Collections.emptyList());
+        val second = ReviewOrchestrator.scanConfiguration(config, sources, Collections.emptyList());
+        val other = ReviewOrchestrator.scanConfiguration(config, Collections.singletonList(Paths.get("repo/lib")),
+                                                         Collections.emptyList());
+        // every scan references shared artifacts with its own id, and the shared configuration is not changed.
+        Assertions.assertNotNull(first.getArtifactReferenceId());
+        Assertions.assertNotEquals(first.getArtifactReferenceId(), second.getArtifactReferenceId());
+        Assertions.assertNull(config.getArtifactReferenceId());
+        // the upload state is kept per scanned directories, so that the next run finds it again.
+        Assertions.assertEquals(first.getUploadStateDir(), second.getUploadStateDir());
+        Assertions.assertNotEquals(first.getUploadStateDir(), other.getUploadStateDir());
+        Assertions.assertEquals(Paths.get("upload-state"), first.getUploadStateDir().getParent());
+    }
+
+    private ScanContext context(final String arn, final int maxPolls) {
+        return ScanContext.builder()
+                          .guruFrontendService(guruFrontendService)
+                          .codeReviewArn(arn)
+                          .maxPolls(maxPolls)
+                          .pollStrategy((calls, elapsedMillis) -> 1)
+                          .build();
+    }
+
+    private static DescribeCodeReviewResponse describeResponse(final String arn, final JobState state) {
+        val review = CodeReview.builder().codeReviewArn(arn).state(state).build();
+        return DescribeCodeReviewResponse.builder().codeReview(review).build();
+    }
+}
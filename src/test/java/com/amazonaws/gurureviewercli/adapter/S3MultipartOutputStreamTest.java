@@ -0,0 +1,121 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.io.ByteStreams;
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class S3MultipartOutputStreamTest {
+
+    private static final int PART_SIZE = 1024;
+    private static final int CONCURRENCY = 3;
+
+    @Mock
+    private S3Client s3client;
+
+    @Test
+    public void test_write_smallObjectUsesPutObject() throws Exception {
+        val upload = new S3MultipartOutputStream(s3client, "some-bucket", "some-key", "123", PART_SIZE, CONCURRENCY);
+        upload.write(new byte[PART_SIZE - 1]);
+        upload.close();
+        verify(s3client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void test_write_multipleParts() throws Exception {
+        when(s3client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-id").build());
+        // parts are uploaded in parallel, so they can arrive in any order.
+        val uploaded = new ConcurrentSkipListMap<Integer, byte[]>();
+        Answer<Object> answer = invocationOnMock -> {
+            UploadPartRequest request = invocationOnMock.getArgument(0);
+            RequestBody body = invocationOnMock.getArgument(1);
+            Assertions.assertEquals("upload-id", request.uploadId());
+            try (val in = body.contentStreamProvider().newStream()) {
+                uploaded.put(request.partNumber(), ByteStreams.toByteArray(in));
+            }
+            return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        };
+        doAnswer(answer).when(s3client).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+
+        val data = new byte[PART_SIZE * 2 + PART_SIZE / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        val upload = new S3MultipartOutputStream(s3client, "some-bucket", "some-key", "123", PART_SIZE, CONCURRENCY);
+        upload.write(data, 0, 100);
+        upload.write(data, 100, data.length - 100);
+        upload.close();
+
+        val captor = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3client).completeMultipartUpload(captor.capture());
+        val parts = captor.getValue().multipartUpload().parts();
+        Assertions.assertEquals(3, parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            Assertions.assertEquals(i + 1, parts.get(i).partNumber());
+            Assertions.assertEquals("etag-" + (i + 1), parts.get(i).eTag());
+        }
+        val concatenated = new ByteArrayOutputStream();
+        for (val part : uploaded.values()) {
+            concatenated.write(part);
+        }
+        Assertions.assertTrue(Arrays.equals(data, concatenated.toByteArray()));
+    }
+
+    @Test
+    public void test_write_failedPartIsRetried() throws Exception {
+        when(s3client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-id").build());
+        when(s3client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+            .thenThrow(S3Exception.builder().statusCode(503).message("slow down").build())
+            .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+
+        val upload = new S3MultipartOutputStream(s3client, "some-bucket", "some-key", "123", PART_SIZE, CONCURRENCY);
+        upload.write(new byte[PART_SIZE + 1]);
+        upload.close();
+        verify(s3client, times(3)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        verify(s3client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        verify(s3client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void test_write_failedPartAbortsUpload() throws Exception {
+        when(s3client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+            .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-id").build());
+        when(s3client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+            .thenThrow(S3Exception.builder().message("boom").build());
+
+        val upload = new S3MultipartOutputStream(s3client, "some-bucket", "some-key", "123", PART_SIZE, CONCURRENCY);
+        upload.write(new byte[PART_SIZE]);
+        Assertions.assertThrows(IOException.class, upload::close);
+        verify(s3client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+}
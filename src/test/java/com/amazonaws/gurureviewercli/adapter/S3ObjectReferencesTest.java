@@ -0,0 +1,104 @@
+package com.amazonaws.gurureviewercli.adapter;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class S3ObjectReferencesTest {
+
+    private static final String MARKER_PREFIX = S3ObjectReferences.PREFIX + "analysis-src-abc.zip/";
+
+    private static final String DELETION_PREFIX = S3ObjectReferences.DELETIONS_PREFIX + "analysis-src-abc.zip/";
+
+    @Mock
+    private S3Client s3client;
+
+    @Test
+    public void test_release_keepsObjectReferencedByOtherScan() {
+        stubMarkers(S3Object.builder().key(MARKER_PREFIX + "other-scan").lastModified(Instant.now()).build());
+        val references = new S3ObjectReferences(s3client, "some-bucket", "123", "this-scan");
+        Assertions.assertFalse(references.release("analysis-src-abc.zip"));
+        // the reference of this scan and the announced deletion are removed, the object is kept.
+        val captor = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3client, times(2)).deleteObject(captor.capture());
+        Assertions.assertEquals(Arrays.asList(MARKER_PREFIX + "this-scan", DELETION_PREFIX + "this-scan"),
+                                keys(captor.getAllValues()));
+    }
+
+    @Test
+    public void test_release_ignoresStaleReferences() {
+        val stale = Instant.now().minus(2, ChronoUnit.DAYS);
+        stubMarkers(S3Object.builder().key(MARKER_PREFIX + "dead-scan").lastModified(stale).build());
+        val references = new S3ObjectReferences(s3client, "some-bucket", "123", "this-scan");
+        Assertions.assertTrue(references.release("analysis-src-abc.zip"));
+        val captor = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3client, times(4)).deleteObject(captor.capture());
+        Assertions.assertEquals(Arrays.asList(MARKER_PREFIX + "this-scan", MARKER_PREFIX + "dead-scan",
+                                              "analysis-src-abc.zip", DELETION_PREFIX + "this-scan"),
+                                keys(captor.getAllValues()));
+        // the deletion is announced before the references are listed.
+        val order = inOrder(s3client);
+        order.verify(s3client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        order.verify(s3client).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void test_acquire_failsWhileObjectIsDeleted() {
+        stubMarkers(S3Object.builder().key(DELETION_PREFIX + "other-scan").lastModified(Instant.now()).build());
+        val references = new S3ObjectReferences(s3client, "some-bucket", "123", "this-scan");
+        Assertions.assertFalse(references.acquire("analysis-src-abc.zip"));
+        // the reference is taken before the deletions are listed, and removed again.
+        val order = inOrder(s3client);
+        order.verify(s3client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        order.verify(s3client).listObjectsV2(any(ListObjectsV2Request.class));
+        val captor = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        order.verify(s3client).deleteObject(captor.capture());
+        Assertions.assertEquals(MARKER_PREFIX + "this-scan", captor.getValue().key());
+    }
+
+    @Test
+    public void test_acquire_ignoresStaleDeletions() {
+        val stale = Instant.now().minus(1, ChronoUnit.HOURS);
+        stubMarkers(S3Object.builder().key(DELETION_PREFIX + "dead-scan").lastModified(stale).build());
+        val references = new S3ObjectReferences(s3client, "some-bucket", "123", "this-scan");
+        Assertions.assertTrue(references.acquire("analysis-src-abc.zip"));
+        val captor = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3client).deleteObject(captor.capture());
+        Assertions.assertEquals(DELETION_PREFIX + "dead-scan", captor.getValue().key());
+    }
+
+    private static List<String> keys(final List<DeleteObjectRequest> requests) {
+        return requests.stream().map(DeleteObjectRequest::key).collect(Collectors.toList());
+    }
+
+    private void stubMarkers(final S3Object... markers) {
+        when(s3client.listObjectsV2Paginator(any(ListObjectsV2Request.class)))
+            .thenAnswer(invocation -> new ListObjectsV2Iterable(s3client, invocation.getArgument(0)));
+        when(s3client.listObjectsV2(any(ListObjectsV2Request.class)))
+            .thenReturn(ListObjectsV2Response.builder().contents(Arrays.asList(markers)).build());
+    }
+}
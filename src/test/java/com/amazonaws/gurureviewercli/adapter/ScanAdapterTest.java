@@ -2,10 +2,12 @@ package com.amazonaws.gurureviewercli.adapter;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import lombok.val;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,11 +19,14 @@ import software.amazon.awssdk.services.codegurureviewer.model.CreateCodeReviewRe
 import software.amazon.awssdk.services.codegurureviewer.model.CreateCodeReviewResponse;
 import software.amazon.awssdk.services.codegurureviewer.model.DescribeRepositoryAssociationRequest;
 import software.amazon.awssdk.services.codegurureviewer.model.DescribeRepositoryAssociationResponse;
+import software.amazon.awssdk.services.codegurureviewer.model.ListRecommendationsRequest;
+import software.amazon.awssdk.services.codegurureviewer.model.ListRecommendationsResponse;
 import software.amazon.awssdk.services.codegurureviewer.model.ListRepositoryAssociationsRequest;
 import software.amazon.awssdk.services.codegurureviewer.model.ListRepositoryAssociationsResponse;
 import software.amazon.awssdk.services.codegurureviewer.model.RepositoryAssociation;
 import software.amazon.awssdk.services.codegurureviewer.model.RepositoryAssociationState;
 import software.amazon.awssdk.services.codegurureviewer.model.RepositoryAssociationSummary;
+import software.amazon.awssdk.services.codegurureviewer.model.RecommendationSummary;
 import software.amazon.awssdk.services.codegurureviewer.model.S3RepositoryDetails;
 import software.amazon.awssdk.services.s3.S3Client;
 import static org.mockito.ArgumentMatchers.any;
@@ -73,6 +78,51 @@ class ScanAdapterTest {
                                      .build();
         val sourceDirs = Arrays.asList(Paths.get("src"));
         List<Path> buildDirs = Arrays.asList();
-        ScanAdapter.startScan(config, gitMetaData, sourceDirs, buildDirs);
+        ScanAdapter.startScan(config, null, gitMetaData, sourceDirs, buildDirs);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_streamResults_pages() throws Exception {
+        val first = ListRecommendationsResponse.builder()
+                                               .recommendationSummaries(recommendation("1"), recommendation("2"))
+                                               .nextToken("page-2")
+                                               .build();
+        val second = ListRecommendationsResponse.builder()
+                                                .recommendationSummaries(recommendation("3"))
+                                                .build();
+        when(guruFrontendService.listRecommendationsPaginator(any(ListRecommendationsRequest.class)))
+            .thenCallRealMethod();
+        when(guruFrontendService.listRecommendations(any(ListRecommendationsRequest.class)))
+            .thenReturn(first, second);
+        val config = Configuration.builder().guruFrontendService(guruFrontendService).build();
+
+        val pages = new ArrayList<List<RecommendationSummary>>();
+        ScanAdapter.streamResults(config, "review", pages::add);
+        Assertions.assertEquals(2, pages.size());
+        Assertions.assertEquals(first.recommendationSummaries(), pages.get(0));
+        Assertions.assertEquals(second.recommendationSummaries(), pages.get(1));
+    }
+
+    @Test
+    public void test_streamResults_stop() throws Exception {
+        val first = ListRecommendationsResponse.builder()
+                                               .recommendationSummaries(recommendation("1"))
+                                               .nextToken("page-2")
+                                               .build();
+        when(guruFrontendService.listRecommendationsPaginator(any(ListRecommendationsRequest.class)))
+            .thenCallRealMethod();
+        when(guruFrontendService.listRecommendations(any(ListRecommendationsRequest.class))).thenReturn(first);
+        val config = Configuration.builder().guruFrontendService(guruFrontendService).build();
+
+        val pages = new ArrayList<List<RecommendationSummary>>();
+        ScanAdapter.streamResults(config, "review", page -> {
+            pages.add(page);
+            return false;
+        });
+        Assertions.assertEquals(1, pages.size());
+    }
+
+    private static RecommendationSummary recommendation(final String id) {
+        return RecommendationSummary.builder().recommendationId(id).filePath("src/Main.java").startLine(1).build();
+    }
+}
@@ -0,0 +1,76 @@
+package com.amazonaws.gurureviewercli.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ArtifactCacheTest {
+
+    private Path workDir;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        workDir = Files.createTempDirectory("artifact-cache");
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        Files.walk(workDir)
+             .sorted(Comparator.reverseOrder())
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    @Test
+    void test_computeKey_dependsOnContent() throws IOException {
+        val cache = new ArtifactCache(workDir.resolve("cache"), 1024);
+        val file = Files.write(workDir.resolve("a.txt"), "first".getBytes());
+        val entries = Arrays.asList(new ZipUtils.PackEntry("a.txt", file));
+
+        val key = cache.computeKey("src", entries, null);
+        Assertions.assertEquals(key, cache.computeKey("src", entries, null));
+        Assertions.assertNotEquals(key, cache.computeKey("bin", entries, null));
+        Assertions.assertNotEquals(key, cache.computeKey("src",
+                                                         Arrays.asList(new ZipUtils.PackEntry("b.txt", file)),
+                                                         null));
+        Files.write(file, "second".getBytes());
+        Assertions.assertNotEquals(key, cache.computeKey("src", entries, null));
+    }
+
+    @Test
+    void test_store_evictsLeastRecentlyUsed() throws IOException {
+        val cache = new ArtifactCache(workDir.resolve("cache"), 1500);
+        val oldZip = storeZip(cache, "old", 1000);
+        cache.recordS3Key("old", "some-bucket", "old.zip");
+        // pretend the zip was last used before the grace period for zips that may still be in use.
+        Files.setLastModifiedTime(oldZip, FileTime.fromMillis(System.currentTimeMillis()
+                                                              - TimeUnit.HOURS.toMillis(1)));
+
+        val result = cache.store("new", writeTempZip(cache, "new", 1000));
+        Assertions.assertEquals(Collections.singletonList(new ArtifactCache.S3Location("some-bucket", "old.zip")),
+                                result.getEvicted());
+        Assertions.assertFalse(cache.lookup("old").isPresent());
+        Assertions.assertFalse(cache.findS3Key("old", "some-bucket").isPresent());
+        Assertions.assertTrue(cache.lookup("new").isPresent());
+    }
+
+    private static Path storeZip(final ArtifactCache cache, final String key, final int size) throws IOException {
+        return cache.store(key, writeTempZip(cache, key, size)).getZipFile();
+    }
+
+    private static Path writeTempZip(final ArtifactCache cache, final String key, final int size) throws IOException {
+        return Files.write(cache.newTempFile(key), new byte[size]);
+    }
+}
@@ -0,0 +1,72 @@
+package com.amazonaws.gurureviewercli.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ChangeScopeTest {
+
+    private Path workDir;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        workDir = Files.createTempDirectory("change-scope").toRealPath();
+        val pkg = Files.createDirectories(workDir.resolve("src/com/example"));
+        Files.write(pkg.resolve("Changed.java"), "a".getBytes());
+        Files.write(pkg.resolve("Neighbour.java"), "b".getBytes());
+        Files.write(Files.createDirectories(workDir.resolve("src/com/other")).resolve("Other.java"), "c".getBytes());
+        Files.write(workDir.resolve("aws-codeguru-reviewer.yml"), "d".getBytes());
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        Files.walk(workDir)
+             .sorted(Comparator.reverseOrder())
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    @Test
+    void test_listFiles_changedFilesOnly() throws IOException {
+        // the deleted file is not packed.
+        val changed = new HashSet<String>(Arrays.asList("src/com/example/Changed.java",
+                                                        "src/com/example/Deleted.java"));
+        val scope = new ChangeScope(workDir, changed, false);
+        val files = scope.listFiles(Collections.singletonList(workDir.resolve("src")));
+        Assertions.assertEquals(Arrays.asList(workDir.resolve("src/com/example/Changed.java"),
+                                              workDir.resolve("aws-codeguru-reviewer.yml")), files);
+        Assertions.assertTrue(scope.includes("src/com/example/Changed.java"));
+        Assertions.assertFalse(scope.includes("src/com/example/Neighbour.java"));
+        Assertions.assertTrue(scope.includes("aws-codeguru-reviewer.yml"));
+    }
+
+    @Test
+    void test_listFiles_includeDirectories() throws IOException {
+        val scope = new ChangeScope(workDir, Collections.singleton("src/com/example/Changed.java"), true);
+        val files = new HashSet<Path>(scope.listFiles(Collections.singletonList(workDir.resolve("src"))));
+        Assertions.assertEquals(new HashSet<Path>(Arrays.asList(workDir.resolve("src/com/example/Changed.java"),
+                                                                workDir.resolve("src/com/example/Neighbour.java"),
+                                                                workDir.resolve("aws-codeguru-reviewer.yml"))),
+                                files);
+        Assertions.assertTrue(scope.includes("src/com/example/Neighbour.java"));
+        Assertions.assertFalse(scope.includes("src/com/other/Other.java"));
+    }
+
+    @Test
+    void test_listFiles_outsideOfSourceDirs() throws IOException {
+        val scope = new ChangeScope(workDir, Collections.singleton("src/com/other/Other.java"), true);
+        val files = scope.listFiles(Collections.singletonList(workDir.resolve("src/com/example")));
+        Assertions.assertEquals(Collections.singletonList(workDir.resolve("aws-codeguru-reviewer.yml")), files);
+    }
+}
@@ -0,0 +1,83 @@
+package com.amazonaws.gurureviewercli.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class GitIgnoreRulesTest {
+
+    private Path workDir;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        workDir = Files.createTempDirectory("git-ignore").toRealPath();
+        Files.write(workDir.resolve(".gitignore"), "ignored-dir/\n*.tmp\n!keep.tmp\n".getBytes());
+        Files.createDirectories(workDir.resolve(".git/info"));
+        Files.write(workDir.resolve(".git/info/exclude"), "local-only.txt\n".getBytes());
+        val src = Files.createDirectories(workDir.resolve("src"));
+        Files.write(src.resolve("Main.java"), "a".getBytes());
+        Files.write(src.resolve("scratch.tmp"), "b".getBytes());
+        Files.write(src.resolve("keep.tmp"), "c".getBytes());
+        Files.write(src.resolve("local-only.txt"), "d".getBytes());
+        Files.write(Files.createDirectories(src.resolve("ignored-dir")).resolve("Lib.java"), "e".getBytes());
+        // a nested .gitignore negates a rule of the root.
+        val nested = Files.createDirectories(src.resolve("nested"));
+        Files.write(nested.resolve(".gitignore"), "!*.tmp\n".getBytes());
+        Files.write(nested.resolve("data.tmp"), "f".getBytes());
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        Files.walk(workDir)
+             .sorted(Comparator.reverseOrder())
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    @Test
+    void test_isIgnored() throws IOException {
+        val rules = GitIgnoreRules.load(workDir);
+        Assertions.assertFalse(rules.isIgnored(workDir.resolve("src/Main.java"), false));
+        Assertions.assertTrue(rules.isIgnored(workDir.resolve("src/scratch.tmp"), false));
+        Assertions.assertFalse(rules.isIgnored(workDir.resolve("src/keep.tmp"), false));
+        Assertions.assertTrue(rules.isIgnored(workDir.resolve("src/local-only.txt"), false));
+        Assertions.assertTrue(rules.isIgnored(workDir.resolve("src/ignored-dir"), true));
+        Assertions.assertFalse(rules.isIgnored(workDir.resolve("src/nested/data.tmp"), false));
+        Assertions.assertFalse(rules.isIgnored(workDir.getParent(), true));
+    }
+
+    @Test
+    void test_listEntries_skipsIgnoredFiles() throws IOException {
+        val rules = GitIgnoreRules.load(workDir);
+        val entries = ZipUtils.listEntries(Collections.singletonList(workDir.resolve("src")),
+                                           Collections.emptyList(), workDir, rules);
+        val names = new HashSet<String>();
+        entries.forEach(entry -> names.add(entry.getName()));
+        Assertions.assertEquals(new HashSet<String>(Arrays.asList("src/Main.java",
+                                                                  "src/keep.tmp",
+                                                                  "src/nested/.gitignore",
+                                                                  "src/nested/data.tmp")),
+                                names);
+        // the ignored directory is pruned, so its file is not counted.
+        Assertions.assertEquals(3, rules.getIgnoredCount());
+    }
+
+    @Test
+    void test_listEntries_ignoredSourceDir() throws IOException {
+        val entries = ZipUtils.listEntries(Collections.singletonList(workDir.resolve("src/ignored-dir")),
+                                           Collections.emptyList(), workDir, GitIgnoreRules.load(workDir));
+        Assertions.assertEquals(1, entries.size());
+        Assertions.assertEquals("src/ignored-dir/Lib.java", entries.get(0).getName());
+    }
+}
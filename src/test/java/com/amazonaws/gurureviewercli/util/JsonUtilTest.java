@@ -0,0 +1,34 @@
+package com.amazonaws.gurureviewercli.util;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import lombok.val;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.gurureviewercli.model.ScanMetaData;
+
+class JsonUtilTest {
+
+    @Test
+    void test_scanMetaData_roundTrip() throws Exception {
+        // a scan that is started with --start-only is collected from this file by a later run.
+        val root = Paths.get("test-data/two-commits").toRealPath();
+        val scanMetaData = ScanMetaData.builder()
+                                       .associationArn("association")
+                                       .codeReviewArn("review")
+                                       .region("us-west-2")
+                                       .repositoryRoot(root)
+                                       .sourceDirectories(Collections.singletonList(root.resolve("src")))
+                                       .bucketName("codeguru-reviewer-bucket")
+                                       .sourceKey("source.zip")
+                                       .commitId("cdb0fcad7400610b1d1797a326a89414525160fe")
+                                       .keepArtifacts(true)
+                                       .build();
+        val stateFile = Files.createTempDirectory("scan-state").resolve("scan.json");
+        JsonUtil.storeScanMetaData(scanMetaData, stateFile);
+        Assertions.assertEquals(scanMetaData, JsonUtil.loadScanMetaData(stateFile));
+    }
+}
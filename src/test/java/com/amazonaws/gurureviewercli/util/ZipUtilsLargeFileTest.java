@@ -0,0 +1,84 @@
+package com.amazonaws.gurureviewercli.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import com.google.common.io.ByteStreams;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Packs a file that is much larger than the heap. These tests are slow and need several GB of disk space, so they
+ * are not part of the regular build. Run them with ./gradlew largeFileTest, which limits the heap to 64MB.
+ */
+@Tag("large-file")
+public class ZipUtilsLargeFileTest {
+
+    // larger than 4GB, so the entry also needs zip64 sizes.
+    private static final long LARGE_FILE_SIZE = 5L * 1024 * 1024 * 1024;
+
+    private Path workDir;
+    private Path srcDir;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        workDir = Files.createTempDirectory("zip-large-files");
+        srcDir = Files.createDirectories(workDir.resolve("src"));
+        // a sparse file takes no disk space, only the zip file does.
+        try (val file = new RandomAccessFile(srcDir.resolve("large.bin").toFile(), "rw")) {
+            file.setLength(LARGE_FILE_SIZE);
+        }
+        Files.write(srcDir.resolve("small.txt"), "small file".getBytes());
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        Files.walk(workDir)
+             .sorted(Comparator.reverseOrder())
+             .map(Path::toFile)
+             .forEach(File::delete);
+    }
+
+    @Test
+    void test_packLargeFile() throws IOException {
+        packAndVerify(PackOptions.DEFAULT);
+    }
+
+    @Test
+    void test_packLargeFileParallel() throws IOException {
+        packAndVerify(PackOptions.builder().threads(4).build());
+    }
+
+    private void packAndVerify(final PackOptions options) throws IOException {
+        val zipFile = workDir.resolve("large.zip");
+        try (val out = Files.newOutputStream(zipFile)) {
+            ZipUtils.pack(Arrays.asList(srcDir), Collections.emptyList(), srcDir, out, options);
+        }
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            Assertions.assertEquals(2, zip.size());
+            Assertions.assertEquals(LARGE_FILE_SIZE, zip.getEntry("large.bin").getSize());
+            Assertions.assertEquals(10, zip.getEntry("small.txt").getSize());
+        }
+        // ZipInputStream checks the CRC and sizes of the entries while it reads them.
+        try (val in = new ZipInputStream(Files.newInputStream(zipFile))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                val size = ByteStreams.exhaust(in);
+                Assertions.assertEquals(Files.size(srcDir.resolve(entry.getName())), size);
+            }
+        }
+    }
+}
@@ -2,16 +2,23 @@ package com.amazonaws.gurureviewercli.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.MoreFiles;
 import lombok.val;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -79,4 +86,196 @@ public class ZipUtilsTest {
             Assertions.assertTrue(expectedFileNames.isEmpty());
         }
     }
+
+    /*
+      Overlapping source directories must not add a file twice, and excluded directories are skipped entirely.
+     */
+    @Test
+    void test_packOverlappingRootsWithExclude() throws IOException {
+        val testDir = Paths.get("test-data/fake-repo");
+        val zipName = workDir.resolve("test.zip").toString();
+        ZipUtils.pack(Arrays.asList(testDir, testDir.resolve("build-dir"), testDir),
+                      Arrays.asList(testDir.resolve("build-dir/lib")), testDir, zipName);
+        try (ZipFile zipFile = new ZipFile(zipName)) {
+            val actualFileNames = new HashSet<String>();
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                Assertions.assertTrue(actualFileNames.add(entries.nextElement().getName()));
+            }
+            val expectedFileNames =
+                new HashSet<String>(Arrays.asList("build-dir/should-not-be-included.txt",
+                                                  "should-not-be-included.txt"));
+            Assertions.assertEquals(expectedFileNames, actualFileNames);
+        }
+    }
+
+    @Test
+    void test_getVersionedFilesInDirectories() throws IOException {
+        val root = workDir.toRealPath();
+        Files.write(Files.createDirectories(root.resolve("src")).resolve("versioned.txt"), "a".getBytes());
+        Files.write(root.resolve("src").resolve("not-versioned.txt"), "b".getBytes());
+        Files.write(Files.createDirectories(root.resolve("build")).resolve("output.txt"), "c".getBytes());
+        val versionedFiles = VersionedFiles.of(root, Arrays.asList(root.resolve("src/versioned.txt"),
+                                                                   root.resolve("src/deleted.txt")));
+        Assertions.assertTrue(versionedFiles.containsFilesIn(root.resolve("src")));
+        Assertions.assertFalse(versionedFiles.containsFilesIn(root.resolve("build")));
+        // a file name that is a prefix of a versioned directory is not a directory with versioned files.
+        Assertions.assertFalse(versionedFiles.containsFilesIn(root.resolve("sr")));
+
+        val files = ZipUtils.getVersionedFilesInDirectories(Collections.singletonList(root), versionedFiles);
+        Assertions.assertEquals(Collections.singletonList(root.resolve("src/versioned.txt")), files);
+    }
+
+    @Test
+    void test_readIndex() {
+        val repo = Paths.get("test-data/two-commits");
+        val versionedFiles = VersionedFiles.readIndex(repo, repo.resolve("git"));
+        Assertions.assertEquals(1, versionedFiles.size());
+        Assertions.assertTrue(versionedFiles.contains(repo.resolve("test.txt")));
+        Assertions.assertFalse(versionedFiles.contains(repo.resolve("not-versioned.txt")));
+    }
+
+    @Test
+    void test_packReproducible() throws IOException {
+        val srcDir = Files.createDirectories(workDir.resolve("src"));
+        Files.write(Files.createDirectories(srcDir.resolve("b")).resolve("b.txt"), "b".getBytes());
+        Files.write(srcDir.resolve("a.txt"), "a".getBytes());
+        val first = workDir.resolve("first.zip");
+        val second = workDir.resolve("second.zip");
+        try (val out = Files.newOutputStream(first)) {
+            ZipUtils.pack(Arrays.asList(srcDir), Collections.emptyList(), srcDir, out,
+                          PackOptions.builder().reproducible(true).build());
+        }
+        // neither timestamps nor the number of threads may change the output.
+        Files.setLastModifiedTime(srcDir.resolve("a.txt"), FileTime.fromMillis(0));
+        try (val out = Files.newOutputStream(second)) {
+            ZipUtils.pack(Arrays.asList(srcDir), Collections.emptyList(), srcDir, out,
+                          PackOptions.builder().reproducible(true).threads(4).build());
+        }
+        Assertions.assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+        try (ZipFile zipFile = new ZipFile(first.toFile())) {
+            val entries = zipFile.entries();
+            Assertions.assertEquals("a.txt", entries.nextElement().getName());
+            Assertions.assertEquals("b/b.txt", entries.nextElement().getName());
+            Assertions.assertFalse(entries.hasMoreElements());
+        }
+    }
+
+    @Test
+    void test_packComputesChecksums() throws IOException {
+        val testDir = Paths.get("test-data");
+        for (val threads : Arrays.asList(1, 4)) {
+            val zip = workDir.resolve("checksums-" + threads + ".zip");
+            final PackResult result;
+            try (val out = Files.newOutputStream(zip)) {
+                result = ZipUtils.pack(Arrays.asList(testDir), Collections.emptyList(), testDir, out,
+                                       PackOptions.builder().threads(threads).build());
+            }
+            val bytes = MoreFiles.asByteSource(zip);
+            Assertions.assertEquals(bytes.size(), result.getSize());
+            Assertions.assertEquals(bytes.hash(Hashing.sha256()).toString(), result.getSha256());
+            Assertions.assertEquals(bytes.hash(Hashing.crc32c()).asInt(), result.getCrc32c());
+            Assertions.assertEquals(result, ZipUtils.checksum(zip));
+        }
+    }
+
+    @Test
+    void test_packParallel() throws IOException {
+        val testDir = Paths.get("test-data");
+        val sequentialZip = workDir.resolve("sequential.zip");
+        val parallelZip = workDir.resolve("parallel.zip");
+        try (val out = Files.newOutputStream(sequentialZip)) {
+            ZipUtils.pack(Arrays.asList(testDir), Collections.emptyList(), testDir, out, PackOptions.DEFAULT);
+        }
+        try (val out = Files.newOutputStream(parallelZip)) {
+            ZipUtils.pack(Arrays.asList(testDir), Collections.emptyList(), testDir, out,
+                          PackOptions.builder().threads(4).build());
+        }
+        try (ZipFile sequential = new ZipFile(sequentialZip.toFile());
+             ZipFile parallel = new ZipFile(parallelZip.toFile())) {
+            Assertions.assertEquals(sequential.size(), parallel.size());
+            val sequentialEntries = sequential.entries();
+            val parallelEntries = parallel.entries();
+            while (sequentialEntries.hasMoreElements()) {
+                val expected = sequentialEntries.nextElement();
+                val actual = parallelEntries.nextElement();
+                // entries have to be in the same order, independent of the number of threads.
+                Assertions.assertEquals(expected.getName(), actual.getName());
+                Assertions.assertEquals(expected.getCrc(), actual.getCrc());
+                Assertions.assertEquals(expected.getSize(), actual.getSize());
+                try (val in = parallel.getInputStream(actual)) {
+                    Assertions.assertArrayEquals(Files.readAllBytes(testDir.resolve(actual.getName())),
+                                                 ByteStreams.toByteArray(in));
+                }
+            }
+        }
+    }
+
+    @Test
+    void test_packSkipsFilesThatFailHalfway() throws IOException {
+        val file = Files.write(workDir.resolve("file.txt"), "content".getBytes());
+        // one entry is compressed in memory and one into a temp file, and both fail after some bytes are read.
+        val small = new ZipUtils.PackEntry("small.bin", file, new FailingSource(1024));
+        val large = new ZipUtils.PackEntry("large.bin", file, new FailingSource(ParallelZipPacker.SPILL_THRESHOLD + 1));
+        val entries = Arrays.asList(new ZipUtils.PackEntry("first.txt", file), small, large,
+                                    new ZipUtils.PackEntry("last.txt", file));
+        for (val threads : Arrays.asList(1, 4)) {
+            val zip = workDir.resolve("failing-" + threads + ".zip");
+            try (val out = Files.newOutputStream(zip)) {
+                ZipUtils.pack(entries, out, PackOptions.builder().threads(threads).build());
+            }
+            try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+                Assertions.assertEquals(2, zipFile.size());
+                Assertions.assertNotNull(zipFile.getEntry("first.txt"));
+                Assertions.assertNotNull(zipFile.getEntry("last.txt"));
+            }
+        }
+    }
+
+    @Test
+    void test_packFailsIfArchiveCannotBeWritten() throws IOException {
+        val file = Files.write(workDir.resolve("file.txt"), "content".getBytes());
+        val entries = Arrays.asList(new ZipUtils.PackEntry("first.txt", file),
+                                    new ZipUtils.PackEntry("second.txt", file));
+        val out = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        // an incomplete archive must not be uploaded, so only unreadable files are skipped.
+        Assertions.assertThrows(IOException.class,
+                                () -> ZipUtils.pack(entries, out, PackOptions.builder().threads(2).build()));
+    }
+
+    /**
+     * Content that fails after half of it is read.
+     */
+    private static final class FailingSource implements ZipUtils.EntrySource {
+        private final long size;
+
+        FailingSource(final long size) {
+            this.size = size;
+        }
+
+        @Override
+        public InputStream open() {
+            return new InputStream() {
+                private long read;
+
+                @Override
+                public int read() throws IOException {
+                    if (read++ >= size / 2) {
+                        throw new IOException("disk error");
+                    }
+                    return 0;
+                }
+            };
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+    }
 }